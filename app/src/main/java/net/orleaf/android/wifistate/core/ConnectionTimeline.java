@@ -0,0 +1,258 @@
+package net.orleaf.android.wifistate.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.net.NetworkInfo;
+import android.net.wifi.SupplicantState;
+import android.util.Log;
+
+import net.orleaf.android.wifistate.BuildConfig;
+import net.orleaf.android.wifistate.core.ping.LatencyHistogram;
+import net.orleaf.android.wifistate.core.ping.LatencySummary;
+
+/**
+ * Wi-Fi接続過程の時系列
+ *
+ * 接続過程の遷移を時刻 (単調増加) とともに固定長のリングバッファに記録し、
+ * 接続完了時にフェーズごとの所要時間を SSID ごとのヒストグラムに集計する。
+ * 集計する SSID の数には上限があり、最も長く参照されていないものから破棄する。
+ */
+class ConnectionTimeline {
+    private static final int LOG_SIZE = 64;     // 遷移の記録数
+    private static final int MAX_NETWORKS = 8;  // 集計する SSID の数
+
+    /**
+     * 接続過程のフェーズ
+     */
+    enum Phase {
+        DISCONNECTED,
+        SCANNING,
+        ASSOCIATING,
+        HANDSHAKING,        // アソシエーション完了～認証完了
+        AUTHENTICATED,
+        OBTAINING_IPADDR,
+        CONNECTED;
+
+        /**
+         * サプリカントの状態からフェーズを取得
+         *
+         * @return フェーズ (null:該当なし)
+         */
+        static Phase fromSupplicantState(SupplicantState state) {
+            if (state == null) {
+                return null;
+            }
+            switch (state) {
+            case DISCONNECTED:
+                return DISCONNECTED;
+            case SCANNING:
+                return SCANNING;
+            case ASSOCIATING:
+                return ASSOCIATING;
+            case ASSOCIATED:
+            case FOUR_WAY_HANDSHAKE:
+            case GROUP_HANDSHAKE:
+                return HANDSHAKING;
+            case COMPLETED:
+                return AUTHENTICATED;
+            default:
+                return null;
+            }
+        }
+
+        /**
+         * ネットワーク情報からフェーズを取得
+         *
+         * @return フェーズ (null:該当なし)
+         */
+        static Phase fromNetworkInfo(NetworkInfo info) {
+            if (info == null || info.getDetailedState() == null) {
+                return null;
+            }
+            switch (info.getDetailedState()) {
+            case DISCONNECTED:
+                return DISCONNECTED;
+            case OBTAINING_IPADDR:
+                return OBTAINING_IPADDR;
+            case CONNECTED:
+                return CONNECTED;
+            default:
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 集計する所要時間
+     */
+    enum Metric {
+        ASSOCIATION("Assoc"),   // 接続開始～アソシエーション完了
+        HANDSHAKE("Auth"),      // アソシエーション完了～認証完了
+        DHCP("DHCP"),           // 認証完了～IPアドレス取得完了
+        TOTAL("Total");         // 接続開始～接続完了 (スキャン時間は含まない)
+        private final String label;
+        Metric(String label) {
+            this.label = label;
+        }
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final int NO_TIME = -1;
+
+    // 遷移の記録 (リングバッファ)
+    private final long[] mLogTimes = new long[LOG_SIZE];
+    private final byte[] mLogPhases = new byte[LOG_SIZE];
+    private int mLogPos = 0;
+    private int mLogCount = 0;
+
+    // 接続中の各フェーズの開始時刻 (NO_TIME:未到達)
+    private final long[] mMarks = new long[PHASES.length];
+
+    // SSID ごとの所要時間 (参照順)
+    private final Map<String, LatencyHistogram[]> mNetworks =
+            new LinkedHashMap<String, LatencyHistogram[]>(MAX_NETWORKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LatencyHistogram[]> eldest) {
+                    return size() > MAX_NETWORKS;
+                }
+            };
+
+    ConnectionTimeline() {
+        clearMarks();
+    }
+
+    /**
+     * 遷移を記録する
+     *
+     * @param phase フェーズ
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     * @param ssid 接続先 (CONNECTED の場合のみ参照, null:不明)
+     */
+    synchronized void record(Phase phase, long now, String ssid) {
+        mLogTimes[mLogPos] = now;
+        mLogPhases[mLogPos] = (byte) phase.ordinal();
+        mLogPos = (mLogPos + 1) % LOG_SIZE;
+        if (mLogCount < LOG_SIZE) {
+            mLogCount++;
+        }
+
+        if (phase == Phase.DISCONNECTED) {
+            // 接続試行をやり直し
+            clearMarks();
+            return;
+        }
+        if (mMarks[phase.ordinal()] != NO_TIME) {
+            // 同じフェーズの重複通知、または接続後のローミングなど
+            return;
+        }
+        mMarks[phase.ordinal()] = now;
+        if (phase == Phase.CONNECTED) {
+            collect(ssid != null ? ssid : "-");
+        }
+    }
+
+    /**
+     * 接続完了時にフェーズごとの所要時間を集計
+     */
+    private void collect(String ssid) {
+        // アソシエーション以降で最初に到達したフェーズの時刻を接続開始とする
+        // (スキャンは接続に至らずに繰り返されることがあるため含めない)
+        long start = NO_TIME;
+        for (int i = Phase.ASSOCIATING.ordinal(); i < Phase.CONNECTED.ordinal(); i++) {
+            if (mMarks[i] != NO_TIME && (start == NO_TIME || mMarks[i] < start)) {
+                start = mMarks[i];
+            }
+        }
+        if (start == NO_TIME) {
+            // 接続過程を観測していない (プロセス起動時点で接続済など)
+            return;
+        }
+        long assocStart = mark(Phase.ASSOCIATING);
+        long handshakeStart = mark(Phase.HANDSHAKING);
+        long authDone = mark(Phase.AUTHENTICATED);
+        long dhcpStart = (mark(Phase.OBTAINING_IPADDR) != NO_TIME) ? mark(Phase.OBTAINING_IPADDR) : authDone;
+        long connected = mark(Phase.CONNECTED);
+
+        LatencyHistogram[] histograms = mNetworks.get(ssid);
+        if (histograms == null) {
+            histograms = new LatencyHistogram[Metric.values().length];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+            mNetworks.put(ssid, histograms);
+        }
+        long assocEnd = (handshakeStart != NO_TIME) ? handshakeStart : authDone;
+        recordDuration(histograms, Metric.ASSOCIATION, assocStart, assocEnd);
+        recordDuration(histograms, Metric.HANDSHAKE, handshakeStart, authDone);
+        recordDuration(histograms, Metric.DHCP, dhcpStart, connected);
+        recordDuration(histograms, Metric.TOTAL, start, connected);
+
+        if (BuildConfig.DEBUG) {
+            long logStart = (mark(Phase.SCANNING) != NO_TIME) ? Math.min(mark(Phase.SCANNING), start) : start;
+            Log.d(WifiState.TAG, "Connected to " + ssid + ": " + formatLog(logStart));
+        }
+    }
+
+    private long mark(Phase phase) {
+        return mMarks[phase.ordinal()];
+    }
+
+    private static void recordDuration(LatencyHistogram[] histograms, Metric metric, long from, long to) {
+        if (from != NO_TIME && to != NO_TIME && to >= from) {
+            histograms[metric.ordinal()].record((to - from) * 1000);
+        }
+    }
+
+    private void clearMarks() {
+        for (int i = 0; i < mMarks.length; i++) {
+            mMarks[i] = NO_TIME;
+        }
+    }
+
+    /**
+     * 指定時刻以降の遷移を文字列化
+     *
+     * @return ex) "SCANNING+0 ASSOCIATING+120 HANDSHAKING+135 ..."
+     */
+    private String formatLog(long since) {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < mLogCount; i++) {
+            int index = (mLogPos - mLogCount + i + LOG_SIZE) % LOG_SIZE;
+            if (mLogTimes[index] < since) {
+                continue;
+            }
+            if (log.length() > 0) {
+                log.append(' ');
+            }
+            log.append(PHASES[mLogPhases[index]]).append('+').append(mLogTimes[index] - since);
+        }
+        return log.toString();
+    }
+
+    /**
+     * SSID ごとの所要時間の統計を取得
+     *
+     * @return SSID ごとの Metric 順の統計 (参照の古い順)
+     */
+    synchronized Map<String, LatencySummary[]> getSummaries() {
+        Map<String, LatencySummary[]> summaries = new LinkedHashMap<String, LatencySummary[]>();
+        for (Map.Entry<String, LatencyHistogram[]> entry : mNetworks.entrySet()) {
+            LatencyHistogram[] histograms = entry.getValue();
+            LatencySummary[] summary = new LatencySummary[histograms.length];
+            for (int i = 0; i < histograms.length; i++) {
+                LatencyHistogram histogram = histograms[i];
+                summary[i] = new LatencySummary(histogram.getTotalCount(),
+                        histogram.getValueAtPercentile(50),
+                        histogram.getValueAtPercentile(90),
+                        histogram.getValueAtPercentile(99),
+                        histogram.getMax());
+            }
+            summaries.put(entry.getKey(), summary);
+        }
+        return summaries;
+    }
+}
@@ -0,0 +1,124 @@
+package net.orleaf.android.wifistate.core;
+
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import android.net.wifi.WifiInfo;
+
+/**
+ * ネットワーク情報の表示用文字列の整形
+ *
+ * 作業用バッファと数値フォーマッタを使い回し、入力値が前回と同じであれば前回の文字列をそのまま返す。
+ * スレッドセーフではない。
+ */
+class InfoFormatter {
+    private final StringBuilder mBuilder = new StringBuilder(96);
+
+    // 数値フォーマッタ (ロケールが変わった場合のみ再生成)
+    private Locale mLocale = null;
+    private NumberFormat mNumberFormat = null;
+    private final StringBuffer mNumberBuffer = new StringBuffer(16);
+    private final FieldPosition mFieldPosition = new FieldPosition(NumberFormat.INTEGER_FIELD);
+
+    // IPアドレス
+    private int mIpAddress;
+    private String mIpAddressText = null;
+
+    // 追加情報
+    private int mRssi;
+    private int mLevel;
+    private int mFrequency;
+    private int mChannel;
+    private WifiChannel.Band mBand;
+    private int mWidth;
+    private int mSpeed;
+    private String mIpv6;
+    private String mExtraInfo = null;
+
+    /**
+     * IPアドレスを整形
+     *
+     * @param ip IPアドレス (WifiInfo, DhcpInfo の形式)
+     * @return ex) "192.168.0.1"
+     */
+    String formatIpAddress(int ip) {
+        if (mIpAddressText == null || ip != mIpAddress) {
+            mIpAddress = ip;
+            mIpAddressText = NetworkStateInfo.int2IpAddress(ip);
+        }
+        return mIpAddressText;
+    }
+
+    /**
+     * Wi-Fiの追加情報を整形
+     *
+     * @param rssi 信号強度(dBm)
+     * @param level 信号レベル (0-4)
+     * @param freq 周波数(MHz) (0以下:不明)
+     * @param channel チャネル番号 (0以下:不明)
+     * @param band 周波数帯 (null:不明)
+     * @param width 帯域幅(MHz) (0以下:不明)
+     * @param speed リンク速度 (0以下:不明)
+     * @param ipv6 IPv6 アドレス (null:なし)
+     * @return ex) "Signal: 4/4 (-45dBm)\nChannel: 36CH (5,180MHz)\nBand: 5GHz / 80MHz\nSpeed: 433Mbps"
+     */
+    String formatExtraInfo(int rssi, int level, int freq, int channel, WifiChannel.Band band, int width,
+                           int speed, String ipv6) {
+        Locale locale = Locale.getDefault();
+        if (mExtraInfo != null && rssi == mRssi && level == mLevel && freq == mFrequency &&
+                channel == mChannel && band == mBand && width == mWidth && speed == mSpeed && (ipv6 == null ? mIpv6 == null : ipv6.equals(mIpv6)) &&
+                locale.equals(mLocale)) {
+            return mExtraInfo;
+        }
+        if (!locale.equals(mLocale)) {
+            mLocale = locale;
+            mNumberFormat = null;
+        }
+        mRssi = rssi;
+        mLevel = level;
+        mFrequency = freq;
+        mChannel = channel;
+        mBand = band;
+        mWidth = width;
+        mSpeed = speed;
+        mIpv6 = ipv6;
+
+        StringBuilder b = mBuilder;
+        b.setLength(0);
+        b.append("Signal: ").append(level).append("/4 (").append(rssi).append("dBm)");
+        if (freq > 0 && channel > 0) {
+            // ex) "36CH (5,180MHz)"
+            b.append("\nChannel: ").append(channel).append("CH (");
+            appendNumber(b, freq);
+            b.append("MHz)");
+        }
+        if (band != null) {
+            // ex) "5GHz / 80MHz"
+            b.append("\nBand: ").append(band.getLabel());
+            if (width > 0) {
+                b.append(" / ").append(width).append("MHz");
+            }
+        }
+        if (speed > 0) {
+            b.append("\nSpeed: ").append(speed).append(WifiInfo.LINK_SPEED_UNITS);
+        }
+        if (ipv6 != null) {
+            b.append("\nIPv6: ").append(ipv6);
+        }
+        mExtraInfo = b.toString();
+        return mExtraInfo;
+    }
+
+    /**
+     * ロケールに応じた桁区切りで数値を追加
+     */
+    private void appendNumber(StringBuilder b, long value) {
+        if (mNumberFormat == null) {
+            mNumberFormat = NumberFormat.getNumberInstance(mLocale);
+        }
+        mNumberBuffer.setLength(0);
+        mNumberFormat.format(value, mNumberBuffer, mFieldPosition);
+        b.append(mNumberBuffer);
+    }
+}
@@ -0,0 +1,84 @@
+package net.orleaf.android.wifistate.core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * APIレベルによって存在しない int 値のメソッド・フィールドの参照
+ *
+ * 生成時に一度だけ検索し、見つからなかった場合も「未対応」として結果を保持する。
+ * 以降の参照では例外は発生しない。
+ */
+class IntAccessor {
+    private static final IntAccessor UNSUPPORTED = new IntAccessor(null, null);
+
+    private final Method mMethod;
+    private final Field mField;
+
+    private IntAccessor(Method method, Field field) {
+        mMethod = method;
+        mField = field;
+    }
+
+    /**
+     * 引数なしのメソッドの参照を生成
+     *
+     * @param cls クラス
+     * @param name メソッド名
+     */
+    static IntAccessor method(Class<?> cls, String name) {
+        try {
+            return new IntAccessor(cls.getMethod(name), null);
+        } catch (NoSuchMethodException e) {
+            return UNSUPPORTED;
+        } catch (SecurityException e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * public フィールドの参照を生成
+     *
+     * @param cls クラス
+     * @param name フィールド名
+     */
+    static IntAccessor field(Class<?> cls, String name) {
+        try {
+            return new IntAccessor(null, cls.getField(name));
+        } catch (NoSuchFieldException e) {
+            return UNSUPPORTED;
+        } catch (SecurityException e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * 対応しているかどうか
+     */
+    boolean isSupported() {
+        return mMethod != null || mField != null;
+    }
+
+    /**
+     * 値を取得
+     *
+     * @param target 対象のオブジェクト
+     * @return 値 (-1:未対応)
+     */
+    int get(Object target) {
+        try {
+            if (mMethod != null) {
+                return (Integer) mMethod.invoke(target);
+            }
+            if (mField != null) {
+                return mField.getInt(target);
+            }
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,331 @@
+package net.orleaf.android.wifistate.core;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import android.net.ConnectivityManager;
+import android.os.SystemClock;
+
+/**
+ * 端末のIPアドレスのキャッシュ
+ *
+ * インタフェースごとの IPv4 アドレス・IPv6 アドレスを保持し、
+ * ネットワーク状態が変化したとき (markStale) か一定時間経過後の初回参照時にのみ再取得する。
+ * IPv6 アドレスは /proc/net/if_inet6 のフラグから、固定アドレスと一時アドレスを選択する。
+ * 既定のインタフェースは、有効なネットワークの種別に対応するインタフェースを優先して選択する。
+ */
+class LocalAddressCache {
+    private static final String IF_INET6 = "/proc/net/if_inet6";
+    private static final long MAX_AGE = 10 * 60 * 1000;     // 一時アドレスの更新に追従するための有効期間
+
+    // /proc/net/if_inet6 のスコープ・フラグ
+    private static final int SCOPE_GLOBAL = 0x00;
+    private static final int IFA_F_TEMPORARY = 0x01;
+    private static final int IFA_F_DADFAILED = 0x08;
+    private static final int IFA_F_DEPRECATED = 0x20;
+    private static final int IFA_F_TENTATIVE = 0x40;
+
+    // IPv6 アドレスの優先度
+    private static final int RANK_GLOBAL = 1;       // グローバルユニキャスト (2000::/3)
+    private static final int RANK_PREFERRED = 2;    // 非推奨でない
+
+    // インタフェース名の接頭辞
+    private static final String[] WIFI_INTERFACES = { "wlan", "eth" };
+    private static final String[] MOBILE_INTERFACES = { "rmnet", "ccmni", "pdp", "ppp", "seth", "v4-rmnet" };
+    private static final String[] VIRTUAL_INTERFACES = { "p2p", "tun", "dummy", "sit", "ip6tnl", "ap", "rndis", "bt-pan" };
+
+    private final List<Addresses> mInterfaces = new ArrayList<Addresses>();
+    private boolean mStale = true;
+    private long mUpdated;
+
+    /**
+     * インタフェースのアドレス
+     */
+    static class Addresses {
+        private final String mName;
+        private String mIpv4 = null;
+        private String mIpv6 = null;            // 固定アドレス
+        private int mIpv6Rank = -1;
+        private String mIpv6Temporary = null;   // 一時アドレス (RFC 4941)
+        private int mIpv6TemporaryRank = -1;
+
+        Addresses(String name) {
+            mName = name;
+        }
+
+        /** インタフェース名 */
+        String getName() {
+            return mName;
+        }
+
+        /** IPv4 アドレス (null:なし) */
+        String getIpv4Address() {
+            return mIpv4;
+        }
+
+        /** IPv6 固定アドレス (null:なし) */
+        String getIpv6Address() {
+            return mIpv6;
+        }
+
+        /** IPv6 一時アドレス (null:なし) */
+        String getIpv6TemporaryAddress() {
+            return mIpv6Temporary;
+        }
+
+        /**
+         * 表示するアドレス (IPv4 > IPv6 固定 > IPv6 一時 の順)
+         */
+        String getPrimaryAddress() {
+            if (mIpv4 != null) {
+                return mIpv4;
+            } else if (mIpv6 != null) {
+                return mIpv6;
+            }
+            return mIpv6Temporary;
+        }
+
+        private boolean isEmpty() {
+            return getPrimaryAddress() == null;
+        }
+
+        /**
+         * インターネットに到達できるアドレス (IPv4 または IPv6 グローバルユニキャスト) を持つか
+         */
+        private boolean hasGlobalAddress() {
+            return mIpv4 != null || (mIpv6Rank >= 0 && (mIpv6Rank & RANK_GLOBAL) != 0) ||
+                    (mIpv6TemporaryRank >= 0 && (mIpv6TemporaryRank & RANK_GLOBAL) != 0);
+        }
+
+        /**
+         * IPv6 アドレスを追加 (より優先度の高いものを保持)
+         */
+        private void addIpv6(String address, int rank, boolean temporary) {
+            if (temporary) {
+                if (rank > mIpv6TemporaryRank) {
+                    mIpv6Temporary = address;
+                    mIpv6TemporaryRank = rank;
+                }
+            } else {
+                if (rank > mIpv6Rank) {
+                    mIpv6 = address;
+                    mIpv6Rank = rank;
+                }
+            }
+        }
+    }
+
+    /**
+     * ネットワーク状態が変化したことを通知
+     */
+    synchronized void markStale() {
+        mStale = true;
+    }
+
+    /**
+     * 指定した IPv4 アドレスを持つインタフェースのアドレスを取得
+     *
+     * @param ipv4 IPv4 アドレス
+     * @return アドレス (null:該当なし)
+     */
+    synchronized Addresses findByIpv4(String ipv4) {
+        refreshIfStale();
+        for (Addresses addresses : mInterfaces) {
+            if (ipv4.equals(addresses.mIpv4)) {
+                return addresses;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 有効なネットワークのインタフェースのアドレスを取得
+     *
+     * @param networkType 有効なネットワークの種別 (ConnectivityManager.TYPE_*, -1:不明)
+     * @return アドレス (null:アドレスを持つインタフェースなし)
+     */
+    synchronized Addresses getDefault(int networkType) {
+        refreshIfStale();
+        return selectDefault(mInterfaces, networkType);
+    }
+
+    /**
+     * 既定のインタフェースを選択
+     *
+     * ネットワークの種別に対応するインタフェース (wlan / rmnet 等) を優先し、
+     * 次にグローバルアドレスを持つインタフェースを優先する。
+     * Wi-Fi Direct・VPN 等の仮想インタフェースは他になければ選択する。同順位は列挙順。
+     *
+     * @param interfaces アドレスを持つインタフェース
+     * @param networkType 有効なネットワークの種別 (ConnectivityManager.TYPE_*, -1:不明)
+     * @return アドレス (null:なし)
+     */
+    static Addresses selectDefault(List<Addresses> interfaces, int networkType) {
+        Addresses selected = null;
+        int selectedScore = Integer.MIN_VALUE;
+        for (Addresses addresses : interfaces) {
+            int score = 0;
+            if (startsWith(addresses.mName, VIRTUAL_INTERFACES)) {
+                score -= 4;
+            } else if ((networkType == ConnectivityManager.TYPE_WIFI && startsWith(addresses.mName, WIFI_INTERFACES)) ||
+                    (networkType == ConnectivityManager.TYPE_MOBILE && startsWith(addresses.mName, MOBILE_INTERFACES))) {
+                score += 4;
+            }
+            if (addresses.hasGlobalAddress()) {
+                score += 2;
+            }
+            if (score > selectedScore) {
+                selected = addresses;
+                selectedScore = score;
+            }
+        }
+        return selected;
+    }
+
+    private static boolean startsWith(String name, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refreshIfStale() {
+        long now = SystemClock.elapsedRealtime();
+        if (!mStale && now - mUpdated < MAX_AGE) {
+            return;
+        }
+        mStale = false;
+        mUpdated = now;
+        mInterfaces.clear();
+        readNetworkInterfaces(false);
+        if (!readIfInet6(mInterfaces)) {
+            readNetworkInterfaces(true);
+        }
+        for (int i = mInterfaces.size() - 1; i >= 0; i--) {
+            if (mInterfaces.get(i).isEmpty()) {
+                mInterfaces.remove(i);
+            }
+        }
+    }
+
+    private static Addresses getInterface(List<Addresses> interfaces, String name) {
+        for (Addresses addresses : interfaces) {
+            if (addresses.mName.equals(name)) {
+                return addresses;
+            }
+        }
+        Addresses addresses = new Addresses(name);
+        interfaces.add(addresses);
+        return addresses;
+    }
+
+    /**
+     * NetworkInterface からアドレスを取得
+     *
+     * @param withIpv6 IPv6 アドレスも取得するか (/proc/net/if_inet6 を参照できない場合)
+     */
+    private void readNetworkInterfaces(boolean withIpv6) {
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                NetworkInterface network = interfaces.nextElement();
+                Enumeration<InetAddress> addresses = network.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress address = addresses.nextElement();
+                    if (address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isAnyLocalAddress()) {
+                        continue;
+                    }
+                    Addresses entry = getInterface(mInterfaces, network.getName());
+                    if (address instanceof Inet4Address) {
+                        if (entry.mIpv4 == null) {
+                            entry.mIpv4 = address.getHostAddress();
+                        }
+                    } else if (withIpv6) {
+                        // フラグが不明なので固定アドレスとして扱う
+                        entry.addIpv6(stripScope(address.getHostAddress()), 0, false);
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * /proc/net/if_inet6 から IPv6 アドレスを取得
+     *
+     * @param interfaces 取得先
+     * @return true:取得成功 false:参照できない
+     */
+    private static boolean readIfInet6(List<Addresses> interfaces) {
+        try {
+            return readIfInet6(new FileReader(IF_INET6), interfaces);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * /proc/net/if_inet6 の形式の内容から IPv6 アドレスを取得
+     *
+     * @param in 内容 (閉じる)
+     * @param interfaces 取得先
+     * @return true:取得成功 false:形式が不正
+     */
+    static boolean readIfInet6(Reader in, List<Addresses> interfaces) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(in, 1024);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // address / ifindex / prefix length / scope / flags / device
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 6 || fields[0].length() != 32) {
+                    continue;
+                }
+                int scope = Integer.parseInt(fields[3], 16);
+                int flags = Integer.parseInt(fields[4], 16);
+                if (scope != SCOPE_GLOBAL || (flags & (IFA_F_TENTATIVE | IFA_F_DADFAILED)) != 0) {
+                    continue;
+                }
+                byte[] bytes = new byte[16];
+                for (int i = 0; i < 16; i++) {
+                    bytes[i] = (byte) Integer.parseInt(fields[0].substring(i * 2, i * 2 + 2), 16);
+                }
+                // 優先度: 非推奨でないもの > グローバルユニキャスト (2000::/3) > ユニークローカル
+                int rank = ((flags & IFA_F_DEPRECATED) == 0 ? RANK_PREFERRED : 0) +
+                        ((bytes[0] & 0xe0) == 0x20 ? RANK_GLOBAL : 0);
+                getInterface(interfaces, fields[5]).addIpv6(InetAddress.getByAddress(bytes).getHostAddress(), rank,
+                        (flags & IFA_F_TEMPORARY) != 0);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static String stripScope(String address) {
+        int index = address.indexOf('%');
+        return (index >= 0) ? address.substring(0, index) : address;
+    }
+}
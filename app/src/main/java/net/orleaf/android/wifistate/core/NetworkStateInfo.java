@@ -1,29 +1,21 @@
 package net.orleaf.android.wifistate.core;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.InetAddress;
-import java.net.NetworkInterface;
-import java.net.SocketException;
-import java.text.NumberFormat;
-import java.util.Enumeration;
-import java.util.List;
+import java.io.File;
+import java.util.Map;
 
 import android.content.Context;
-import android.content.res.Resources;
 import android.net.ConnectivityManager;
 import android.net.DhcpInfo;
 import android.net.NetworkInfo;
-import android.net.wifi.ScanResult;
 import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
+import android.os.SystemClock;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
 import net.orleaf.android.wifistate.BuildConfig;
-import net.orleaf.android.wifistate.R;
+import net.orleaf.android.wifistate.core.ping.LatencySummary;
 import net.orleaf.android.wifistate.core.preferences.WifiStatePreferences;
 
 /**
@@ -41,6 +33,7 @@ public class NetworkStateInfo {
         STATE_WIFI_CONNECTED("w6"),
         STATE_MOBILE_CONNECTING("m3"),
         STATE_MOBILE_CONNECTED("m6");
+        // 定義順は StateIconTable と対応する
         private String iconName;
         States(String iconName) {
             this.iconName = iconName;
@@ -50,6 +43,76 @@ public class NetworkStateInfo {
         }
     }
 
+    // 状態の取得元 (それぞれ1回のバインダ呼び出し)
+    private static final int SOURCE_WIFI_STATE = 0x01;      // WifiManager.getWifiState()
+    private static final int SOURCE_WIFI_INFO = 0x02;       // WifiManager.getConnectionInfo()
+    private static final int SOURCE_WIFI_NETWORK = 0x04;    // ConnectivityManager.getNetworkInfo(TYPE_WIFI)
+    private static final int SOURCE_DATA_STATE = 0x08;      // TelephonyManager.getDataState()
+    private static final int SOURCE_DATA_NETWORK = 0x10;    // ConnectivityManager.getNetworkInfo(TYPE_MOBILE)
+    private static final int SOURCE_COUNT = 5;
+    private static final int SOURCE_ALL = (1 << SOURCE_COUNT) - 1;
+    private static final int SOURCE_DATA = SOURCE_DATA_STATE | SOURCE_DATA_NETWORK;
+
+    /**
+     * 状態更新のきっかけとなるイベント
+     */
+    public enum Event {
+        FULL(SOURCE_ALL),                                       // 明示的な更新など
+        WIFI_STATE(SOURCE_WIFI_STATE | SOURCE_WIFI_INFO | SOURCE_WIFI_NETWORK), // WIFI_STATE_CHANGED
+        SUPPLICANT(SOURCE_WIFI_INFO),                           // supplicant.STATE_CHANGE, supplicant.CONNECTION_CHANGE
+        WIFI_NETWORK(SOURCE_WIFI_INFO | SOURCE_WIFI_NETWORK),   // STATE_CHANGE
+        CONNECTIVITY(SOURCE_WIFI_NETWORK | SOURCE_DATA),        // CONNECTIVITY_CHANGE
+        DATA_CONNECTION(SOURCE_DATA);                           // PhoneStateListener
+        private final int sources;
+        Event(int sources) {
+            this.sources = sources;
+        }
+
+        /**
+         * インテントのアクションからイベントを取得
+         *
+         * @param action アクション
+         * @return イベント (該当なしの場合は FULL)
+         */
+        public static Event fromAction(String action) {
+            if (WifiManager.WIFI_STATE_CHANGED_ACTION.equals(action)) {
+                return WIFI_STATE;
+            } else if (WifiManager.SUPPLICANT_STATE_CHANGED_ACTION.equals(action) ||
+                    WifiManager.SUPPLICANT_CONNECTION_CHANGE_ACTION.equals(action)) {
+                return SUPPLICANT;
+            } else if (WifiManager.NETWORK_STATE_CHANGED_ACTION.equals(action)) {
+                return WIFI_NETWORK;
+            } else if (ConnectivityManager.CONNECTIVITY_ACTION.equals(action)) {
+                return CONNECTIVITY;
+            }
+            return FULL;
+        }
+    }
+
+    // イベント種別ごとの受信回数・バインダ呼び出し回数 (プロセス全体)
+    private static final int[] mEventCounts = new int[Event.values().length];
+    private static final int[] mBinderCalls = new int[Event.values().length];
+
+    // APIレベルによって存在しないメソッド (プロセスごとに一度だけ検索)
+    private static final IntAccessor WIFI_INFO_FREQUENCY = IntAccessor.method(WifiInfo.class, "getFrequency");
+
+    // スキャン結果 (SCAN_RESULTS_AVAILABLE 受信後の初回参照時のみ再構築)
+    private static final ScanResultStore mScanResultStore = new ScanResultStore();
+
+    // 端末のIPアドレス (ネットワーク状態の変化で再取得)
+    private static final LocalAddressCache mLocalAddresses = new LocalAddressCache();
+
+    // 接続過程の時系列 (プロセス全体)
+    private static final ConnectionTimeline mConnectionTimeline = new ConnectionTimeline();
+
+    // ローミングの検出 (プロセス全体)
+    private static final RoamTracker mRoamTracker = new RoamTracker();
+
+    // 信号強度の履歴 (プロセス全体、アプリ専用の領域に保存)
+    private static final String SIGNAL_HISTORY_FILE = "signal_history";
+    private static SignalHistory mSignalHistory = null;
+    private static final int INVALID_RSSI = -127;   // WifiInfo.INVALID_RSSI
+
     private final Context mCtx;
     private final WifiManager mWifiManager;
     private final ConnectivityManager mConnectivityManager;
@@ -57,18 +120,23 @@ public class NetworkStateInfo {
 
     private String mNetworkName;
     private States mState = States.STATE_DISABLED;
+    private int mStateDetailRes = 0;
     private String mStateDetail = null;
 
+    // 再取得が必要な取得元と、それぞれを最後に無効化したイベント
+    private int mDirtySources = SOURCE_ALL;
+    private final Event[] mDirtyBy = new Event[SOURCE_COUNT];
+
+    // 表示用文字列の整形
+    private final InfoFormatter mFormatter = new InfoFormatter();
+
+    // 状態導出の入力 (取得した値を保持)
+    private final StateDerivation.Input mInput = new StateDerivation.Input();
+
     // Wi-Fi state
-    private int mWifiState = 0;
     private WifiInfo mWifiInfo = null;
-    private List<ScanResult> mScanResults = null;
-    private boolean mSupplicantConnected = false;
-    private SupplicantState mSupplicantState = null;
-    private NetworkInfo mWifiNetworkInfo = null;
 
     // Mobile network state
-    private int mDataConnectionState;
     private NetworkInfo mDataNetworkInfo = null;
 
     /**
@@ -83,118 +151,111 @@ public class NetworkStateInfo {
         mTelephonyManager = (TelephonyManager) mCtx.getSystemService(Context.TELEPHONY_SERVICE);
         mState = States.STATE_DISABLED;
         mNetworkName = null;
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            mDirtyBy[i] = Event.FULL;
+        }
     }
 
     /**
-     * 状態を更新する
+     * 状態を更新する (すべての取得元から再取得)
      *
      * @return true:変更あり false:変更なし
      */
     public boolean update() {
-        Resources res = mCtx.getResources();
-
-        States newState = mState;
-        String newStateDetail = mStateDetail;
+        return update(Event.FULL);
+    }
 
-        // Wi-Fiの状態を取得
-        mWifiState = mWifiManager.getWifiState();
-        mWifiInfo = mWifiManager.getConnectionInfo();
-        mScanResults = mWifiManager.getScanResults();
-        mSupplicantState = mWifiInfo.getSupplicantState();
-        if (mSupplicantState != SupplicantState.DISCONNECTED) {
-            mSupplicantConnected = true;
-        }
-        mWifiNetworkInfo = mConnectivityManager.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
+    /**
+     * イベントに応じて状態を更新する
+     *
+     * @param event イベント
+     * @return true:変更あり false:変更なし
+     */
+    public boolean update(Event event) {
+        invalidate(event);
+        return refresh();
+    }
 
-        // モバイルネットワークの状態を取得
-        mDataConnectionState = mTelephonyManager.getDataState();
-        mDataNetworkInfo = mConnectivityManager.getNetworkInfo(ConnectivityManager.TYPE_MOBILE);
-
-        if (mWifiState == WifiManager.WIFI_STATE_DISABLING ||
-                mWifiState == WifiManager.WIFI_STATE_DISABLED) {
-            // clear wifi state
-            //wifiNetworkInfo = null;
-            //supplicantConnected = false;
-            //supplicantState = null;
-            newState = States.STATE_DISABLED;
-            newStateDetail = res.getString(R.string.state_unavailable);
-        } else if (mWifiState == WifiManager.WIFI_STATE_ENABLING) {
-            // -> enabled
-            newState = States.STATE_WIFI_ENABLING;
-            newStateDetail = res.getString(R.string.state_enabling);
-        } else if (mWifiState == WifiManager.WIFI_STATE_ENABLED) {
-            // enabling -> enabled
-            if (mState.compareTo(States.STATE_WIFI_ENABLED) < 0) {
-                newState = States.STATE_WIFI_ENABLED;
-                newStateDetail = res.getString(R.string.state_enabled);
+    /**
+     * イベントの影響を受ける取得元を無効化する (次回の refresh() で再取得)
+     *
+     * @param event イベント
+     */
+    public void invalidate(Event event) {
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            if ((event.sources & (1 << i)) != 0) {
+                mDirtyBy[i] = event;
             }
+        }
+        mDirtySources |= event.sources;
+        if ((event.sources & (SOURCE_WIFI_STATE | SOURCE_WIFI_NETWORK | SOURCE_DATA_NETWORK)) != 0) {
+            // IPアドレスが変わった可能性がある
+            mLocalAddresses.markStale();
+        }
+        synchronized (mEventCounts) {
+            mEventCounts[event.ordinal()]++;
+        }
+    }
 
-            if (mWifiNetworkInfo != null && mWifiNetworkInfo.isAvailable() &&
-                    mWifiNetworkInfo.getState() == NetworkInfo.State.CONNECTING &&
-                    mWifiNetworkInfo.getDetailedState() == NetworkInfo.DetailedState.OBTAINING_IPADDR) {
-                newState = States.STATE_WIFI_OBTAINING_IPADDR;
-                newStateDetail = res.getString(R.string.state_obtaining_ipaddr);
-            } else if (mWifiNetworkInfo != null && mWifiNetworkInfo.isAvailable() &&
-                    mWifiNetworkInfo.getState() == NetworkInfo.State.CONNECTED &&
-                    mWifiNetworkInfo.getDetailedState() == NetworkInfo.DetailedState.CONNECTED) {
-                newState = States.STATE_WIFI_CONNECTED;
-                newStateDetail = res.getString(R.string.state_connected);
-            } else if (mSupplicantConnected && mSupplicantState != null) {
-                if (mSupplicantState == SupplicantState.SCANNING) {
-                    newState = States.STATE_WIFI_SCANNING;
-                    newStateDetail = res.getString(R.string.state_scanning);
-                } else if (mSupplicantState == SupplicantState.ASSOCIATING) {
-                    newState = States.STATE_WIFI_CONNECTING;
-                    newStateDetail = res.getString(R.string.state_associating);
-                } else if (mSupplicantState == SupplicantState.ASSOCIATED) {
-                    newState = States.STATE_WIFI_CONNECTING;
-                    newStateDetail = res.getString(R.string.state_associated);
-                } else if (mSupplicantState == SupplicantState.FOUR_WAY_HANDSHAKE ||
-                           mSupplicantState == SupplicantState.GROUP_HANDSHAKE) {
-                    newState = States.STATE_WIFI_CONNECTING;
-                    newStateDetail = res.getString(R.string.state_handshaking);
-                } else if (mSupplicantState == SupplicantState.COMPLETED) {
-                    newState = States.STATE_WIFI_COMPLETED;
-                    newStateDetail = res.getString(R.string.state_handshake_completed);
-                } else if (mSupplicantState == SupplicantState.DISCONNECTED) {
-                    newState = States.STATE_WIFI_SCANNING;
-                    newStateDetail = res.getString(R.string.state_disconnected);
-                }
-            }
+    /**
+     * 無効化された取得元のみ再取得して状態を更新する
+     *
+     * @return true:変更あり false:変更なし
+     */
+    public boolean refresh() {
+        int sources = mDirtySources;
+        if (!WifiStatePreferences.getShowDataNetwork(mCtx)) {
+            // モバイルネットワークの状態は表示しない場合は参照しないので取得を保留
+            sources &= ~SOURCE_DATA;
         }
+        mDirtySources &= ~sources;
+        countBinderCalls(sources);
 
-        // モバイルネットワーク状態取得
-        if (WifiStatePreferences.getShowDataNetwork(mCtx)) {
-            // ・Wi-Fi無効時、または
-            // ・スキャン中消去設定が有効でスキャン中
-            if (newState == States.STATE_DISABLED ||
-                    (newState == States.STATE_WIFI_SCANNING && WifiStatePreferences.getClearOnScanning(mCtx))) {
-                if (mDataConnectionState == TelephonyManager.DATA_CONNECTING) {
-                    newState = States.STATE_MOBILE_CONNECTING;
-                    newStateDetail = res.getString(R.string.state_mobile_connecting);
-                } else if (mDataConnectionState == TelephonyManager.DATA_CONNECTED) {
-                    newState = States.STATE_MOBILE_CONNECTED;
-                    newStateDetail = res.getString(R.string.state_mobile_connected);
-                } else {
-                    newState = States.STATE_DISABLED;
-                    newStateDetail = res.getString(R.string.state_unavailable);
-                }
+        // Wi-Fiの状態を取得
+        if ((sources & SOURCE_WIFI_STATE) != 0) {
+            mInput.wifiState = mWifiManager.getWifiState();
+        }
+        if ((sources & SOURCE_WIFI_INFO) != 0) {
+            mWifiInfo = mWifiManager.getConnectionInfo();
+            mInput.supplicantState = mWifiInfo.getSupplicantState();
+            if (mInput.supplicantState != SupplicantState.DISCONNECTED) {
+                mInput.supplicantConnected = true;
+            }
+            if (mInput.supplicantState == SupplicantState.COMPLETED) {
+                trackRoaming();
             }
         }
+        if ((sources & SOURCE_WIFI_NETWORK) != 0) {
+            NetworkInfo wifiNetworkInfo = mConnectivityManager.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
+            mInput.wifiAvailable = (wifiNetworkInfo != null && wifiNetworkInfo.isAvailable());
+            mInput.wifiNetworkState = (wifiNetworkInfo != null) ? wifiNetworkInfo.getState() : null;
+            mInput.wifiDetailedState = (wifiNetworkInfo != null) ? wifiNetworkInfo.getDetailedState() : null;
+        }
 
-        if (newState == null) {
-            // no change
-            if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "State not recognized.");
-            return false;
+        // モバイルネットワークの状態を取得
+        if ((sources & SOURCE_DATA_STATE) != 0) {
+            mInput.dataState = mTelephonyManager.getDataState();
+        }
+        if ((sources & SOURCE_DATA_NETWORK) != 0) {
+            mDataNetworkInfo = mConnectivityManager.getNetworkInfo(ConnectivityManager.TYPE_MOBILE);
         }
-        if (newState == mState && mStateDetail != null && newStateDetail.equals(mStateDetail)) {
+        mInput.showDataNetwork = WifiStatePreferences.getShowDataNetwork(mCtx);
+        mInput.clearOnScanning = WifiStatePreferences.getClearOnScanning(mCtx);
+
+        StateDerivation.Result result = StateDerivation.derive(mInput, mState);
+        States newState = (result != null) ? result.getState() : mState;
+        int newStateDetailRes = (result != null) ? result.getDetailRes() : mStateDetailRes;
+
+        if (newState == mState && mStateDetailRes != 0 && newStateDetailRes == mStateDetailRes) {
             // 状態変更なし
             return false;
         }
 
-        if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "=>[" + newState + "] " + newStateDetail);
+        // 状態が変わった場合のみ文字列を取得
         mState = newState;
-        mStateDetail = newStateDetail;
+        mStateDetailRes = newStateDetailRes;
+        mStateDetail = (newStateDetailRes != 0) ? mCtx.getResources().getString(newStateDetailRes) : null;
+        if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "=>[" + newState + "] " + mStateDetail);
 
         // ネットワーク名を取得
         mNetworkName = null;
@@ -212,6 +273,59 @@ public class NetworkStateInfo {
         return true;
     }
 
+    /**
+     * 接続中のアクセスポイントをローミングの検出に記録
+     */
+    private void trackRoaming() {
+        String bssid = mWifiInfo.getBSSID();
+        int ch = -1;
+        if (mRoamTracker.isNewBssid(bssid)) {
+            // アクセスポイントが変わった場合のみチャネルを取得
+            int freq = getWifiFrequency();
+            if (freq < 0) {
+                freq = getScanResultStore().getFrequency(ScanResultStore.packBssid(bssid));
+            }
+            ch = (freq > 0) ? convertFrequencyToChannel(freq) : -1;
+        }
+        mRoamTracker.onConnected(mWifiInfo.getSSID(), bssid, mWifiInfo.getRssi(), ch, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * バインダ呼び出し回数を、各取得元を無効化したイベントごとに集計
+     */
+    private void countBinderCalls(int sources) {
+        synchronized (mEventCounts) {
+            for (int i = 0; i < SOURCE_COUNT; i++) {
+                if ((sources & (1 << i)) != 0) {
+                    mBinderCalls[mDirtyBy[i].ordinal()]++;
+                }
+            }
+        }
+        if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Refresh sources: 0x" + Integer.toHexString(sources));
+    }
+
+    /**
+     * イベント種別ごとの統計を取得
+     *
+     * @return ex) "SUPPLICANT: 12 events, 3 calls\nCONNECTIVITY: 4 events, 9 calls"
+     */
+    public static String getEventStats() {
+        StringBuilder stats = new StringBuilder();
+        synchronized (mEventCounts) {
+            for (Event event : Event.values()) {
+                int count = mEventCounts[event.ordinal()];
+                if (count > 0) {
+                    if (stats.length() > 0) {
+                        stats.append("\n");
+                    }
+                    stats.append(event).append(": ").append(count).append(" events, ")
+                            .append(mBinderCalls[event.ordinal()]).append(" calls");
+                }
+            }
+        }
+        return stats.toString();
+    }
+
     /**
      * 消去可能な状態かどうか
      *
@@ -240,8 +354,7 @@ public class NetworkStateInfo {
      * @return アイコンのリソースID
      */
     public int getIcon() {
-        String name = String.format("state_%s_%s", WifiStatePreferences.getIconStyle(mCtx), mState.getIconName());
-        return mCtx.getResources().getIdentifier(name, "drawable", mCtx.getPackageName());
+        return StateIconTable.getIcon(WifiStatePreferences.getIconStyle(mCtx), mState);
     }
 
     /**
@@ -320,85 +433,163 @@ public class NetworkStateInfo {
      * @return 追加情報 (null:未接続)
      */
     public String getExtraInfo() {
-        String detail = null;
-        ScanResult scanResult = getScanResult();
-        if (isWifiAPDecided()) {
-            // Signal Level
-            int rssi = mWifiInfo.getRssi();
-            detail = "Signal: " + WifiManager.calculateSignalLevel(rssi, 5) + "/4 (" + rssi + "dBm)";
-
-            // Channel
-            int freq = getWifiFrequency();
-            if (freq < 0 && scanResult != null) {
-                // WifiInfo から取得できない場合は ScanResult から取得
-                freq = scanResult.frequency;
-            }
-            if (freq > 0) {
-                int ch = convertFrequencyToChannel(freq);
-                if (ch > 0) {
-                    // ex) "36CH (5,180MHz)"
-                    detail += "\nChannel: " + ch + "CH (" + NumberFormat.getNumberInstance().format(freq) + "MHz)";
-                }
-            }
+        if (!isWifiAPDecided()) {
+            return null;
+        }
+        // Signal Level
+        int rssi = mWifiInfo.getRssi();
+        int level = WifiManager.calculateSignalLevel(rssi, 5);
+
+        // Channel
+        int freq = getWifiFrequency();
+        if (freq < 0) {
+            // WifiInfo から取得できない場合は ScanResult から取得
+            freq = getScanResultStore().getFrequency(ScanResultStore.packBssid(mWifiInfo.getBSSID()));
+        }
+        int ch = (freq > 0) ? convertFrequencyToChannel(freq) : -1;
+        WifiChannel.Band band = (freq > 0) ? WifiChannel.toBand(freq) : null;
 
-            // Link Speed
-            int speed = mWifiInfo.getLinkSpeed();
-            if (speed > 0) {
-                detail += "\nSpeed: " + speed + WifiInfo.LINK_SPEED_UNITS;
-            }
+        // Channel Width (ScanResult から取得)
+        int width = -1;
+        if (band != null && ScanResultStore.isChannelWidthSupported()) {
+            width = WifiChannel.toWidth(getScanResultStore().getChannelWidth(ScanResultStore.packBssid(mWifiInfo.getBSSID())));
         }
-        return detail;
+
+        // 値が変わった場合のみ文字列を生成
+        return mFormatter.formatExtraInfo(rssi, level, freq, ch, band, width, mWifiInfo.getLinkSpeed(),
+                getWifiIpv6Address());
     }
 
     /**
-     * 接続中の ScanResult を取得
-     * @return ScanResult
+     * スキャン結果を取得
+     *
+     * @return スキャン結果 (更新されていれば再構築する)
      */
-    private ScanResult getScanResult() {
-        if (mScanResults != null) {
-            for (ScanResult scanResult : mScanResults) {
-                if (scanResult.BSSID.equals(mWifiInfo.getBSSID())) {
-                    return scanResult;
-                }
-            }
+    private ScanResultStore getScanResultStore() {
+        if (mScanResultStore.isStale()) {
+            mScanResultStore.rebuild(mWifiManager.getScanResults());
         }
-        return null;
+        return mScanResultStore;
     }
 
     /**
-     * WifiInfo から周波数を取得 (requires API Level 21)
+     * スキャン結果が更新されたことを通知 (SCAN_RESULTS_AVAILABLE 受信時)
+     */
+    public static void invalidateScanResults() {
+        mScanResultStore.markStale();
+    }
+
+    /**
+     * サプリカントの状態変化を接続過程の時系列に記録 (supplicant.STATE_CHANGE 受信時)
      *
-     * @return 周波数 (-1:取得不可)
+     * @param state 新しい状態
      */
-    public int getWifiFrequency() {
-        try {
-            Method method = WifiInfo.class.getMethod("getFrequency");
-            return (Integer) method.invoke(mWifiInfo);
-        } catch (NoSuchMethodException ignored) {
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+    public static void recordSupplicantState(SupplicantState state) {
+        long now = SystemClock.elapsedRealtime();
+        ConnectionTimeline.Phase phase = ConnectionTimeline.Phase.fromSupplicantState(state);
+        if (phase != null) {
+            mConnectionTimeline.record(phase, now, null);
+        }
+        if (state != null) {
+            mRoamTracker.onSupplicantState(state, now);
         }
-        return -1;
     }
 
     /**
-     * ScanResult から値を取得
+     * Wi-Fiネットワークの状態変化を接続過程の時系列に記録 (STATE_CHANGE 受信時)
      *
-     * @param scanResult ScanResult
-     * @param fieldName field name
-     * @return field value (-1:N/A)
+     * @param info ネットワーク情報
+     */
+    public static void recordNetworkInfo(NetworkInfo info) {
+        long now = SystemClock.elapsedRealtime();
+        ConnectionTimeline.Phase phase = ConnectionTimeline.Phase.fromNetworkInfo(info);
+        if (phase != null) {
+            mConnectionTimeline.record(phase, now, info.getExtraInfo());
+        }
+        if (info != null && info.getState() == NetworkInfo.State.DISCONNECTED) {
+            // 切断後の再接続はローミングとして扱わない
+            mRoamTracker.onDisconnected(now);
+        }
+    }
+
+    /**
+     * 接続過程の所要時間の統計を取得
+     *
+     * @return SSID ごとの統計 (ConnectionTimeline.Metric 順)
+     */
+    static Map<String, LatencySummary[]> getConnectionSummaries() {
+        return mConnectionTimeline.getSummaries();
+    }
+
+    /**
+     * ローミングの統計を取得
+     *
+     * @return SSID ごとの統計 (ローミングを検出した SSID のみ)
+     */
+    static Map<String, RoamTracker.Stats> getRoamStats() {
+        return mRoamTracker.getStats(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 信号強度・リンク速度・周波数を履歴に記録 (接続中に定期的に呼ぶ)
+     *
+     * 時刻は再起動をまたいで履歴を引き継げるよう、時計の時刻を使う。
+     * (時計が戻った場合、戻る前の最後の記録の時刻を過ぎるまでは記録されない)
+     *
+     * @return true:記録 false:未接続
+     */
+    public boolean recordSignal() {
+        WifiInfo info = mWifiManager.getConnectionInfo();
+        if (info == null || info.getSupplicantState() != SupplicantState.COMPLETED || info.getRssi() <= INVALID_RSSI) {
+            return false;
+        }
+        int freq = WIFI_INFO_FREQUENCY.get(info);
+        if (freq < 0) {
+            freq = getScanResultStore().getFrequency(ScanResultStore.packBssid(info.getBSSID()));
+        }
+        getSignalHistory(mCtx).append(System.currentTimeMillis() / 1000, info.getRssi(), info.getLinkSpeed(), freq);
+        // ローミング前の信号強度として記録
+        mRoamTracker.onSignal(info.getBSSID(), info.getRssi());
+        return true;
+    }
+
+    /**
+     * 信号強度の履歴を取得 (初回は保存済みの履歴を読み込む)
      */
-    private int getScanResultInt(ScanResult scanResult, String fieldName) {
-        try {
-            Field field = ScanResult.class.getField(fieldName);
-            return (Integer) field.get(scanResult);
-        } catch (NoSuchFieldException ignored) {
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+    private static synchronized SignalHistory getSignalHistory(Context ctx) {
+        if (mSignalHistory == null) {
+            mSignalHistory = new SignalHistory(new File(ctx.getFilesDir(), SIGNAL_HISTORY_FILE));
         }
-        return -1;
+        return mSignalHistory;
+    }
+
+    /**
+     * 信号強度の履歴から指定期間の統計を取得
+     *
+     * @param ctx Context
+     * @param period 期間(秒)
+     * @return 統計
+     */
+    static SignalHistory.Summary getSignalSummary(Context ctx, long period) {
+        return getSignalHistory(ctx).getSummary(System.currentTimeMillis() / 1000, period);
+    }
+
+    /**
+     * 信号強度の履歴の保持状況 (デバッグ用)
+     *
+     * @param ctx Context
+     */
+    static String getSignalHistoryStats(Context ctx) {
+        return getSignalHistory(ctx).getStorageStats();
+    }
+
+    /**
+     * WifiInfo から周波数を取得 (requires API Level 21)
+     *
+     * @return 周波数 (-1:取得不可)
+     */
+    public int getWifiFrequency() {
+        return WIFI_INFO_FREQUENCY.get(mWifiInfo);
     }
 
     /**
@@ -409,36 +600,37 @@ public class NetworkStateInfo {
             // Wi-Fi情報から取得
             int address = mWifiInfo.getIpAddress();
             if (address != 0) {
-                return int2IpAddress(address);
+                return mFormatter.formatIpAddress(address);
             }
 
             // DHCP情報から取得
             address = mWifiManager.getDhcpInfo().ipAddress;
             if (address != 0) {
-                return int2IpAddress(address);
+                return mFormatter.formatIpAddress(address);
             }
         }
 
-        // ネットワークインタフェースからいずれかのグローバルアドレスを取得
-        Enumeration<NetworkInterface> interfaces;
-        try {
-            interfaces = NetworkInterface.getNetworkInterfaces();
-            while (interfaces.hasMoreElements()) {
-                NetworkInterface network = interfaces.nextElement();
-                Enumeration<InetAddress> addresses = network.getInetAddresses();
+        // 有効なネットワークのインタフェースからアドレスを取得 (キャッシュ)
+        NetworkInfo active = mConnectivityManager.getActiveNetworkInfo();
+        LocalAddressCache.Addresses addresses = mLocalAddresses.getDefault((active != null) ? active.getType() : -1);
+        return (addresses != null) ? addresses.getPrimaryAddress() : null;
+    }
 
-                while (addresses.hasMoreElements()) {
-                    InetAddress address = addresses.nextElement();
-                    if (!(address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isAnyLocalAddress())) {
-                        return address.getHostAddress();
-                    }
-                }
-            }
-        } catch (SocketException e) {
-            e.printStackTrace();
+    /**
+     * Wi-Fi インタフェースの IPv6 アドレスを取得
+     *
+     * @return IPv6 アドレス (固定アドレスがなければ一時アドレス, null:なし)
+     */
+    public String getWifiIpv6Address() {
+        if (!mState.equals(States.STATE_WIFI_CONNECTED) || mWifiInfo.getIpAddress() == 0) {
+            return null;
         }
-
-        return null;
+        // WifiInfo の IPv4 アドレスを持つインタフェースを Wi-Fi インタフェースとする
+        LocalAddressCache.Addresses addresses = mLocalAddresses.findByIpv4(mFormatter.formatIpAddress(mWifiInfo.getIpAddress()));
+        if (addresses == null) {
+            return null;
+        }
+        return (addresses.getIpv6Address() != null) ? addresses.getIpv6Address() : addresses.getIpv6TemporaryAddress();
     }
 
     /**
@@ -459,12 +651,13 @@ public class NetworkStateInfo {
     /**
      * intをIPアドレス文字列に変換
      */
-    private String int2IpAddress(int ip) {
-        return
-            ( ip        & 0xff) + "." +
-            ((ip >>  8) & 0xff) + "." +
-            ((ip >> 16) & 0xff) + "." +
-            ((ip >> 24) & 0xff);
+    static String int2IpAddress(int ip) {
+        return new StringBuilder(15)
+                .append( ip        & 0xff).append('.')
+                .append((ip >>  8) & 0xff).append('.')
+                .append((ip >> 16) & 0xff).append('.')
+                .append((ip >> 24) & 0xff)
+                .toString();
     }
 
     /**
@@ -474,12 +667,7 @@ public class NetworkStateInfo {
      * @return チャネル番号 (-1:変換不可)
      */
     public static int convertFrequencyToChannel(int freq) {
-        if (freq >= 2412 && freq <= 2484) {
-            return (freq - 2412) / 5 + 1;
-        } else if (freq >= 5170 && freq <= 5825) {
-            return (freq - 5170) / 5 + 34;
-        } else {
-            return -1;
-        }
+        return WifiChannel.toChannel(freq);
     }
+
 }
@@ -0,0 +1,257 @@
+package net.orleaf.android.wifistate.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.net.wifi.SupplicantState;
+import android.util.Log;
+
+import net.orleaf.android.wifistate.BuildConfig;
+import net.orleaf.android.wifistate.core.ping.LatencyHistogram;
+import net.orleaf.android.wifistate.core.ping.LatencySummary;
+
+/**
+ * ローミング (同一 SSID 内でのアクセスポイントの切り替え) の検出
+ *
+ * 接続中に BSSID が変わったことを検出し、切り替え前後の信号強度・チャネルと、
+ * サプリカントが接続完了状態を離れてから再び接続完了するまでの時間 (通信断) を記録する。
+ * SSID ごとの回数・接続時間あたりの頻度・通信断時間のヒストグラムを集計する。
+ */
+class RoamTracker {
+    private static final int MAX_NETWORKS = 8;  // 集計する SSID の数
+    private static final int NO_TIME = -1;
+
+    /**
+     * ローミングの記録
+     */
+    static class Roam {
+        final String mFrom;
+        final String mTo;
+        final int mRssiBefore;
+        final int mRssiAfter;
+        final int mChannelBefore;
+        final int mChannelAfter;
+        final long mGap;            // 通信断時間(ミリ秒) (-1:不明)
+
+        Roam(String from, String to, int rssiBefore, int rssiAfter, int channelBefore, int channelAfter, long gap) {
+            mFrom = from;
+            mTo = to;
+            mRssiBefore = rssiBefore;
+            mRssiAfter = rssiAfter;
+            mChannelBefore = channelBefore;
+            mChannelAfter = channelAfter;
+            mGap = gap;
+        }
+
+        /**
+         * 表示用文字列
+         *
+         * @return ex) "-78dBm 1CH -> -52dBm 36CH (120ms)"
+         */
+        @Override
+        public String toString() {
+            return mRssiBefore + "dBm " + formatChannel(mChannelBefore) + " -> " +
+                    mRssiAfter + "dBm " + formatChannel(mChannelAfter) +
+                    ((mGap >= 0) ? " (" + mGap + "ms)" : "");
+        }
+
+        private static String formatChannel(int channel) {
+            return (channel > 0) ? channel + "CH" : "-";
+        }
+    }
+
+    /**
+     * SSID ごとの統計
+     */
+    static class Stats {
+        private int mCount;
+        private long mConnectedTime;
+        private final LatencyHistogram mGaps = new LatencyHistogram();
+        private Roam mLast;
+
+        /** ローミング回数 */
+        int getCount() {
+            return mCount;
+        }
+
+        /** 1時間あたりのローミング回数 (接続時間あたり) */
+        float getRate() {
+            return (mConnectedTime > 0) ? mCount * 3600000f / mConnectedTime : 0;
+        }
+
+        /** 最後のローミング */
+        Roam getLast() {
+            return mLast;
+        }
+
+        /** 通信断時間の統計 */
+        LatencySummary getGapSummary() {
+            return new LatencySummary(mGaps.getTotalCount(),
+                    mGaps.getValueAtPercentile(50),
+                    mGaps.getValueAtPercentile(90),
+                    mGaps.getValueAtPercentile(99),
+                    mGaps.getMax());
+        }
+    }
+
+    // 現在の接続先
+    private String mSsid = null;
+    private String mBssid = null;
+    private int mRssi;
+    private int mChannel;
+    private long mSince = NO_TIME;      // 接続時間の集計開始時刻
+
+    // サプリカントの状態
+    private boolean mCompleted = false;
+    private long mLeftAt = NO_TIME;     // 接続完了状態を離れた時刻
+    private long mCompletedAt = NO_TIME;
+
+    // SSID ごとの統計 (参照順)
+    private final Map<String, Stats> mNetworks =
+            new LinkedHashMap<String, Stats>(MAX_NETWORKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Stats> eldest) {
+                    return size() > MAX_NETWORKS;
+                }
+            };
+
+    /**
+     * サプリカントの状態変化を記録 (supplicant.STATE_CHANGE 受信時)
+     *
+     * @param state 新しい状態
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     */
+    synchronized void onSupplicantState(SupplicantState state, long now) {
+        if (state == SupplicantState.COMPLETED) {
+            mCompleted = true;
+            mCompletedAt = now;
+        } else if (mCompleted) {
+            mCompleted = false;
+            mLeftAt = now;
+        }
+    }
+
+    /**
+     * 切断を記録 (ネットワーク情報が DISCONNECTED になったとき)
+     *
+     * 切断後の再接続はローミングとして扱わない。
+     *
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     */
+    synchronized void onDisconnected(long now) {
+        accumulate(now);
+        mSsid = null;
+        mBssid = null;
+        mSince = NO_TIME;
+        mCompleted = false;
+        mLeftAt = NO_TIME;
+    }
+
+    /**
+     * BSSID が現在の接続先と異なるかどうか
+     */
+    synchronized boolean isNewBssid(String bssid) {
+        return bssid != null && !bssid.equals(mBssid);
+    }
+
+    /**
+     * 接続中のアクセスポイントの信号強度を記録 (定期的な信号強度の取得時)
+     *
+     * 切り替え前の信号強度を直近の値にするため、接続中の BSSID と同じ場合のみ記録する。
+     * (異なる場合は切り替え後の値のため、onConnected() で記録する)
+     *
+     * @param bssid BSSID
+     * @param rssi 信号強度(dBm)
+     */
+    synchronized void onSignal(String bssid, int rssi) {
+        if (bssid != null && bssid.equals(mBssid)) {
+            mRssi = rssi;
+        }
+    }
+
+    /**
+     * 接続中のアクセスポイントを記録 (接続完了状態で WifiInfo を取得したとき)
+     *
+     * 切り替え前の信号強度は、前回記録した値 (onSignal() で定期的に更新) とする。
+     *
+     * @param ssid SSID
+     * @param bssid BSSID
+     * @param rssi 信号強度(dBm)
+     * @param channel チャネル番号 (-1:不明, BSSID が変わっていない場合は参照しない)
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     * @return ローミングを検出した場合はその記録 (null:ローミングなし)
+     */
+    synchronized Roam onConnected(String ssid, String bssid, int rssi, int channel, long now) {
+        if (ssid == null || bssid == null) {
+            return null;
+        }
+        Roam roam = null;
+        boolean changed = !bssid.equals(mBssid);
+        if (ssid.equals(mSsid)) {
+            accumulate(now);
+            if (changed) {
+                long gap = NO_TIME;
+                if (mLeftAt != NO_TIME) {
+                    gap = ((mCompletedAt >= mLeftAt) ? mCompletedAt : now) - mLeftAt;
+                }
+                roam = new Roam(mBssid, bssid, mRssi, rssi, mChannel, channel, gap);
+                Stats stats = getNetwork(ssid);
+                stats.mCount++;
+                stats.mLast = roam;
+                if (gap >= 0) {
+                    stats.mGaps.record(gap * 1000);
+                }
+                if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Roamed in " + ssid + ": " + mBssid + " -> " + bssid + " " + roam);
+            }
+        } else {
+            // 新しい接続 (または SSID の切り替え)
+            accumulate(now);
+            mSsid = ssid;
+            getNetwork(ssid);
+        }
+        mBssid = bssid;
+        mRssi = rssi;
+        if (changed) {
+            mChannel = channel;
+        }
+        mSince = now;
+        mLeftAt = NO_TIME;
+        return roam;
+    }
+
+    /**
+     * 接続時間を集計
+     */
+    private void accumulate(long now) {
+        if (mSsid != null && mSince != NO_TIME && now > mSince) {
+            getNetwork(mSsid).mConnectedTime += now - mSince;
+            mSince = now;
+        }
+    }
+
+    private Stats getNetwork(String ssid) {
+        Stats stats = mNetworks.get(ssid);
+        if (stats == null) {
+            stats = new Stats();
+            mNetworks.put(ssid, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * SSID ごとの統計を取得
+     *
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     * @return SSID ごとの統計 (ローミングを検出した SSID のみ)
+     */
+    synchronized Map<String, Stats> getStats(long now) {
+        accumulate(now);
+        Map<String, Stats> result = new LinkedHashMap<String, Stats>();
+        for (Map.Entry<String, Stats> entry : mNetworks.entrySet()) {
+            if (entry.getValue().mCount > 0) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+}
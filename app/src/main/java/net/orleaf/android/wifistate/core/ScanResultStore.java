@@ -0,0 +1,202 @@
+package net.orleaf.android.wifistate.core;
+
+import java.util.List;
+
+import android.net.wifi.ScanResult;
+
+/**
+ * スキャン結果の保持
+ *
+ * スキャン結果を BSSID (48bit を long に格納) ・周波数・信号強度・帯域幅の配列で保持し、
+ * BSSID をキーとするハッシュ表 (オープンアドレス法) で検索する。
+ * 配列は容量が足りる限り再利用し、スキャン結果が更新されたときのみ再構築する。
+ */
+class ScanResultStore {
+    static final long NO_BSSID = -1;
+
+    static final int MIN_CAPACITY = 16;
+
+    // ScanResult.channelWidth (requires API Level 23)
+    private static final IntAccessor SCAN_RESULT_CHANNEL_WIDTH = IntAccessor.field(ScanResult.class, "channelWidth");
+
+    private long[] mBssids = new long[MIN_CAPACITY];
+    private int[] mFrequencies = new int[MIN_CAPACITY];
+    private int[] mLevels = new int[MIN_CAPACITY];
+    private int[] mChannelWidths = new int[MIN_CAPACITY];
+    private int mSize = 0;
+
+    // ハッシュ表 (値は位置+1, 0:空き)
+    private long[] mIndexKeys = new long[MIN_CAPACITY * 2];
+    private int[] mIndexValues = new int[MIN_CAPACITY * 2];
+
+    private boolean mStale = true;  // スキャン結果が更新されたかどうか
+
+    /**
+     * スキャン結果が更新されたことを通知
+     */
+    synchronized void markStale() {
+        mStale = true;
+    }
+
+    /**
+     * スキャン結果の再構築が必要かどうか
+     */
+    synchronized boolean isStale() {
+        return mStale;
+    }
+
+    /**
+     * スキャン結果から再構築
+     *
+     * @param results スキャン結果 (null:なし)
+     */
+    synchronized void rebuild(List<ScanResult> results) {
+        mStale = false;
+        int count = (results != null) ? results.size() : 0;
+        clear(count);
+        for (int i = 0; i < count; i++) {
+            ScanResult result = results.get(i);
+            add(result.BSSID, result.frequency, result.level, SCAN_RESULT_CHANNEL_WIDTH.get(result));
+        }
+    }
+
+    /**
+     * 消去 (容量が足りなければ拡張)
+     *
+     * @param count 追加するアクセスポイントの数
+     */
+    synchronized void clear(int count) {
+        if (count > mBssids.length) {
+            int capacity = Integer.highestOneBit(count - 1) << 1;
+            mBssids = new long[capacity];
+            mFrequencies = new int[capacity];
+            mLevels = new int[capacity];
+            mChannelWidths = new int[capacity];
+            mIndexKeys = new long[capacity * 2];
+            mIndexValues = new int[capacity * 2];
+        } else {
+            for (int i = 0; i < mIndexValues.length; i++) {
+                mIndexValues[i] = 0;
+            }
+        }
+        mSize = 0;
+    }
+
+    /**
+     * アクセスポイントを追加 (clear() で指定した数まで)
+     *
+     * @param bssid BSSID (不正な形式・追加済みの場合は無視)
+     * @param frequency 周波数(MHz)
+     * @param level 信号強度(dBm)
+     * @param channelWidth ScanResult.CHANNEL_WIDTH_* (-1:取得不可)
+     */
+    synchronized void add(String bssid, int frequency, int level, int channelWidth) {
+        long value = packBssid(bssid);
+        if (value == NO_BSSID || indexOf(value) >= 0) {
+            return;
+        }
+        mBssids[mSize] = value;
+        mFrequencies[mSize] = frequency;
+        mLevels[mSize] = level;
+        mChannelWidths[mSize] = channelWidth;
+        mSize++;
+        int slot = slotOf(value);
+        while (mIndexValues[slot] != 0) {
+            slot = (slot + 1) & (mIndexValues.length - 1);
+        }
+        mIndexKeys[slot] = value;
+        mIndexValues[slot] = mSize;
+    }
+
+    /**
+     * 保持しているアクセスポイントの数
+     */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * 周波数を取得
+     *
+     * @param bssid BSSID
+     * @return 周波数(MHz) (-1:該当なし)
+     */
+    synchronized int getFrequency(long bssid) {
+        int index = indexOf(bssid);
+        return (index >= 0) ? mFrequencies[index] : -1;
+    }
+
+    /**
+     * 信号強度を取得
+     *
+     * @param bssid BSSID
+     * @return 信号強度(dBm) (Integer.MIN_VALUE:該当なし)
+     */
+    synchronized int getLevel(long bssid) {
+        int index = indexOf(bssid);
+        return (index >= 0) ? mLevels[index] : Integer.MIN_VALUE;
+    }
+
+    /**
+     * 帯域幅を取得
+     *
+     * @param bssid BSSID
+     * @return ScanResult.CHANNEL_WIDTH_* (-1:該当なし・取得不可)
+     */
+    synchronized int getChannelWidth(long bssid) {
+        int index = indexOf(bssid);
+        return (index >= 0) ? mChannelWidths[index] : -1;
+    }
+
+    /**
+     * 帯域幅を取得できるかどうか
+     */
+    static boolean isChannelWidthSupported() {
+        return SCAN_RESULT_CHANNEL_WIDTH.isSupported();
+    }
+
+    private int indexOf(long bssid) {
+        int slot = slotOf(bssid);
+        while (mIndexValues[slot] != 0) {
+            if (mIndexKeys[slot] == bssid) {
+                return mIndexValues[slot] - 1;
+            }
+            slot = (slot + 1) & (mIndexValues.length - 1);
+        }
+        return -1;
+    }
+
+    int slotOf(long bssid) {
+        // MACアドレスの下位ビットは偏るため混ぜる
+        long h = bssid * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (mIndexValues.length - 1);
+    }
+
+    /**
+     * BSSID 文字列を long に変換
+     *
+     * @param bssid ex) "00:11:22:aa:bb:cc"
+     * @return 48bit の値 (NO_BSSID:不正な形式)
+     */
+    static long packBssid(String bssid) {
+        if (bssid == null || bssid.length() != 17) {
+            return NO_BSSID;
+        }
+        long value = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = bssid.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return NO_BSSID;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return NO_BSSID;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
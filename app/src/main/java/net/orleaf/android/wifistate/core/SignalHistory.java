@@ -0,0 +1,370 @@
+package net.orleaf.android.wifistate.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import android.util.Log;
+
+/**
+ * 信号強度・リンク速度・周波数の履歴
+ *
+ * 取得した値をそのまま記録する時系列に加え、1分ごと・1時間ごとに集計した時系列を持つ。
+ * 集計した点は区間内の信号強度の平均・最小値・最大値を持つ。
+ * 各時系列は固定容量の圧縮リングバッファ (SignalSeries) で、古いものから上書きする。
+ * 容量は合計 128KB で、15秒間隔の取得で 数日分・数週間分・数年分 程度を保持する。
+ * 保存先を指定した場合は、取得した値のブロックが埋まるごとに全体をファイルに書き出し、
+ * 次に生成したときに読み込む (プロセスが終了しても失うのは最後の保存以降の値のみ)。
+ */
+class SignalHistory {
+
+    /**
+     * 時系列の粒度
+     */
+    enum Tier {
+        RAW(0, 64),         // 取得した値
+        MINUTE(60, 128),    // 1分平均
+        HOUR(3600, 64);     // 1時間平均
+        private final int period;
+        private final int blocks;
+        Tier(int period, int blocks) {
+            this.period = period;
+            this.blocks = blocks;
+        }
+    }
+
+    private static final int BLOCK_WORDS = 64;  // ブロックあたりの long 数 (512バイト)
+    private static final int FILE_VERSION = 1;  // 保存形式の版
+
+    /**
+     * 信号強度の統計
+     */
+    static class Summary implements SignalSeries.Visitor {
+        private int mCount = 0;
+        private int mMinRssi = 0;
+        private int mMaxRssi = 0;
+        private long mRssiSum = 0;
+        private long mSpeedSum = 0;
+
+        @Override
+        public void visit(long time, int rssi, int minRssi, int maxRssi, int speed, int freq) {
+            if (mCount == 0 || minRssi < mMinRssi) {
+                mMinRssi = minRssi;
+            }
+            if (mCount == 0 || maxRssi > mMaxRssi) {
+                mMaxRssi = maxRssi;
+            }
+            mRssiSum += rssi;
+            mSpeedSum += Math.max(speed, 0);
+            mCount++;
+        }
+
+        /** 点数 */
+        int getCount() {
+            return mCount;
+        }
+
+        /** 信号強度の最小値(dBm) */
+        int getMinRssi() {
+            return mMinRssi;
+        }
+
+        /** 信号強度の最大値(dBm) */
+        int getMaxRssi() {
+            return mMaxRssi;
+        }
+
+        /**
+         * 表示用文字列
+         *
+         * @return ex) "-80/-65/-50dBm 144Mbps"
+         */
+        @Override
+        public String toString() {
+            if (mCount == 0) {
+                return "-";
+            }
+            return mMinRssi + "/" + Math.round((float) mRssiSum / mCount) + "/" + mMaxRssi + "dBm " +
+                    Math.round((float) mSpeedSum / mCount) + "Mbps";
+        }
+    }
+
+    private final File mFile;   // 保存先 (null:保存しない)
+    private final SignalSeries[] mSeries = new SignalSeries[Tier.values().length];
+
+    // 集計中の区間 (Tier 順、RAW は未使用)
+    private final long[] mBucket = new long[Tier.values().length];
+    private final int[] mCount = new int[Tier.values().length];
+    private final long[] mRssiSum = new long[Tier.values().length];
+    private final int[] mMinRssi = new int[Tier.values().length];
+    private final int[] mMaxRssi = new int[Tier.values().length];
+    private final long[] mSpeedSum = new long[Tier.values().length];
+    private final int[] mFreq = new int[Tier.values().length];
+
+    SignalHistory() {
+        this(null);
+    }
+
+    /**
+     * @param file 保存先 (null:保存しない) 保存済みの履歴があれば読み込む
+     */
+    SignalHistory(File file) {
+        mFile = file;
+        if (file == null || !file.exists() || !load(file)) {
+            clear();
+        }
+    }
+
+    /**
+     * 空の状態にする
+     */
+    private void clear() {
+        for (Tier tier : Tier.values()) {
+            mSeries[tier.ordinal()] = new SignalSeries(tier.blocks, BLOCK_WORDS);
+        }
+        Arrays.fill(mBucket, 0);
+        Arrays.fill(mCount, 0);
+        Arrays.fill(mRssiSum, 0);
+        Arrays.fill(mMinRssi, 0);
+        Arrays.fill(mMaxRssi, 0);
+        Arrays.fill(mSpeedSum, 0);
+        Arrays.fill(mFreq, 0);
+    }
+
+    /**
+     * 値を記録
+     *
+     * @param time 時刻(秒, 単調増加)
+     * @param rssi 信号強度(dBm)
+     * @param speed リンク速度(Mbps)
+     * @param freq 周波数(MHz) (-1:不明)
+     */
+    synchronized void append(long time, int rssi, int speed, int freq) {
+        SignalSeries raw = mSeries[Tier.RAW.ordinal()];
+        long sequence = raw.getBlockSequence();
+        if (raw.append(time, rssi, rssi, rssi, speed, freq)) {
+            aggregate(Tier.MINUTE.ordinal(), time, rssi, rssi, rssi, 1, (long) speed, freq);
+            // 取得した値のブロックが埋まるごとに保存
+            if (mFile != null && sequence > 0 && raw.getBlockSequence() != sequence) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * 保存先に書き出す (一時ファイルに書き出してから置き換える)
+     *
+     * @return true:成功 false:失敗・保存先なし
+     */
+    synchronized boolean save() {
+        if (mFile == null) {
+            return false;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)), new CRC32());
+            out = new DataOutputStream(checked);
+            out.writeInt(FILE_VERSION);
+            for (SignalSeries series : mSeries) {
+                series.write(out);
+            }
+            for (int t = 0; t < mSeries.length; t++) {
+                out.writeLong(mBucket[t]);
+                out.writeInt(mCount[t]);
+                out.writeLong(mRssiSum[t]);
+                out.writeInt(mMinRssi[t]);
+                out.writeInt(mMaxRssi[t]);
+                out.writeLong(mSpeedSum[t]);
+                out.writeInt(mFreq[t]);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("rename failed: " + tmp);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(WifiState.TAG, "signal history save failed: " + e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 保存先から読み込む
+     *
+     * @return true:成功 false:失敗 (形式・容量が異なる、破損している)
+     */
+    private boolean load(File file) {
+        DataInputStream in = null;
+        try {
+            CheckedInputStream checked = new CheckedInputStream(
+                    new BufferedInputStream(new FileInputStream(file)), new CRC32());
+            in = new DataInputStream(checked);
+            if (in.readInt() != FILE_VERSION) {
+                return false;
+            }
+            for (Tier tier : Tier.values()) {
+                SignalSeries series = new SignalSeries(tier.blocks, BLOCK_WORDS);
+                if (!series.read(in)) {
+                    return false;
+                }
+                mSeries[tier.ordinal()] = series;
+            }
+            for (int t = 0; t < mSeries.length; t++) {
+                mBucket[t] = in.readLong();
+                mCount[t] = in.readInt();
+                mRssiSum[t] = in.readLong();
+                mMinRssi[t] = in.readInt();
+                mMaxRssi[t] = in.readInt();
+                mSpeedSum[t] = in.readLong();
+                mFreq[t] = in.readInt();
+            }
+            long checksum = checked.getChecksum().getValue();
+            return in.readLong() == checksum;
+        } catch (IOException e) {
+            Log.e(WifiState.TAG, "signal history load failed: " + e);
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 区間の集計に加算し、区間が変わったら前の区間の集計を記録
+     *
+     * @param tier 集計先の粒度
+     * @param weight 値の重み (元の点数)
+     */
+    private void aggregate(int tier, long time, long rssiSum, int minRssi, int maxRssi,
+                           int weight, long speedSum, int freq) {
+        long bucket = time - time % Tier.values()[tier].period;
+        if (mCount[tier] > 0 && bucket != mBucket[tier]) {
+            flush(tier);
+        }
+        if (mCount[tier] == 0) {
+            mBucket[tier] = bucket;
+            mMinRssi[tier] = minRssi;
+            mMaxRssi[tier] = maxRssi;
+        }
+        mRssiSum[tier] += rssiSum;
+        mMinRssi[tier] = Math.min(mMinRssi[tier], minRssi);
+        mMaxRssi[tier] = Math.max(mMaxRssi[tier], maxRssi);
+        mSpeedSum[tier] += speedSum;
+        mCount[tier] += weight;
+        mFreq[tier] = freq;
+    }
+
+    private void flush(int tier) {
+        int count = mCount[tier];
+        int rssi = Math.round((float) mRssiSum[tier] / count);
+        int speed = Math.round((float) mSpeedSum[tier] / count);
+        if (mSeries[tier].append(mBucket[tier], rssi, mMinRssi[tier], mMaxRssi[tier], speed, mFreq[tier])
+                && tier + 1 < mSeries.length) {
+            aggregate(tier + 1, mBucket[tier], mRssiSum[tier], mMinRssi[tier], mMaxRssi[tier],
+                    count, mSpeedSum[tier], mFreq[tier]);
+        }
+        mCount[tier] = 0;
+        mRssiSum[tier] = 0;
+        mSpeedSum[tier] = 0;
+    }
+
+    /**
+     * 指定期間の統計を取得
+     *
+     * 期間全体を保持している最も細かい粒度の時系列から集計する。
+     * 期間全体を保持している時系列がなければ、最も古い値を保持している時系列から集計する。
+     * 集計した時系列の場合は、集計中 (未記録) の区間も含める。
+     *
+     * @param now 現在時刻(秒, 単調増加)
+     * @param period 期間(秒)
+     * @return 統計
+     */
+    synchronized Summary getSummary(long now, long period) {
+        long from = now - period;
+        int tier = selectTier(from);
+        Summary summary = new Summary();
+        mSeries[tier].forEach(from, summary);
+        // 集計中の区間 (粗い粒度から順に、記録済みの区間より後の値)
+        for (int t = tier; t > Tier.RAW.ordinal(); t--) {
+            if (mCount[t] > 0 && mBucket[t] + Tier.values()[t].period > from) {
+                summary.visit(mBucket[t], Math.round((float) mRssiSum[t] / mCount[t]),
+                        mMinRssi[t], mMaxRssi[t], Math.round((float) mSpeedSum[t] / mCount[t]), mFreq[t]);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * 集計に使用する粒度を選択
+     *
+     * 粗い粒度は、最も古い区間が細かい粒度の最も古い点より前に終わっている
+     * (細かい粒度で上書き済みの値を保持している) 場合のみ選択する。
+     */
+    private int selectTier(long from) {
+        int tier = Tier.RAW.ordinal();
+        for (int t = 0; t < mSeries.length; t++) {
+            SignalSeries s = mSeries[t];
+            if (s.getPointCount() == 0) {
+                continue;
+            }
+            if (s.getOldestTime() <= from) {
+                return t;
+            }
+            SignalSeries selected = mSeries[tier];
+            if (selected.getPointCount() == 0
+                    || s.getOldestTime() + Tier.values()[t].period <= selected.getOldestTime()) {
+                tier = t;
+            }
+        }
+        return tier;
+    }
+
+    /**
+     * 保持状況 (デバッグ用)
+     *
+     * @return ex) "RAW: 1234pts 1.2B/pt, ..."
+     */
+    synchronized String getStorageStats() {
+        StringBuilder b = new StringBuilder();
+        for (Tier tier : Tier.values()) {
+            SignalSeries series = mSeries[tier.ordinal()];
+            int points = series.getPointCount();
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append(tier.name()).append(": ").append(points).append("pts");
+            if (points > 0) {
+                b.append(String.format(" %.1fB/pt", series.getUsedBits() / 8f / points));
+            }
+        }
+        int capacity = 0;
+        for (SignalSeries series : mSeries) {
+            capacity += series.getCapacityBytes();
+        }
+        return b.append(" (").append(capacity / 1024).append("KB)").toString();
+    }
+}
@@ -0,0 +1,432 @@
+package net.orleaf.android.wifistate.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 信号強度・リンク速度・周波数の圧縮時系列 (固定容量のリングバッファ)
+ *
+ * 一定ビット数のブロックを循環して使い、最も古いブロックから上書きする。
+ * ブロック内は以下の形式で可変長に詰める (追加は O(1))。
+ * <ul>
+ * <li>時刻(秒): 先頭は32ビット、以降は前回の間隔との差分 (delta-of-delta)</li>
+ * <li>信号強度: 前回との差分 (zigzag)</li>
+ * <li>信号強度の最小値・最大値: 信号強度との差 (集計した点のみ、取得した値の点では常に1ビット)</li>
+ * <li>リンク速度・周波数: 前回との XOR (変化しなければ1ビット)</li>
+ * </ul>
+ * 保存・復元用に、全ブロックをそのまま書き出し・読み込みできる。
+ * スレッドセーフではない。
+ */
+class SignalSeries {
+    // 信号強度の範囲 (差分を8ビットに収めるため範囲外は丸める)
+    private static final int MIN_RSSI = -127;
+    private static final int MAX_RSSI = 0;
+
+    // 1点あたりの最大ビット数 (時刻 4+32, 信号強度・最小値・最大値 各 2+8, リンク速度・周波数 各 1+5+5+32)
+    private static final int MAX_POINT_BITS = 36 + 10 * 3 + 43 * 2;
+
+    /**
+     * 時系列の参照
+     */
+    interface Visitor {
+        /**
+         * @param time 時刻(秒)
+         * @param rssi 信号強度(dBm) (集計した点は平均)
+         * @param minRssi 信号強度の最小値(dBm)
+         * @param maxRssi 信号強度の最大値(dBm)
+         * @param speed リンク速度(Mbps)
+         * @param freq 周波数(MHz)
+         */
+        void visit(long time, int rssi, int minRssi, int maxRssi, int speed, int freq);
+    }
+
+    private final int mBlockBits;
+    private final long[] mWords;            // 全ブロックのビット列
+    private final long[] mBlockStart;       // ブロック先頭の時刻(秒)
+    private final int[] mBlockPoints;       // ブロック内の点数
+    private final int[] mBlockLength;       // ブロック内の使用ビット数
+    private int mHead = 0;                  // 書き込み中のブロック
+    private int mBlocks = 0;                // 使用中のブロック数
+    private long mBlockSequence = 0;        // 開始したブロックの累計数
+
+    // 書き込み中のブロックの直前の値
+    private long mLastTime;
+    private long mLastDelta;
+    private int mLastRssi;
+    private int mLastSpeed;
+    private int mLastFreq;
+
+    /**
+     * @param blocks ブロック数
+     * @param blockWords ブロックあたりの long 数
+     */
+    SignalSeries(int blocks, int blockWords) {
+        mBlockBits = blockWords * 64;
+        mWords = new long[blocks * blockWords];
+        mBlockStart = new long[blocks];
+        mBlockPoints = new int[blocks];
+        mBlockLength = new int[blocks];
+    }
+
+    /**
+     * 点を追加
+     *
+     * @param time 時刻(秒) (直前の点より後であること)
+     * @param rssi 信号強度(dBm) (-127～0 に丸める)
+     * @param minRssi 信号強度の最小値(dBm) (rssi 以下に丸める)
+     * @param maxRssi 信号強度の最大値(dBm) (rssi 以上に丸める)
+     * @param speed リンク速度(Mbps)
+     * @param freq 周波数(MHz)
+     * @return true:追加 false:時刻が直前の点以前のため破棄
+     */
+    boolean append(long time, int rssi, int minRssi, int maxRssi, int speed, int freq) {
+        if (mBlocks > 0 && time <= mLastTime) {
+            return false;
+        }
+        rssi = Math.max(MIN_RSSI, Math.min(MAX_RSSI, rssi));
+        minRssi = Math.max(MIN_RSSI, Math.min(rssi, minRssi));
+        maxRssi = Math.min(MAX_RSSI, Math.max(rssi, maxRssi));
+        if (mBlocks == 0 || mBlockBits - mBlockLength[mHead] < MAX_POINT_BITS) {
+            startBlock(time);
+        }
+        int block = mHead;
+        int pos = block * mBlockBits + mBlockLength[block];
+        if (mBlockPoints[block] == 0) {
+            pos = writeBits(pos, time, 32);
+            mLastDelta = 0;
+        } else {
+            long delta = time - mLastTime;
+            pos = writeDeltaOfDelta(pos, delta - mLastDelta);
+            mLastDelta = delta;
+        }
+        pos = writeRssi(pos, rssi - mLastRssi);
+        pos = writeRssi(pos, rssi - minRssi);
+        pos = writeRssi(pos, maxRssi - rssi);
+        pos = writeXor(pos, speed ^ mLastSpeed);
+        pos = writeXor(pos, freq ^ mLastFreq);
+        mBlockLength[block] = pos - block * mBlockBits;
+        mBlockPoints[block]++;
+        mLastTime = time;
+        mLastRssi = rssi;
+        mLastSpeed = speed;
+        mLastFreq = freq;
+        return true;
+    }
+
+    /**
+     * 新しいブロックを開始 (全ブロック使用中なら最も古いブロックを上書き)
+     */
+    private void startBlock(long time) {
+        if (mBlocks > 0) {
+            mHead = (mHead + 1) % mBlockStart.length;
+        }
+        if (mBlocks < mBlockStart.length) {
+            mBlocks++;
+        }
+        int first = mHead * (mBlockBits / 64);
+        for (int i = first; i < first + mBlockBits / 64; i++) {
+            mWords[i] = 0;
+        }
+        mBlockSequence++;
+        mBlockStart[mHead] = time;
+        mBlockPoints[mHead] = 0;
+        mBlockLength[mHead] = 0;
+        mLastRssi = 0;
+        mLastSpeed = 0;
+        mLastFreq = 0;
+    }
+
+    /**
+     * 指定時刻以降の点を古い順に参照
+     *
+     * @param from 時刻(秒)
+     * @param visitor 参照先
+     */
+    void forEach(long from, Visitor visitor) {
+        for (int i = 0; i < mBlocks; i++) {
+            int block = (mHead - mBlocks + 1 + i + mBlockStart.length) % mBlockStart.length;
+            int next = (block + 1) % mBlockStart.length;
+            if (block != mHead && mBlockStart[next] < from) {
+                // 次のブロックも範囲外であれば復号しない
+                continue;
+            }
+            readBlock(block, from, visitor);
+        }
+    }
+
+    private void readBlock(int block, long from, Visitor visitor) {
+        long[] value = new long[1];
+        int pos = block * mBlockBits;
+        long time = 0;
+        long delta = 0;
+        int rssi = 0;
+        int speed = 0;
+        int freq = 0;
+        for (int i = 0; i < mBlockPoints[block]; i++) {
+            if (i == 0) {
+                pos = readBits(pos, 32, value);
+                time = value[0];
+            } else {
+                pos = readDeltaOfDelta(pos, value);
+                delta += value[0];
+                time += delta;
+            }
+            pos = readRssi(pos, value);
+            rssi += (int) value[0];
+            pos = readRssi(pos, value);
+            int minRssi = rssi - (int) value[0];
+            pos = readRssi(pos, value);
+            int maxRssi = rssi + (int) value[0];
+            pos = readXor(pos, value);
+            speed ^= (int) value[0];
+            pos = readXor(pos, value);
+            freq ^= (int) value[0];
+            if (time >= from) {
+                visitor.visit(time, rssi, minRssi, maxRssi, speed, freq);
+            }
+        }
+    }
+
+    /**
+     * 最も古い点の時刻(秒)
+     */
+    long getOldestTime() {
+        return mBlockStart[(mHead - mBlocks + 1 + mBlockStart.length) % mBlockStart.length];
+    }
+
+    /**
+     * 格納している点数
+     */
+    int getPointCount() {
+        int count = 0;
+        for (int i = 0; i < mBlocks; i++) {
+            count += mBlockPoints[i];
+        }
+        return count;
+    }
+
+    /**
+     * 使用中のビット数
+     */
+    long getUsedBits() {
+        long bits = 0;
+        for (int i = 0; i < mBlocks; i++) {
+            bits += mBlockLength[i];
+        }
+        return bits;
+    }
+
+    /**
+     * 開始したブロックの累計数 (ブロックが埋まったことの検出用)
+     */
+    long getBlockSequence() {
+        return mBlockSequence;
+    }
+
+    /**
+     * 書き出し
+     *
+     * @param out 出力先
+     * @throws IOException 書き込み失敗
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(mBlockStart.length);
+        out.writeInt(mBlockBits);
+        out.writeInt(mHead);
+        out.writeInt(mBlocks);
+        for (int i = 0; i < mBlockStart.length; i++) {
+            out.writeLong(mBlockStart[i]);
+            out.writeInt(mBlockPoints[i]);
+            out.writeInt(mBlockLength[i]);
+        }
+        for (long word : mWords) {
+            out.writeLong(word);
+        }
+        out.writeLong(mLastTime);
+        out.writeLong(mLastDelta);
+        out.writeInt(mLastRssi);
+        out.writeInt(mLastSpeed);
+        out.writeInt(mLastFreq);
+    }
+
+    /**
+     * 読み込み (空の時系列に対してのみ呼ぶ)
+     *
+     * @param in 入力元
+     * @return true:読み込み false:容量が異なる・不正な値
+     * @throws IOException 読み込み失敗
+     */
+    boolean read(DataInputStream in) throws IOException {
+        if (in.readInt() != mBlockStart.length || in.readInt() != mBlockBits) {
+            return false;
+        }
+        mHead = in.readInt();
+        mBlocks = in.readInt();
+        if (mHead < 0 || mHead >= mBlockStart.length || mBlocks < 0 || mBlocks > mBlockStart.length) {
+            return false;
+        }
+        for (int i = 0; i < mBlockStart.length; i++) {
+            mBlockStart[i] = in.readLong();
+            mBlockPoints[i] = in.readInt();
+            mBlockLength[i] = in.readInt();
+            if (mBlockLength[i] < 0 || mBlockLength[i] > mBlockBits ||
+                    mBlockPoints[i] < 0 || mBlockPoints[i] > mBlockLength[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < mWords.length; i++) {
+            mWords[i] = in.readLong();
+        }
+        mLastTime = in.readLong();
+        mLastDelta = in.readLong();
+        mLastRssi = in.readInt();
+        mLastSpeed = in.readInt();
+        mLastFreq = in.readInt();
+        mBlockSequence = mBlocks;
+        return true;
+    }
+
+    /**
+     * 確保しているバイト数
+     */
+    int getCapacityBytes() {
+        return mWords.length * 8;
+    }
+
+    // 時刻: '0' / '10'+7bit / '110'+9bit / '1110'+12bit / '1111'+32bit
+    private int writeDeltaOfDelta(int pos, long dod) {
+        if (dod == 0) {
+            return writeBits(pos, 0, 1);
+        } else if (dod >= -63 && dod <= 64) {
+            pos = writeBits(pos, 0x2, 2);
+            return writeBits(pos, dod + 63, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            pos = writeBits(pos, 0x6, 3);
+            return writeBits(pos, dod + 255, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            pos = writeBits(pos, 0xe, 4);
+            return writeBits(pos, dod + 2047, 12);
+        }
+        pos = writeBits(pos, 0xf, 4);
+        return writeBits(pos, dod, 32);
+    }
+
+    private int readDeltaOfDelta(int pos, long[] value) {
+        int prefix = 0;
+        while (prefix < 4 && bit(pos) == 1) {
+            pos++;
+            prefix++;
+        }
+        if (prefix < 4) {
+            pos++;  // 終端の '0'
+        }
+        switch (prefix) {
+        case 0:
+            value[0] = 0;
+            return pos;
+        case 1:
+            pos = readBits(pos, 7, value);
+            value[0] -= 63;
+            return pos;
+        case 2:
+            pos = readBits(pos, 9, value);
+            value[0] -= 255;
+            return pos;
+        case 3:
+            pos = readBits(pos, 12, value);
+            value[0] -= 2047;
+            return pos;
+        default:
+            pos = readBits(pos, 32, value);
+            value[0] = (int) value[0];
+            return pos;
+        }
+    }
+
+    // 信号強度: '0' (変化なし) / '10'+4bit / '11'+8bit (zigzag)
+    private int writeRssi(int pos, int diff) {
+        int zigzag = (diff << 1) ^ (diff >> 31);
+        if (zigzag == 0) {
+            return writeBits(pos, 0, 1);
+        } else if (zigzag < 16) {
+            pos = writeBits(pos, 0x2, 2);
+            return writeBits(pos, zigzag, 4);
+        }
+        pos = writeBits(pos, 0x3, 2);
+        return writeBits(pos, zigzag & 0xff, 8);
+    }
+
+    private int readRssi(int pos, long[] value) {
+        if (bit(pos++) == 0) {
+            value[0] = 0;
+            return pos;
+        }
+        int bits = (bit(pos++) == 0) ? 4 : 8;
+        pos = readBits(pos, bits, value);
+        int zigzag = (int) value[0];
+        value[0] = (zigzag >>> 1) ^ -(zigzag & 1);
+        return pos;
+    }
+
+    // リンク速度・周波数: '0' (変化なし) / '1'+先頭の0の数(5bit)+有効ビット数-1(5bit)+有効ビット
+    private int writeXor(int pos, int xor) {
+        if (xor == 0) {
+            return writeBits(pos, 0, 1);
+        }
+        int leading = Integer.numberOfLeadingZeros(xor);
+        int trailing = Integer.numberOfTrailingZeros(xor);
+        int length = 32 - leading - trailing;
+        pos = writeBits(pos, 1, 1);
+        pos = writeBits(pos, leading, 5);
+        pos = writeBits(pos, length - 1, 5);
+        return writeBits(pos, xor >>> trailing, length);
+    }
+
+    private int readXor(int pos, long[] value) {
+        if (bit(pos++) == 0) {
+            value[0] = 0;
+            return pos;
+        }
+        pos = readBits(pos, 5, value);
+        int leading = (int) value[0];
+        pos = readBits(pos, 5, value);
+        int length = (int) value[0] + 1;
+        pos = readBits(pos, length, value);
+        value[0] = (int) (value[0] << (32 - leading - length));
+        return pos;
+    }
+
+    /**
+     * 下位 bits ビットを書き込み
+     *
+     * @return 書き込み後の位置
+     */
+    private int writeBits(int pos, long value, int bits) {
+        for (int i = bits - 1; i >= 0; i--) {
+            if (((value >>> i) & 1) != 0) {
+                mWords[pos >>> 6] |= 1L << (63 - (pos & 63));
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * bits ビットを読み出し
+     *
+     * @return 読み出し後の位置
+     */
+    private int readBits(int pos, int bits, long[] value) {
+        long v = 0;
+        for (int i = 0; i < bits; i++) {
+            v = (v << 1) | bit(pos++);
+        }
+        value[0] = v;
+        return pos;
+    }
+
+    private int bit(int pos) {
+        return (int) (mWords[pos >>> 6] >>> (63 - (pos & 63))) & 1;
+    }
+}
@@ -0,0 +1,137 @@
+package net.orleaf.android.wifistate.core;
+
+import android.net.NetworkInfo;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiManager;
+import android.telephony.TelephonyManager;
+
+import net.orleaf.android.wifistate.R;
+import net.orleaf.android.wifistate.core.NetworkStateInfo.States;
+
+/**
+ * ネットワーク状態の導出
+ *
+ * Wi-Fi・サプリカント・ネットワーク情報・モバイルデータの状態から表示する状態を求める。
+ * システムサービスや設定を参照せず、入力だけで結果が決まる。オブジェクトを生成しない。
+ */
+final class StateDerivation {
+
+    /**
+     * 導出の入力
+     *
+     * 呼び出し側で1つのインスタンスを使い回す。
+     */
+    static final class Input {
+        int wifiState = WifiManager.WIFI_STATE_UNKNOWN;         // WifiManager.WIFI_STATE_*
+        SupplicantState supplicantState = null;
+        boolean supplicantConnected = false;                    // 一度でも DISCONNECTED 以外になったか
+        boolean wifiAvailable = false;                          // NetworkInfo.isAvailable()
+        NetworkInfo.State wifiNetworkState = null;
+        NetworkInfo.DetailedState wifiDetailedState = null;
+        int dataState = TelephonyManager.DATA_DISCONNECTED;     // TelephonyManager.DATA_*
+        boolean showDataNetwork = false;                        // モバイルネットワーク状態を表示するか
+        boolean clearOnScanning = false;                        // スキャン中は表示しないか
+    }
+
+    /**
+     * 導出結果 (状態と詳細文字列の組)
+     */
+    enum Result {
+        UNAVAILABLE(States.STATE_DISABLED, R.string.state_unavailable),
+        ENABLING(States.STATE_WIFI_ENABLING, R.string.state_enabling),
+        ENABLED(States.STATE_WIFI_ENABLED, R.string.state_enabled),
+        SCANNING(States.STATE_WIFI_SCANNING, R.string.state_scanning),
+        DISCONNECTED(States.STATE_WIFI_SCANNING, R.string.state_disconnected),
+        ASSOCIATING(States.STATE_WIFI_CONNECTING, R.string.state_associating),
+        ASSOCIATED(States.STATE_WIFI_CONNECTING, R.string.state_associated),
+        HANDSHAKING(States.STATE_WIFI_CONNECTING, R.string.state_handshaking),
+        HANDSHAKE_COMPLETED(States.STATE_WIFI_COMPLETED, R.string.state_handshake_completed),
+        OBTAINING_IPADDR(States.STATE_WIFI_OBTAINING_IPADDR, R.string.state_obtaining_ipaddr),
+        CONNECTED(States.STATE_WIFI_CONNECTED, R.string.state_connected),
+        MOBILE_CONNECTING(States.STATE_MOBILE_CONNECTING, R.string.state_mobile_connecting),
+        MOBILE_CONNECTED(States.STATE_MOBILE_CONNECTED, R.string.state_mobile_connected);
+        private final States state;
+        private final int detailRes;
+        Result(States state, int detailRes) {
+            this.state = state;
+            this.detailRes = detailRes;
+        }
+        public States getState() {
+            return state;
+        }
+        public int getDetailRes() {
+            return detailRes;
+        }
+    }
+
+    private StateDerivation() {
+    }
+
+    /**
+     * 状態を導出する
+     *
+     * @param in 入力
+     * @param current 現在の状態
+     * @return 導出結果 (null:現在の状態を維持)
+     */
+    static Result derive(Input in, States current) {
+        Result result = null;
+
+        if (in.wifiState == WifiManager.WIFI_STATE_DISABLING ||
+                in.wifiState == WifiManager.WIFI_STATE_DISABLED) {
+            result = Result.UNAVAILABLE;
+        } else if (in.wifiState == WifiManager.WIFI_STATE_ENABLING) {
+            // -> enabled
+            result = Result.ENABLING;
+        } else if (in.wifiState == WifiManager.WIFI_STATE_ENABLED) {
+            // enabling -> enabled
+            if (current.compareTo(States.STATE_WIFI_ENABLED) < 0) {
+                result = Result.ENABLED;
+            }
+
+            if (in.wifiAvailable &&
+                    in.wifiNetworkState == NetworkInfo.State.CONNECTING &&
+                    in.wifiDetailedState == NetworkInfo.DetailedState.OBTAINING_IPADDR) {
+                result = Result.OBTAINING_IPADDR;
+            } else if (in.wifiAvailable &&
+                    in.wifiNetworkState == NetworkInfo.State.CONNECTED &&
+                    in.wifiDetailedState == NetworkInfo.DetailedState.CONNECTED) {
+                result = Result.CONNECTED;
+            } else if (in.supplicantConnected && in.supplicantState != null) {
+                if (in.supplicantState == SupplicantState.SCANNING) {
+                    result = Result.SCANNING;
+                } else if (in.supplicantState == SupplicantState.ASSOCIATING) {
+                    result = Result.ASSOCIATING;
+                } else if (in.supplicantState == SupplicantState.ASSOCIATED) {
+                    result = Result.ASSOCIATED;
+                } else if (in.supplicantState == SupplicantState.FOUR_WAY_HANDSHAKE ||
+                           in.supplicantState == SupplicantState.GROUP_HANDSHAKE) {
+                    result = Result.HANDSHAKING;
+                } else if (in.supplicantState == SupplicantState.COMPLETED) {
+                    result = Result.HANDSHAKE_COMPLETED;
+                } else if (in.supplicantState == SupplicantState.DISCONNECTED) {
+                    result = Result.DISCONNECTED;
+                }
+            }
+        }
+
+        // モバイルネットワーク状態
+        if (in.showDataNetwork) {
+            // ・Wi-Fi無効時、または
+            // ・スキャン中消去設定が有効でスキャン中
+            States state = (result != null) ? result.state : current;
+            if (state == States.STATE_DISABLED ||
+                    (state == States.STATE_WIFI_SCANNING && in.clearOnScanning)) {
+                if (in.dataState == TelephonyManager.DATA_CONNECTING) {
+                    result = Result.MOBILE_CONNECTING;
+                } else if (in.dataState == TelephonyManager.DATA_CONNECTED) {
+                    result = Result.MOBILE_CONNECTED;
+                } else {
+                    result = Result.UNAVAILABLE;
+                }
+            }
+        }
+
+        return result;
+    }
+}
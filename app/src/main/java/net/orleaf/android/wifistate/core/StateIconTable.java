@@ -0,0 +1,95 @@
+package net.orleaf.android.wifistate.core;
+
+import net.orleaf.android.wifistate.R;
+
+/**
+ * 通知アイコンの表
+ *
+ * アイコンのスタイル・状態ごとのリソースIDを保持し、リソース名による検索を行わずに表引きする。
+ */
+class StateIconTable {
+    private static final String[] STYLES = { "solid", "broken", "small" };
+
+    // [スタイル][状態 (States の定義順)]
+    private static final int[][] ICONS = {
+            {
+                    R.drawable.state_solid_0,
+                    R.drawable.state_solid_w1,
+                    R.drawable.state_solid_w2,
+                    R.drawable.state_solid_w3,
+                    R.drawable.state_solid_w4,
+                    R.drawable.state_solid_w5,
+                    R.drawable.state_solid_w5,
+                    R.drawable.state_solid_w6,
+                    R.drawable.state_solid_m3,
+                    R.drawable.state_solid_m6,
+            },
+            {
+                    R.drawable.state_broken_0,
+                    R.drawable.state_broken_w1,
+                    R.drawable.state_broken_w2,
+                    R.drawable.state_broken_w3,
+                    R.drawable.state_broken_w4,
+                    R.drawable.state_broken_w5,
+                    R.drawable.state_broken_w5,
+                    R.drawable.state_broken_w6,
+                    R.drawable.state_broken_m3,
+                    R.drawable.state_broken_m6,
+            },
+            {
+                    R.drawable.state_small_0,
+                    R.drawable.state_small_w1,
+                    R.drawable.state_small_w2,
+                    R.drawable.state_small_w3,
+                    R.drawable.state_small_w4,
+                    R.drawable.state_small_w5,
+                    R.drawable.state_small_w5,
+                    R.drawable.state_small_w6,
+                    R.drawable.state_small_m3,
+                    R.drawable.state_small_m6,
+            },
+    };
+
+    // [スタイル] 疎通監視失敗時
+    private static final int[] WARN_ICONS = {
+            R.drawable.state_solid_warn,
+            R.drawable.state_broken_warn,
+            R.drawable.state_small_warn,
+    };
+
+    private StateIconTable() {
+    }
+
+    /**
+     * 状態に対応するアイコンを取得
+     *
+     * @param style アイコンのスタイル
+     * @param state 状態
+     * @return アイコンのリソースID
+     */
+    static int getIcon(String style, NetworkStateInfo.States state) {
+        return ICONS[indexOf(style)][state.ordinal()];
+    }
+
+    /**
+     * 疎通監視失敗時のアイコンを取得
+     *
+     * @param style アイコンのスタイル
+     * @return アイコンのリソースID
+     */
+    static int getWarnIcon(String style) {
+        return WARN_ICONS[indexOf(style)];
+    }
+
+    /**
+     * スタイルの位置 (不明なスタイルは先頭のスタイルとみなす)
+     */
+    private static int indexOf(String style) {
+        for (int i = 0; i < STYLES.length; i++) {
+            if (STYLES[i].equals(style)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
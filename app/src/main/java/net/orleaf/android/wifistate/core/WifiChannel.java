@@ -0,0 +1,132 @@
+package net.orleaf.android.wifistate.core;
+
+/**
+ * Wi-Fiの周波数帯・チャネル
+ *
+ * 2.4GHz・5GHz (4.9GHz・5.9GHz を含む)・6GHz・60GHz の周波数とチャネル番号の対応を
+ * クラス初期化時に表として生成し、変換は表の参照のみで行う。
+ */
+final class WifiChannel {
+
+    /**
+     * 周波数帯
+     */
+    enum Band {
+        BAND_2_4GHZ("2.4GHz"),
+        BAND_5GHZ("5GHz"),
+        BAND_6GHZ("6GHz"),
+        BAND_60GHZ("60GHz");
+        private final String label;
+        Band(String label) {
+            this.label = label;
+        }
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // 2.4GHz帯は 1MHz 単位の表で変換 (14CH は 5MHz 間隔から外れる)
+    private static final int MIN_FREQ_2G = 2412;
+    private static final int MAX_FREQ_2G = 2484;
+    private static final byte[] CHANNELS_2G = new byte[MAX_FREQ_2G - MIN_FREQ_2G + 1];   // 0:該当なし
+
+    // 4.9GHz～6GHz帯は 5MHz 間隔の表で変換
+    private static final int MIN_FREQ_5G = 4910;
+    private static final int MAX_FREQ_5G = 7115;
+    private static final int STEP_5G = 5;
+    private static final short[] CHANNELS_5G = new short[(MAX_FREQ_5G - MIN_FREQ_5G) / STEP_5G + 1];  // 0:該当なし
+    private static final boolean[] IS_6G = new boolean[CHANNELS_5G.length];
+
+    // 60GHz帯 (802.11ad/ay) は 2160MHz 間隔
+    private static final int MIN_FREQ_60G = 58320;
+    private static final int STEP_60G = 2160;
+    private static final int MAX_CHANNEL_60G = 6;
+
+    // ScanResult.channelWidth (CHANNEL_WIDTH_20MHZ, 40MHZ, 80MHZ, 160MHZ, 80MHZ_PLUS_MHZ, 320MHZ) に対応する帯域幅(MHz)
+    private static final int[] CHANNEL_WIDTHS = { 20, 40, 80, 160, 160, 320 };
+
+    static {
+        // 2.4GHz: 1-13CH (2412-2472MHz), 14CH (2484MHz)
+        for (int ch = 1; ch <= 13; ch++) {
+            CHANNELS_2G[2407 + ch * 5 - MIN_FREQ_2G] = (byte) ch;
+        }
+        CHANNELS_2G[2484 - MIN_FREQ_2G] = 14;
+        // 4.9GHz (日本): 183-196CH (4915-4980MHz)
+        for (int ch = 183; ch <= 196; ch++) {
+            put(4000 + ch * 5, ch, false);
+        }
+        // 5GHz: 32-177CH (5160-5885MHz, 5.9GHz帯の 169-177CH を含む)
+        for (int ch = 32; ch <= 177; ch++) {
+            put(5000 + ch * 5, ch, false);
+        }
+        // 6GHz: 1-233CH (5955-7115MHz), 2CH (5935MHz)
+        for (int ch = 1; ch <= 233; ch++) {
+            put(5950 + ch * 5, ch, true);
+        }
+        put(5935, 2, true);
+    }
+
+    private static void put(int freq, int ch, boolean is6g) {
+        int index = (freq - MIN_FREQ_5G) / STEP_5G;
+        CHANNELS_5G[index] = (short) ch;
+        IS_6G[index] = is6g;
+    }
+
+    private WifiChannel() {
+    }
+
+    /**
+     * 周波数からチャネル番号に変換
+     *
+     * @param freq 周波数(MHz)
+     * @return チャネル番号 (-1:変換不可)
+     */
+    static int toChannel(int freq) {
+        if (freq >= MIN_FREQ_2G && freq <= MAX_FREQ_2G) {
+            if (CHANNELS_2G[freq - MIN_FREQ_2G] != 0) {
+                return CHANNELS_2G[freq - MIN_FREQ_2G];
+            }
+        } else if (freq >= MIN_FREQ_5G && freq <= MAX_FREQ_5G) {
+            int offset = freq - MIN_FREQ_5G;
+            if (offset % STEP_5G == 0 && CHANNELS_5G[offset / STEP_5G] != 0) {
+                return CHANNELS_5G[offset / STEP_5G];
+            }
+        } else if (freq >= MIN_FREQ_60G) {
+            int offset = freq - MIN_FREQ_60G;
+            if (offset % STEP_60G == 0 && offset / STEP_60G < MAX_CHANNEL_60G) {
+                return offset / STEP_60G + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 周波数から周波数帯を取得
+     *
+     * @param freq 周波数(MHz)
+     * @return 周波数帯 (null:該当なし)
+     */
+    static Band toBand(int freq) {
+        if (toChannel(freq) < 0) {
+            return null;
+        } else if (freq <= MAX_FREQ_2G) {
+            return Band.BAND_2_4GHZ;
+        } else if (freq <= MAX_FREQ_5G) {
+            return IS_6G[(freq - MIN_FREQ_5G) / STEP_5G] ? Band.BAND_6GHZ : Band.BAND_5GHZ;
+        }
+        return Band.BAND_60GHZ;
+    }
+
+    /**
+     * ScanResult.channelWidth から帯域幅を取得
+     *
+     * @param channelWidth ScanResult.CHANNEL_WIDTH_*
+     * @return 帯域幅(MHz) (-1:不明)
+     */
+    static int toWidth(int channelWidth) {
+        if (channelWidth >= 0 && channelWidth < CHANNEL_WIDTHS.length) {
+            return CHANNEL_WIDTHS[channelWidth];
+        }
+        return -1;
+    }
+}
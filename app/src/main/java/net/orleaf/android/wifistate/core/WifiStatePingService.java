@@ -1,11 +1,14 @@
 package net.orleaf.android.wifistate.core;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import android.annotation.TargetApi;
 import android.app.Service;
@@ -15,9 +18,25 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.IBinder;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 
 import net.orleaf.android.wifistate.BuildConfig;
+import net.orleaf.android.wifistate.core.ping.AdaptiveInterval;
+import net.orleaf.android.wifistate.core.ping.ArpTable;
+import net.orleaf.android.wifistate.core.ping.BatchProber;
+import net.orleaf.android.wifistate.core.ping.FailureDomain;
+import net.orleaf.android.wifistate.core.ping.LatencySummary;
+import net.orleaf.android.wifistate.core.ping.LossEstimator;
+import net.orleaf.android.wifistate.core.ping.LossSummary;
+import net.orleaf.android.wifistate.core.ping.ProbeEngine;
+import net.orleaf.android.wifistate.core.ping.ProbeSession;
+import net.orleaf.android.wifistate.core.ping.ProbeStats;
+import net.orleaf.android.wifistate.core.ping.Prober;
+import net.orleaf.android.wifistate.core.ping.QuorumProber;
+import net.orleaf.android.wifistate.core.ping.ReachabilityStateMachine;
+import net.orleaf.android.wifistate.core.ping.ResolverCache;
+import net.orleaf.android.wifistate.core.ping.RollingLatencyHistogram;
 import net.orleaf.android.wifistate.core.preferences.WifiStatePreferences;
 
 /**
@@ -30,15 +49,31 @@ public class WifiStatePingService extends Service {
 
     private static final boolean TESTMODE = false;
 
+    private static final long ADAPTIVE_CONFIRM_INTERVAL = 1000;    // 自動調整時の失敗の再確認間隔(ミリ秒)
+
+    private static final int LATENCY_SLOTS = 6;                     // 応答時間の集計スロット数
+    private static final long LATENCY_SLOT_PERIOD = 10 * 60 * 1000; // 応答時間の集計スロットの期間 (計1時間)
+
+    private static final int LOSS_SLOTS = 5;                        // ロス率の集計スロット数
+    private static final long LOSS_SLOT_PERIOD = 60 * 1000;         // ロス率の集計スロットの期間 (計5分)
+    private static final int LOSS_MIN_SAMPLES = 10;                 // ロス率を判定に使用する最小集計数
+
+    // ゲートウェイ無応答時に ARP テーブルを信用するまでの時間(ミリ秒)
+    // (無線区間が切れていても、カーネルが再確認して未解決にするまでは解決済みのまま残る)
+    private static final long ARP_CONFIRM_TIME = 10 * 1000;
+
+    private static volatile Map<String, LatencySummary> mLatencySummaries = null;   // 直近の応答時間統計
+    private static volatile Map<String, LossSummary> mLossSummaries = null; // 直近のロス率・ジッタ
+    private static volatile Boolean mDnsHealthy = null; // 名前解決が正常かどうか (null:不明)
+    private static volatile ProbeStats mProbeStats = null;  // 疎通確認の統計
+    private static volatile FailureDomain mFailureDomain = null;    // 直前の失敗箇所
+
     private BroadcastReceiver mScreenReceiver;
 
-    private boolean mReachable;     // 直前の到達性
-    private String mTarget;         // 疎通監視先ホスト
-    private Thread mThread = null;  // 処理スレッド
-    private int mNumPing;           // ping実行回数(累計)
-    private int mNumOk;             // ping成功回数(累計)
-    private int mNumNg;             // ping失敗回数(累計)
-    private int mNumFail;           // ping連続失敗回数
+    private volatile PingTargets mTargets;  // 疎通監視先ホスト
+    private ProbeSession mSession = null;   // 実行中の監視 (処理スレッド・疎通確認エンジン)
+    private final ResolverCache mResolverCache = new ResolverCache();   // 監視先ホストの名前解決キャッシュ
+    private volatile PingState mState = null;   // 監視中の状態 (監視開始ごとに差し替え)
 
     @Override
     public void onCreate() {
@@ -85,13 +120,23 @@ public class WifiStatePingService extends Service {
     }
 
     public void handleCommand(Intent intent) {
-        // 監視先ホスト取得
+        // 監視先ホスト取得 (カンマ/空白区切りで複数指定可)
+        PingTargets previousTargets = mTargets;
+        String gateway = intent.getStringExtra(EXTRA_TARGET);
         String target = WifiStatePreferences.getPingTarget(this);
-        if (target != null && target.length() > 0) {
-            mTarget = target;
-        } else {
+        if (target != null && target.trim().length() > 0) {
+            // 監視先ホストと合わせてゲートウェイも確認する
+            mTargets = new PingTargets(target.trim().split("[,\\s]+"), gateway);
+        } else if (gateway != null) {
             // 監視先未設定の場合は指定されたホスト(ゲートウェイ)を使用する
-            mTarget = intent.getStringExtra(EXTRA_TARGET);
+            mTargets = new PingTargets(new String[] { gateway }, gateway);
+        } else {
+            mTargets = null;
+        }
+        if (mTargets == null || previousTargets == null ||
+                !Arrays.equals(mTargets.mHosts, previousTargets.mHosts)) {
+            // 監視先が変わったら名前解決結果を破棄
+            mResolverCache.clear();
         }
 
         // 画面ONなら監視開始
@@ -111,48 +156,99 @@ public class WifiStatePingService extends Service {
      * 監視開始
      */
     private void startPing() {
-        if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Target: " + mTarget);
-        if (mTarget != null) {
-            mReachable = true;
-            mNumPing = 0;
-            mNumOk = 0;
-            mNumNg = 0;
-            mNumFail = 0;
-            startThread();
-        } else {
-            // ターゲット未設定の場合は停止
-            stopThread();
+        PingTargets targets = mTargets;
+        if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Target: " + ((targets != null) ? Arrays.toString(targets.mHosts) : null));
+        // 実行中の監視を停止してから状態を作り直す
+        stopThread();
+        if (targets != null) {
+            Map<String, RollingLatencyHistogram> latencies = new HashMap<String, RollingLatencyHistogram>();
+            for (String target : targets.mHosts) {
+                latencies.put(target, new RollingLatencyHistogram(LATENCY_SLOTS, LATENCY_SLOT_PERIOD));
+            }
+            Map<String, LossEstimator> losses = new HashMap<String, LossEstimator>();
+            for (String target : targets.mHosts) {
+                losses.put(target, new LossEstimator(LossEstimator.DEFAULT_WINDOW, LOSS_SLOTS, LOSS_SLOT_PERIOD));
+            }
+            int downThreshold = WifiStatePreferences.getPingDownThreshold(this);
+            AdaptiveInterval adaptiveInterval = null;
+            if (WifiStatePreferences.getPingAdaptive(this)) {
+                adaptiveInterval = new AdaptiveInterval(WifiStatePreferences.getPingInterval(this) * 1000L,
+                        WifiStatePreferences.getPingIntervalMax(this) * 1000L,
+                        ADAPTIVE_CONFIRM_INTERVAL, downThreshold, new Random());
+            }
+            ReachabilityStateMachine reachability = new ReachabilityStateMachine(
+                    downThreshold, WifiStatePreferences.getPingUpThreshold(this));
+            PingState state = new PingState(targets, latencies, losses, adaptiveInterval, reachability);
+            mState = state;
+            // 停止した監視の実行中の周期が記録しても、新しい監視の統計には混ざらない
+            mProbeStats = state.mStats;
+            mFailureDomain = null;
+            startThread(state);
         }
     }
 
     /**
      * 監視スレッド開始
      */
-    private void startThread() {
-        if (mThread == null) {
-            mThread = new PingThread();
-            mThread.start();
-        }
-        // スレッド起動済みの場合は何もしない。
+    private void startThread(PingState state) {
+        // 周期処理用に1スレッド + 監視先ごとの疎通確認用
+        // (監視先が他の監視先の完了を待って期限切れにならないよう、監視先の数だけ用意する)
+        int poolSize = 1 + state.mTargets.mHosts.length;
+        ProbeSession session = new ProbeSession(
+                ProbeEngine.create(WifiStatePreferences.getPingMethod(this)), poolSize);
+        mSession = session;
+        session.start(new PingCycle(session, state));
     }
 
     /**
      * 監視スレッド停止
      */
     private void stopThread() {
-        mThread = null;
+        if (mSession != null) {
+            // 実行中の周期を中断し、待機中のソケット・子プロセスを中止 (タイムアウトを待たない)
+            // 停止した監視はこの監視専用のエンジンのみ使用するため、完了は待たない
+            mSession.stop();
+            mSession = null;
+        }
+        mState = null;
     }
 
     /**
      * ネットワーク疎通監視結果通知
      */
-    private void notifyReachability(boolean reachable) {
+    private void notifyReachability(boolean reachable, ProbeStats.Snapshot stats) {
         Intent intent = new Intent(this, WifiStateReceiver.class);
         intent.setAction(WifiStateReceiver.ACTION_REACHABILITY);
         intent.putExtra(WifiStateReceiver.EXTRA_REACHABLE, reachable);
-        intent.putExtra(WifiStateReceiver.EXTRA_COUNT_OK, mNumOk);
-        intent.putExtra(WifiStateReceiver.EXTRA_COUNT_NG, mNumNg);
-        intent.putExtra(WifiStateReceiver.EXTRA_COUNT_TOTAL, mNumPing);
+        intent.putExtra(WifiStateReceiver.EXTRA_COUNT_OK, stats.getNumOk());
+        intent.putExtra(WifiStateReceiver.EXTRA_COUNT_NG, stats.getNumNg());
+        intent.putExtra(WifiStateReceiver.EXTRA_COUNT_TOTAL, stats.getNumPing());
+        intent.putExtra(WifiStateReceiver.EXTRA_COUNT_FLAP, stats.getNumFlap());
+        if (mDnsHealthy != null) {
+            intent.putExtra(WifiStateReceiver.EXTRA_DNS_OK, mDnsHealthy.booleanValue());
+        }
+        Map<String, LatencySummary> summaries = mLatencySummaries;
+        if (summaries != null) {
+            String[] targets = new String[summaries.size()];
+            long[] p50 = new long[targets.length];
+            long[] p90 = new long[targets.length];
+            long[] p99 = new long[targets.length];
+            long[] max = new long[targets.length];
+            int i = 0;
+            for (Map.Entry<String, LatencySummary> entry : summaries.entrySet()) {
+                targets[i] = entry.getKey();
+                p50[i] = entry.getValue().getP50();
+                p90[i] = entry.getValue().getP90();
+                p99[i] = entry.getValue().getP99();
+                max[i] = entry.getValue().getMax();
+                i++;
+            }
+            intent.putExtra(WifiStateReceiver.EXTRA_TARGETS, targets);
+            intent.putExtra(WifiStateReceiver.EXTRA_RTT_P50, p50);
+            intent.putExtra(WifiStateReceiver.EXTRA_RTT_P90, p90);
+            intent.putExtra(WifiStateReceiver.EXTRA_RTT_P99, p99);
+            intent.putExtra(WifiStateReceiver.EXTRA_RTT_MAX, max);
+        }
         sendBroadcast(intent);
     }
 
@@ -160,16 +256,97 @@ public class WifiStatePingService extends Service {
      * ネットワーク疎通監視失敗通知
      *
      * @param fail 連続失敗回数
+     * @param loss 最小のロス率(千分率)
+     * @param jitter 最小のジッタ(マイクロ秒)
+     * @param domain 失敗箇所
      */
-    private void notifyFail(int fail) {
+    private void notifyFail(int fail, int loss, long jitter, FailureDomain domain) {
         Intent intent = new Intent(this, WifiStateReceiver.class);
         intent.setAction(WifiStateReceiver.ACTION_PING_FAIL);
         intent.putExtra(WifiStateReceiver.EXTRA_FAIL, fail);
+        intent.putExtra(WifiStateReceiver.EXTRA_LOSS, loss);
+        intent.putExtra(WifiStateReceiver.EXTRA_JITTER, jitter);
+        intent.putExtra(WifiStateReceiver.EXTRA_FAILURE_DOMAIN, domain.name());
         sendBroadcast(intent);
     }
 
+    /**
+     * 直近1時間の応答時間統計を取得
+     *
+     * @return 監視先ホストごとの統計 (null:監視していない)
+     */
+    public static Map<String, LatencySummary> getLatencySummaries() {
+        return mLatencySummaries;
+    }
+
+    /**
+     * 直近のロス率・ジッタを取得
+     *
+     * @return 監視先ホストごとの統計 (null:監視していない)
+     */
+    public static Map<String, LossSummary> getLossSummaries() {
+        return mLossSummaries;
+    }
+
+    /**
+     * 応答時間統計・ロス率を更新
+     */
+    private void updateLatencySummaries(PingTargets targets, PingState state) {
+        long now = SystemClock.elapsedRealtime();
+        Map<String, LatencySummary> summaries = new LinkedHashMap<String, LatencySummary>();
+        for (String target : targets.mHosts) {
+            RollingLatencyHistogram histogram = state.mLatencies.get(target);
+            if (histogram != null) {
+                summaries.put(target, histogram.getSummary(now));
+            }
+        }
+        mLatencySummaries = Collections.unmodifiableMap(summaries);
+
+        Map<String, LossSummary> losses = new LinkedHashMap<String, LossSummary>();
+        for (String target : targets.mHosts) {
+            LossEstimator estimator = state.mLosses.get(target);
+            if (estimator != null) {
+                losses.put(target, estimator.getSummary(now));
+            }
+        }
+        mLossSummaries = Collections.unmodifiableMap(losses);
+    }
+
+    /**
+     * 監視先ホストの名前解決が正常かどうか
+     *
+     * @return true:正常 false:失敗 null:不明
+     */
+    public static Boolean isDnsHealthy() {
+        return mDnsHealthy;
+    }
+
+    /**
+     * 直前の疎通確認失敗の箇所を取得
+     *
+     * @return 失敗箇所 (null:監視していない)
+     */
+    public static FailureDomain getFailureDomain() {
+        return mFailureDomain;
+    }
+
+    /**
+     * 疎通確認の統計を取得
+     *
+     * @return 統計 (null:監視していない)
+     */
+    public static ProbeStats.Snapshot getProbeStats() {
+        ProbeStats stats = mProbeStats;
+        return (stats != null) ? stats.getSnapshot() : null;
+    }
+
     public void onDestroy() {
         stopThread();
+        mLatencySummaries = null;
+        mLossSummaries = null;
+        mDnsHealthy = null;
+        mProbeStats = null;
+        mFailureDomain = null;
 
         // 画面ON/OFF監視停止
         if (mScreenReceiver != null) {
@@ -185,115 +362,346 @@ public class WifiStatePingService extends Service {
     }
 
     /**
-     * ネットワーク疎通監視処理スレッド
+     * 疎通監視先
+     *
+     * 監視先ホストの後にゲートウェイを並べ、1周期でまとめて確認する。
+     */
+    private static class PingTargets {
+        private final String[] mHosts;          // 疎通確認するホスト
+        private final int mUpstreamCount;       // 監視先ホストの数 (先頭から)
+        private final int mGatewayIndex;        // ゲートウェイの位置 (-1:ゲートウェイなし)
+
+        /**
+         * @param upstream 監視先ホスト
+         * @param gateway ゲートウェイ (null:なし)
+         */
+        PingTargets(String[] upstream, String gateway) {
+            int index = (gateway != null) ? Arrays.asList(upstream).indexOf(gateway) : -1;
+            if (gateway != null && index < 0) {
+                mHosts = new String[upstream.length + 1];
+                System.arraycopy(upstream, 0, mHosts, 0, upstream.length);
+                mHosts[upstream.length] = gateway;
+                mGatewayIndex = upstream.length;
+            } else {
+                mHosts = upstream;
+                mGatewayIndex = index;
+            }
+            mUpstreamCount = upstream.length;
+        }
+    }
+
+    /**
+     * 監視中の状態 (不変)
+     *
+     * 監視開始ごとに作り直して差し替えるため、各周期は開始時の状態のみを参照する。
+     * 応答時間・ロス率は疎通確認スレッドからも更新する (各要素で同期)。
+     * 到達性・監視間隔は周期処理からのみ参照する。
+     * 疎通確認の統計は周期処理からのみ更新する (画面表示用に公開するため各要素で同期)。
      */
-    private class PingThread extends Thread {
+    private static class PingState {
+        private final PingTargets mTargets;                             // 監視先ホスト (スレッドプールの大きさもこれに合わせる)
+        private final Map<String, RollingLatencyHistogram> mLatencies;  // 監視先ごとの応答時間
+        private final Map<String, LossEstimator> mLosses;               // 監視先ごとのロス率・ジッタ
+        private final AdaptiveInterval mAdaptiveInterval;               // 監視間隔の自動調整 (null:固定間隔)
+        private final ReachabilityStateMachine mReachability;           // 確定した到達性
+        private final ProbeStats mStats = new ProbeStats();             // 疎通確認の統計
+
+        PingState(PingTargets targets, Map<String, RollingLatencyHistogram> latencies, Map<String, LossEstimator> losses,
+                  AdaptiveInterval adaptiveInterval, ReachabilityStateMachine reachability) {
+            mTargets = targets;
+            mLatencies = Collections.unmodifiableMap(latencies);
+            mLosses = Collections.unmodifiableMap(losses);
+            mAdaptiveInterval = adaptiveInterval;
+            mReachability = reachability;
+        }
+    }
+
+    /**
+     * ネットワーク疎通監視処理 (1周期)
+     */
+    private class PingCycle implements Runnable {
+        private final ProbeSession mCycleSession;
+        private final PingState mCycleState;
+        private final QuorumProber mQuorumProber;
+        private long mGatewayFailedSince = -1;  // ゲートウェイが無応答になった時刻 (-1:応答あり)
+
+        PingCycle(ProbeSession session, PingState state) {
+            mCycleSession = session;
+            mCycleState = state;
+            // ping コマンドの場合は1周期分をまとめて送信
+            mQuorumProber = new QuorumProber(new PingProber(session.getEngine(), state),
+                    session.getEngine().isBatch(), session.getExecutor());
+        }
+
         @Override
         public void run() {
-            if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Thread started. (" + getId() + ")");
-            while (this == mThread) {
-                if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Pinging: " + mTarget);
-
-                boolean reachable;
-                int ntry = WifiStatePreferences.getPingRetry(WifiStatePingService.this) + 1;
-                int timeout = WifiStatePreferences.getPingTimeout(WifiStatePingService.this);
-                int count;
-                for (count = 0; count < ntry; count++) {
-                    mNumPing++;
-                    if (TESTMODE) {
-                        try {
-                            Thread.sleep(1000);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
+            if (isStopped()) {
+                return;
+            }
+            // 監視中に監視先が変更されても、この監視の開始時の監視先を使用する
+            PingTargets targets = mCycleState.mTargets;
+            if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Pinging: " + Arrays.toString(targets.mHosts));
+
+            boolean reachable;
+            boolean allReachable;
+            Boolean gatewayReachable = null;
+            int attempts;
+            int replies;
+            long rtt = Prober.UNREACHABLE;
+            // 1周期の間は同じ設定値を使用する
+            WifiStatePreferences.Snapshot prefs = WifiStatePreferences.getSnapshot(WifiStatePingService.this);
+            int ntry = prefs.getPingRetry() + 1;
+            int timeout = prefs.getPingTimeout() * 1000;
+            int quorum = prefs.getPingQuorum();
+            if (TESTMODE) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    // 停止された
+                    return;
+                }
+                reachable = !mCycleState.mStats.getSnapshot().isReachable();
+                allReachable = reachable;
+                attempts = 1;
+                replies = reachable ? 1 : 0;
+            } else {
+                // 監視先ホストとゲートウェイを並行して確認
+                QuorumProber.Result result;
+                try {
+                    result = mQuorumProber.probe(targets.mHosts, ntry, timeout);
+                } catch (InterruptedException e) {
+                    // 停止された
+                    return;
+                }
+                if (isStopped()) {
+                    // 停止後の結果は破棄
+                    return;
+                }
+                reachable = result.isReachable(quorum, targets.mUpstreamCount);
+                allReachable = result.getReachableCount() == targets.mHosts.length;
+                if (targets.mGatewayIndex >= 0) {
+                    gatewayReachable = result.getRtt(targets.mGatewayIndex) != Prober.UNREACHABLE;
+                    if (!gatewayReachable) {
+                        if (mGatewayFailedSince < 0) {
+                            mGatewayFailedSince = SystemClock.elapsedRealtime();
                         }
-                        reachable = !mReachable;
-                    } else {
-                        reachable = ping(mTarget, timeout);
-                    }
-                    if (reachable) {
-                        mNumOk++;
                     } else {
-                        mNumNg++;
-                    }
-                    if (reachable != mReachable) {
-                        notifyReachability(reachable);
-                    }
-                    mReachable = reachable;
-                    if (reachable) {
-                        break;
+                        mGatewayFailedSince = -1;
                     }
                 }
-                if (count == ntry) {
-                    // リトライオーバー
-                    mNumFail++;
-                    notifyFail(mNumFail);
-                } else {
-                    // 成功したら失敗回数をリセット
-                    mNumFail = 0;
+                rtt = result.getMinRtt();
+                attempts = result.getTotalAttempts();
+                replies = result.getTotalReplies();
+                if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Reachable: " + result.getReachableCount(targets.mUpstreamCount) +
+                        "/" + targets.mUpstreamCount + " (quorum=" + quorum + ", gateway=" + gatewayReachable + ")");
+            }
+            // 連続回数・フラップを考慮して到達性を確定
+            ReachabilityStateMachine reachability = mCycleState.mReachability;
+            boolean changed = reachability.update(reachable, SystemClock.elapsedRealtime());
+            ProbeStats.Snapshot stats = mCycleState.mStats.record(attempts, replies, reachable, reachability.getFlapCount());
+            if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "ping:" + stats);
+            updateLatencySummaries(targets, mCycleState);
+
+            // 期限切れが近い名前解決結果を事前に更新 (結果は次周期以降に反映)
+            // 疎通確認のスレッドを占有しないよう、名前解決専用のスレッドで更新
+            mResolverCache.refreshAsync(mCycleSession.getResolverExecutor(), SystemClock.elapsedRealtime());
+            Boolean dnsHealthy = mResolverCache.isEmpty() ? null : mResolverCache.isHealthy();
+            boolean dnsChanged = (dnsHealthy != null) ? !dnsHealthy.equals(mDnsHealthy) : (mDnsHealthy != null);
+            mDnsHealthy = dnsHealthy;
+
+            if (changed || dnsChanged) {
+                notifyReachability(reachability.isReachable(), stats);
+            }
+
+            // 監視先ホストのうち最も良好な値で回線品質を判定
+            int loss = 0;
+            long jitter = 0;
+            boolean first = true;
+            Map<String, LossSummary> lossSummaries = mLossSummaries;
+            for (int i = 0; i < targets.mUpstreamCount && lossSummaries != null; i++) {
+                LossSummary summary = lossSummaries.get(targets.mHosts[i]);
+                if (summary != null && summary.getPeriodCount() >= LOSS_MIN_SAMPLES) {
+                    loss = first ? summary.getPeriodLoss() : Math.min(loss, summary.getPeriodLoss());
+                    jitter = first ? summary.getJitter() : Math.min(jitter, summary.getJitter());
+                    first = false;
                 }
-                try {
-                    Thread.sleep(WifiStatePreferences.getPingInterval(WifiStatePingService.this) * 1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            }
+            boolean degraded = !first && isDegraded(prefs, loss, jitter);
+
+            // 失敗箇所を判定
+            FailureDomain domain;
+            if (!reachable) {
+                Boolean gatewayResolved = null;
+                if (gatewayReachable != null && !gatewayReachable &&
+                        SystemClock.elapsedRealtime() - mGatewayFailedSince >= ARP_CONFIRM_TIME) {
+                    // 無応答が続いても解決済みであれば無線区間は正常
+                    // (それまではゲートウェイの無応答を優先して無線区間の障害とみなす)
+                    gatewayResolved = ArpTable.isResolved(targets.mHosts[targets.mGatewayIndex]);
+                }
+                domain = FailureDomain.classify(false, gatewayReachable, gatewayResolved, dnsHealthy);
+            } else if (degraded) {
+                // ゲートウェイまでの品質も悪ければ無線区間、そうでなければ上流
+                LossSummary gateway = (targets.mGatewayIndex >= 0 && lossSummaries != null) ?
+                        lossSummaries.get(targets.mHosts[targets.mGatewayIndex]) : null;
+                if (gateway != null && gateway.getPeriodCount() >= LOSS_MIN_SAMPLES &&
+                        isDegraded(prefs, gateway.getPeriodLoss(), gateway.getJitter())) {
+                    domain = FailureDomain.LINK;
+                } else {
+                    domain = FailureDomain.UPSTREAM;
                 }
+            } else {
+                domain = FailureDomain.NONE;
+            }
+            mFailureDomain = domain;
+
+            if (domain != FailureDomain.NONE) {
+                // 必要数の監視先がリトライオーバー (成功したら失敗回数はリセットされる)
+                // または、ロス率・ジッタが閾値以上
+                if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Ping fail: " + domain + " fail=" + stats.getNumFail() +
+                        " loss=" + LossSummary.formatPercent(loss) + "% jitter=" + LatencySummary.formatMillis(jitter) + "ms");
+                notifyFail(stats.getNumFail(), loss, jitter, domain);
+            }
+
+            // 次回の周期
+            long interval;
+            AdaptiveInterval adaptiveInterval = mCycleState.mAdaptiveInterval;
+            if (adaptiveInterval != null) {
+                // 失敗・品質低下中の監視先があるか、到達不可が確定している間は延ばさない
+                boolean healthy = allReachable && !degraded && reachability.isReachable();
+                interval = adaptiveInterval.next(healthy, rtt);
+            } else {
+                interval = prefs.getPingInterval() * 1000L;
+            }
+            if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Next ping after " + interval + "ms");
+            try {
+                mCycleSession.getExecutor().schedule(this, interval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Ping cycle stopped.");
             }
-            if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "Thread stoppped. (" + getId() + ")");
         }
 
         /**
-         * ping
+         * ロス率・ジッタが閾値以上かどうか
+         *
+         * @param prefs 設定値
+         * @param loss ロス率(千分率)
+         * @param jitter ジッタ(マイクロ秒)
          */
-        private boolean ping(String target, int timeout) {
-            boolean result = false;
+        private boolean isDegraded(WifiStatePreferences.Snapshot prefs, int loss, long jitter) {
+            int lossThreshold = prefs.getPingFailLoss() * 10;
+            long jitterThreshold = prefs.getPingFailJitter() * 1000L;
+            return (lossThreshold > 0 && loss >= lossThreshold) || (jitterThreshold > 0 && jitter >= jitterThreshold);
+        }
 
-            //noinspection ConstantIfStatement,ConstantConditions
-            if (false) {
-                // 事前にアドレスを取得する
-                InetAddress inetAddress = null;
-                try {
-                    inetAddress = InetAddress.getByName(target);
-                } catch (UnknownHostException e) {
-                    Log.e(WifiState.TAG, "name resolution failed: " + target);
-                    e.printStackTrace();
+        /**
+         * 監視が停止されたかどうか
+         */
+        private boolean isStopped() {
+            return Thread.currentThread().isInterrupted() || mCycleSession.isStopped();
+        }
+    }
+
+    /**
+     * 監視先ごとの疎通確認
+     */
+    private class PingProber implements BatchProber {
+        private final ProbeEngine mEngine;
+        private final PingState mProberState;
+
+        PingProber(ProbeEngine engine, PingState state) {
+            mEngine = engine;
+            mProberState = state;
+        }
+
+        /**
+         * ping
+         *
+         * @param target 監視先ホスト
+         * @param timeout タイムアウト(ミリ秒)
+         */
+        @Override
+        public long probe(String target, int timeout) {
+            long rtt = UNREACHABLE;
+
+            // キャッシュ済みのアドレスを使用する
+            InetAddress address = mResolverCache.resolve(target, SystemClock.elapsedRealtime());
+            if (address == null) {
+                Log.e(WifiState.TAG, "name resolution failed: " + target);
+            } else {
+                rtt = mEngine.probe(address.getHostAddress(), timeout);
+                if (rtt != UNREACHABLE) {
+                    recordRtt(target, rtt);
+                    if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "ping success: " + target + " (" + rtt + "us)");
+                } else {
+                    recordLoss(target, 1);
+                    Log.e(WifiState.TAG, "ping failed: " + target);
                 }
-                target = inetAddress.getHostAddress();
             }
-            if (target != null) {
-                try {
-                    String[] cmdLine = new String[] { "ping", "-c", "1", "-w", "" + timeout, target };
-                    Process process = Runtime.getRuntime().exec(cmdLine);
-                    process.waitFor();
-                    //String out = readAll(process.getInputStream());
-                    //String err = readAll(process.getErrorStream());
-                    //process.destroy();
-                    if (process.exitValue() == 0) {
-                        if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "ping success: " + target);
-                        result = true;
-                    } else {
-                        Log.e(WifiState.TAG, "ping failed: " + target);
+            return rtt;
+        }
+
+        /**
+         * ping (指定数をまとめて送信)
+         *
+         * @param target 監視先ホスト
+         * @param count 送信数
+         * @param timeout タイムアウト(ミリ秒)
+         * @param listener 応答の通知先
+         */
+        @Override
+        public int probe(final String target, int count, int timeout, final ReplyListener listener) {
+            int replies = 0;
+
+            // キャッシュ済みのアドレスを使用する
+            InetAddress address = mResolverCache.resolve(target, SystemClock.elapsedRealtime());
+            if (address == null) {
+                Log.e(WifiState.TAG, "name resolution failed: " + target);
+            } else {
+                replies = mEngine.probe(address.getHostAddress(), count, timeout, new ReplyListener() {
+                    @Override
+                    public void onReply(int seq, int ttl, long rtt) {
+                        recordRtt(target, rtt);
+                        listener.onReply(seq, ttl, rtt);
                     }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                });
+                recordLoss(target, count - replies);
+                if (replies > 0) {
+                    if (BuildConfig.DEBUG) Log.d(WifiState.TAG, "ping success: " + target + " (" + replies + "/" + count + ")");
+                } else {
+                    Log.e(WifiState.TAG, "ping failed: " + target);
                 }
             }
-            return result;
+            return replies;
+        }
+
+        @Override
+        public void cancel() {
+            mEngine.cancel();
+        }
+
+        /**
+         * 応答時間を記録
+         */
+        private void recordRtt(String target, long rtt) {
+            long now = SystemClock.elapsedRealtime();
+            RollingLatencyHistogram histogram = mProberState.mLatencies.get(target);
+            if (histogram != null) {
+                histogram.record(rtt, now);
+            }
+            LossEstimator estimator = mProberState.mLosses.get(target);
+            if (estimator != null) {
+                estimator.recordReply(rtt, now);
+            }
         }
 
         /**
-         * コマンド実行結果を取得する
+         * 無応答を記録
          */
-        @SuppressWarnings("unused")
-        private String readAll(InputStream stream) throws IOException {
-            String line;
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream), 1024);
-            StringBuilder msg = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                if (BuildConfig.DEBUG) Log.v(WifiState.TAG, " |" + line);
-                msg.append(line).append("\n");
+        private void recordLoss(String target, int count) {
+            LossEstimator estimator = mProberState.mLosses.get(target);
+            if (estimator != null && count > 0) {
+                estimator.recordLoss(count, SystemClock.elapsedRealtime());
             }
-            return msg.toString().trim();
         }
     }
 
@@ -9,9 +9,15 @@ import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.NetworkInfo;
 import android.net.Uri;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.support.v4.app.NotificationCompat;
 import android.telephony.PhoneStateListener;
@@ -20,6 +26,8 @@ import android.util.Log;
 
 import net.orleaf.android.wifistate.BuildConfig;
 import net.orleaf.android.wifistate.R;
+import net.orleaf.android.wifistate.core.ping.FailureDomain;
+import net.orleaf.android.wifistate.core.ping.LatencySummary;
 import net.orleaf.android.wifistate.core.preferences.WifiStatePreferences;
 
 public class WifiStateReceiver extends BroadcastReceiver {
@@ -27,20 +35,55 @@ public class WifiStateReceiver extends BroadcastReceiver {
 
     private static final int NOTIFICATIONID_ICON = 1;
     private static final String ACTION_CLEAR_NOTIFICATION = "net.orleaf.android.wifistate.CLEAR_NOTIFICATION";
+    private static final String ACTION_UPDATE_STATE = "net.orleaf.android.wifistate.UPDATE_STATE";
+    private static final long COALESCE_PERIOD = 500;    // イベントを集約する期間(ミリ秒)
+    private static final String ACTION_PUBLISH_NOTIFICATION = "net.orleaf.android.wifistate.PUBLISH_NOTIFICATION";
+    private static final long MIN_NOTIFY_INTERVAL = 1000;   // 通知の最小更新間隔(ミリ秒)
+    private static final String ACTION_SAMPLE_SIGNAL = "net.orleaf.android.wifistate.SAMPLE_SIGNAL";
+    private static final long SAMPLE_INTERVAL = 15000;      // 信号強度の記録間隔(ミリ秒)
 
     public static final String ACTION_REACHABILITY = "net.orleaf.android.wifistate.ACTION_RECHABLILITY";
     public static final String EXTRA_REACHABLE = "reachable";
     public static final String EXTRA_COUNT_OK = "ok";
     public static final String EXTRA_COUNT_NG = "ng";
     public static final String EXTRA_COUNT_TOTAL = "total";
+    public static final String EXTRA_COUNT_FLAP = "flap";
+    public static final String EXTRA_DNS_OK = "dns_ok";
+    public static final String EXTRA_TARGETS = "targets";
+    public static final String EXTRA_RTT_P50 = "rtt_p50";
+    public static final String EXTRA_RTT_P90 = "rtt_p90";
+    public static final String EXTRA_RTT_P99 = "rtt_p99";
+    public static final String EXTRA_RTT_MAX = "rtt_max";
 
     public static final String ACTION_PING_FAIL = "net.orleaf.android.wifistate.PING_FAIL";
     public static final String EXTRA_FAIL = "fail";
+    public static final String EXTRA_LOSS = "loss";
+    public static final String EXTRA_JITTER = "jitter";
+    public static final String EXTRA_FAILURE_DOMAIN = "failure_domain";
 
     private static NetworkStateInfo mNetworkStateInfo = null;
     private static PhoneStateListener mPhoneStateListener = null;
     private static boolean mReachable;
 
+    // イベントの集約
+    private static long mCoalesceEnd = 0;       // 集約期間の終了時刻
+    private static int mPendingEvents = 0;      // 集約期間中に受信して未反映のイベント数
+    private static int mReceivedEvents = 0;     // 受信したイベント数(累計)
+    private static int mAbsorbedEvents = 0;     // 集約により状態取得を省略したイベント数(累計)
+
+    // 集約期間・更新間隔待ちの満了処理 (プロセス生存中はタイマより先に実行)
+    private static final Handler mHandler = new Handler(Looper.getMainLooper());
+    private static Runnable mFlushTask = null;
+    private static Runnable mPublishTask = null;
+
+    // 通知の重複排除
+    private static NotificationCompat.Builder mNotificationBuilder = null;
+    private static PendingIntent mContentIntent = null;
+    private static Bitmap mLargeIcon = null;
+    private static NotificationContent mShownContent = null;    // 表示中の内容
+    private static NotificationContent mPendingContent = null;  // 更新間隔待ちの内容
+    private static long mNextNotifyTime = 0;                    // 次に通知を更新できる時刻
+
     /**
      * ネットワーク状態の変化によって通知アイコンを切り替える
      */
@@ -52,6 +95,21 @@ public class WifiStateReceiver extends BroadcastReceiver {
             return;
         }
 
+        if (WifiManager.SUPPLICANT_STATE_CHANGED_ACTION.equals(intent.getAction())) {
+            // 接続過程の時系列を記録 (集約の影響を受けないよう受信時刻で記録)
+            SupplicantState state = intent.getParcelableExtra(WifiManager.EXTRA_NEW_STATE);
+            NetworkStateInfo.recordSupplicantState(state);
+        } else if (WifiManager.NETWORK_STATE_CHANGED_ACTION.equals(intent.getAction())) {
+            NetworkInfo info = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
+            NetworkStateInfo.recordNetworkInfo(info);
+        }
+
+        if (WifiManager.SCAN_RESULTS_AVAILABLE_ACTION.equals(intent.getAction())) {
+            // スキャン結果は次回参照時に再構築 (状態は変わらない)
+            NetworkStateInfo.invalidateScanResults();
+            return;
+        }
+
         // ネットワーク状態を取得
         if (mNetworkStateInfo == null) {
             mNetworkStateInfo = new NetworkStateInfo(ctx);
@@ -63,7 +121,7 @@ public class WifiStateReceiver extends BroadcastReceiver {
                 public void onDataConnectionStateChanged(int state) {
                     super.onDataConnectionStateChanged(state);
                     if (mNetworkStateInfo != null) {
-                        updateState(ctx);
+                        requestUpdate(ctx, NetworkStateInfo.Event.DATA_CONNECTION);
                     }
                 }
             };
@@ -89,14 +147,24 @@ public class WifiStateReceiver extends BroadcastReceiver {
                         if (mReachable) {
                             iconRes = mNetworkStateInfo.getIcon();
                         } else {
-                            String name = String.format("state_%s_warn", WifiStatePreferences.getIconStyle(ctx));
-                            iconRes = ctx.getResources().getIdentifier(name, "drawable", ctx.getPackageName());
+                            iconRes = StateIconTable.getWarnIcon(WifiStatePreferences.getIconStyle(ctx));
                         }
                         String extra = null;
                         if (BuildConfig.DEBUG) {
-                            int ok = intent.getIntExtra("ok", 0);
-                            int total = intent.getIntExtra("total", 0);
-                            extra = " ping:" + ok + "/" + total;
+                            int flap = intent.getIntExtra(EXTRA_COUNT_FLAP, 0);
+                            extra = " flap:" + flap;
+                            // 最初の監視先の応答時間 (p50/p90/p99/max)
+                            long[] p50 = intent.getLongArrayExtra(EXTRA_RTT_P50);
+                            long[] p90 = intent.getLongArrayExtra(EXTRA_RTT_P90);
+                            long[] p99 = intent.getLongArrayExtra(EXTRA_RTT_P99);
+                            long[] max = intent.getLongArrayExtra(EXTRA_RTT_MAX);
+                            if (p50 != null && p50.length > 0 && p90 != null && p90.length > 0 &&
+                                    p99 != null && p99.length > 0 && max != null && max.length > 0) {
+                                extra += " rtt:" + LatencySummary.formatMillis(p50[0]) + "/" +
+                                        LatencySummary.formatMillis(p90[0]) + "/" +
+                                        LatencySummary.formatMillis(p99[0]) + "/" +
+                                        LatencySummary.formatMillis(max[0]) + "ms";
+                            }
                         }
                         showNotificationIcon(ctx, iconRes, mNetworkStateInfo, extra);
                     }
@@ -104,9 +172,16 @@ public class WifiStateReceiver extends BroadcastReceiver {
                 return;
             } else if (intent.getAction().equals(ACTION_PING_FAIL)) {
                 /*
-                 * ネットワーク疎通監視失敗 (指定回数連続失敗時)
+                 * ネットワーク疎通監視失敗 (指定回数連続失敗時、またはロス率・ジッタが閾値以上)
                  */
                 if (WifiStatePreferences.getPingDisableWifiOnFail(ctx)) {
+                    FailureDomain domain = FailureDomain.fromName(intent.getStringExtra(EXTRA_FAILURE_DOMAIN));
+                    if (domain != null && domain != FailureDomain.LINK) {
+                        // 無線区間以外の障害は Wi-Fi を再接続しても回復しない
+                        // (原因箇所が不明な場合は従来どおり再接続する)
+                        Log.i(TAG, "Ping failed at " + domain.getLabel() + ", skipped re-enabling Wi-Fi.");
+                        return;
+                    }
                     if (mNetworkStateInfo.isWifiConnected()) {
                         int wait = WifiStatePreferences.getPingDisableWifiPeriod(ctx);
                         WifiStateControlService.startService(ctx,
@@ -123,17 +198,135 @@ public class WifiStateReceiver extends BroadcastReceiver {
                     clearNotification(ctx);
                     return;
                 }
+                updateState(ctx);
+                return;
+            } else if (intent.getAction().equals(ACTION_PUBLISH_NOTIFICATION)) {
+                /*
+                 * 通知の更新間隔待ち満了
+                 */
+                if (mPendingContent != null) {
+                    publishNotification(ctx, mPendingContent);
+                } else if (mShownContent == null) {
+                    // プロセスが再起動して表示内容が失われた場合は状態を取り直して表示
+                    updateState(ctx);
+                }
+                return;
+            } else if (intent.getAction().equals(ACTION_SAMPLE_SIGNAL)) {
+                /*
+                 * 信号強度の記録タイマ満了
+                 */
+                mNetworkStateInfo.recordSignal();
+                return;
+            } else if (intent.getAction().equals(ACTION_UPDATE_STATE)) {
+                /*
+                 * イベント集約期間満了
+                 */
+                flushUpdate(ctx);
+                return;
             }
         }
 
+        requestUpdate(ctx, NetworkStateInfo.Event.fromAction(intent.getAction()));
+    }
+
+    /**
+     * ネットワーク状態の更新を要求
+     *
+     * 集約期間外であれば即座に反映し、集約期間を開始する。
+     * 集約期間中のイベントは件数と影響する取得元だけを記録し、期間満了時にまとめて1回だけ反映する。
+     *
+     * @param event イベント
+     */
+    private void requestUpdate(Context ctx, NetworkStateInfo.Event event) {
+        mReceivedEvents++;
+        mNetworkStateInfo.invalidate(event);
+        long now = SystemClock.elapsedRealtime();
+        if (now < mCoalesceEnd) {
+            mPendingEvents++;
+            return;
+        }
+        startCoalescing(ctx, now);
+        updateState(ctx);
+    }
+
+    /**
+     * 集約期間満了時の反映
+     *
+     * 期間中にイベントがあれば最終状態を反映し、続けて次の集約期間を開始する。
+     * プロセスが再起動して集約状態が失われている場合も、念のため反映する。
+     */
+    private void flushUpdate(Context ctx) {
+        int pending = mPendingEvents;
+        mPendingEvents = 0;
+        if (pending == 0 && mCoalesceEnd != 0) {
+            mCoalesceEnd = 0;
+            // 予備のタイマは不要
+            PendingIntent updateIntent = getUpdateIntent(ctx, PendingIntent.FLAG_NO_CREATE);
+            if (updateIntent != null) {
+                AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+                alarmManager.cancel(updateIntent);
+                updateIntent.cancel();
+            }
+            return;
+        }
+        if (pending > 0) {
+            mAbsorbedEvents += pending - 1;
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Coalesced " + pending + " events (absorbed: " + mAbsorbedEvents + "/" + mReceivedEvents + ")");
+        }
+        startCoalescing(ctx, SystemClock.elapsedRealtime());
         updateState(ctx);
     }
 
+    /**
+     * 集約期間を開始し、期間満了タイマを設定
+     *
+     * 期間満了はメインスレッドの Handler で処理する。AlarmManager は API 22 以降
+     * 5秒未満のタイマを切り上げるため、プロセスが終了した場合の予備としてのみ使う。
+     */
+    private void startCoalescing(Context ctx, long now) {
+        mCoalesceEnd = now + COALESCE_PERIOD;
+        final Context appCtx = ctx.getApplicationContext();
+        if (mFlushTask != null) {
+            mHandler.removeCallbacks(mFlushTask);
+        }
+        mFlushTask = new Runnable() {
+            @Override
+            public void run() {
+                mFlushTask = null;
+                flushUpdate(appCtx);
+            }
+        };
+        mHandler.postDelayed(mFlushTask, COALESCE_PERIOD);
+        AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, mCoalesceEnd, getUpdateIntent(ctx, PendingIntent.FLAG_CANCEL_CURRENT));
+    }
+
+    private static PendingIntent getUpdateIntent(Context ctx, int flags) {
+        Intent updateIntent = new Intent(ctx, WifiStateReceiver.class).setAction(ACTION_UPDATE_STATE);
+        return PendingIntent.getBroadcast(ctx, 0, updateIntent, flags);
+    }
+
+    /**
+     * 受信したイベント数(累計)
+     */
+    public static int getReceivedEventCount() {
+        return mReceivedEvents;
+    }
+
+    /**
+     * 集約により状態取得を省略したイベント数(累計)
+     */
+    public static int getAbsorbedEventCount() {
+        return mAbsorbedEvents;
+    }
+
     /**
      * ネットワーク状態情報の更新、および通知アイコンの反映
      */
     private void updateState(Context ctx) {
-        if (mNetworkStateInfo.update()) {
+        if (mNetworkStateInfo.refresh()) {
             // 状態が変化したら通知アイコンを更新
             showNotificationIcon(ctx, mNetworkStateInfo.getIcon(), mNetworkStateInfo, null);
             //noinspection PointlessBooleanExpression
@@ -150,6 +343,12 @@ public class WifiStateReceiver extends BroadcastReceiver {
                     WifiStatePingService.stopService(ctx);
                 }
             }
+            if (mNetworkStateInfo.isWifiConnected()) {
+                // Wi-Fi接続中は信号強度を定期的に記録
+                startSampling(ctx);
+            } else {
+                stopSampling(ctx);
+            }
             if (mNetworkStateInfo.isClearableState()) {
                 // 3秒後に消去するタイマ
                 long next = SystemClock.elapsedRealtime() + 3000;
@@ -160,6 +359,35 @@ public class WifiStateReceiver extends BroadcastReceiver {
         }
     }
 
+    /**
+     * 信号強度の記録タイマを開始 (スリープ中は起床しない)
+     */
+    private static void startSampling(Context ctx) {
+        if (getSampleIntent(ctx, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + SAMPLE_INTERVAL,
+                SAMPLE_INTERVAL, getSampleIntent(ctx, PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    /**
+     * 信号強度の記録タイマを解除
+     */
+    private static void stopSampling(Context ctx) {
+        PendingIntent sampleIntent = getSampleIntent(ctx, PendingIntent.FLAG_NO_CREATE);
+        if (sampleIntent != null) {
+            AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(sampleIntent);
+            sampleIntent.cancel();
+        }
+    }
+
+    private static PendingIntent getSampleIntent(Context ctx, int flags) {
+        Intent sampleIntent = new Intent(ctx, WifiStateReceiver.class).setAction(ACTION_SAMPLE_SIGNAL);
+        return PendingIntent.getBroadcast(ctx, 0, sampleIntent, flags);
+    }
+
     /**
      * 状態をクリア
      *
@@ -174,6 +402,27 @@ public class WifiStateReceiver extends BroadcastReceiver {
         }
         // ネットワーク状態情報を破棄
         mNetworkStateInfo = null;
+        // 集約期間満了タイマを解除
+        PendingIntent updateIntent = getUpdateIntent(ctx, PendingIntent.FLAG_NO_CREATE);
+        if (updateIntent != null) {
+            AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(updateIntent);
+            updateIntent.cancel();
+        }
+        mCoalesceEnd = 0;
+        mPendingEvents = 0;
+        // 次回は必ず通知を更新する
+        PendingIntent publishIntent = getPublishIntent(ctx, PendingIntent.FLAG_NO_CREATE);
+        if (publishIntent != null) {
+            AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(publishIntent);
+            publishIntent.cancel();
+        }
+        mShownContent = null;
+        mPendingContent = null;
+        mNextNotifyTime = 0;
+        // 信号強度の記録タイマを解除
+        stopSampling(ctx);
     }
 
     /**
@@ -208,14 +457,14 @@ public class WifiStateReceiver extends BroadcastReceiver {
     /**
      * ステータスバーに通知アイコンを表示
      *
+     * 表示内容が変わらなければ通知しない。
+     * 最小更新間隔内の変化は最後の内容だけを保持し、間隔満了時に表示する。
+     *
      * @param ctx Context
      * @param iconRes 表示するアイコンのリソースID
      * @param extraMessage 表示するメッセージ
      */
     private static void showNotificationIcon(Context ctx, int iconRes, NetworkStateInfo networkStateInfo, String extraMessage) {
-        Intent intent = new Intent(ctx, WifiStateLaunchService.class);
-        PendingIntent contentIntent = PendingIntent.getService(ctx, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-
         String title;
         if (networkStateInfo.getNetworkName() != null) {
             title = networkStateInfo.getNetworkType() + ": " + networkStateInfo.getNetworkName();
@@ -226,19 +475,129 @@ public class WifiStateReceiver extends BroadcastReceiver {
         if (extraMessage != null) {
             message += extraMessage;
         }
-        Notification notification = new NotificationCompat.Builder(ctx)
-                .setSmallIcon(iconRes)
-                .setLargeIcon(BitmapFactory.decodeResource(ctx.getResources(), R.drawable.icon))
-                .setContentTitle(title)
-                .setContentText(message)
-                .setContentIntent(contentIntent)
+        NotificationContent content = new NotificationContent(iconRes, title, message,
+                !WifiStatePreferences.getClearable(ctx));
+
+        if (content.equals(mShownContent)) {
+            // 表示内容に変化なし (更新間隔待ちの内容は破棄)
+            if (BuildConfig.DEBUG) Log.d(TAG, "Notification unchanged, skipped.");
+            mPendingContent = null;
+            return;
+        }
+        if (SystemClock.elapsedRealtime() < mNextNotifyTime) {
+            // 更新間隔待ち
+            if (mPendingContent == null) {
+                schedulePublish(ctx);
+            }
+            mPendingContent = content;
+            return;
+        }
+        publishNotification(ctx, content);
+    }
+
+    /**
+     * 更新間隔待ち満了時の通知の更新を予約
+     *
+     * 集約期間と同様に Handler で処理し、AlarmManager はプロセスが終了した場合の予備とする。
+     */
+    private static void schedulePublish(Context ctx) {
+        final Context appCtx = ctx.getApplicationContext();
+        if (mPublishTask != null) {
+            mHandler.removeCallbacks(mPublishTask);
+        }
+        mPublishTask = new Runnable() {
+            @Override
+            public void run() {
+                mPublishTask = null;
+                if (mPendingContent != null) {
+                    publishNotification(appCtx, mPendingContent);
+                }
+                PendingIntent publishIntent = getPublishIntent(appCtx, PendingIntent.FLAG_NO_CREATE);
+                if (publishIntent != null) {
+                    AlarmManager alarmManager = (AlarmManager) appCtx.getSystemService(Context.ALARM_SERVICE);
+                    alarmManager.cancel(publishIntent);
+                    publishIntent.cancel();
+                }
+            }
+        };
+        mHandler.postDelayed(mPublishTask, Math.max(0, mNextNotifyTime - SystemClock.elapsedRealtime()));
+        AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, mNextNotifyTime,
+                getPublishIntent(ctx, PendingIntent.FLAG_CANCEL_CURRENT));
+    }
+
+    /**
+     * 通知を更新
+     */
+    private static void publishNotification(Context ctx, NotificationContent content) {
+        if (mNotificationBuilder == null) {
+            Context appCtx = ctx.getApplicationContext();
+            Intent intent = new Intent(appCtx, WifiStateLaunchService.class);
+            mContentIntent = PendingIntent.getService(appCtx, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+            mLargeIcon = BitmapFactory.decodeResource(appCtx.getResources(), R.drawable.icon);
+            mNotificationBuilder = new NotificationCompat.Builder(appCtx);
+        }
+        Notification notification = mNotificationBuilder
+                .setSmallIcon(content.mIconRes)
+                .setLargeIcon(mLargeIcon)
+                .setContentTitle(content.mTitle)
+                .setContentText(content.mMessage)
+                .setContentIntent(mContentIntent)
                 .setWhen(System.currentTimeMillis())
-                .setOngoing(!WifiStatePreferences.getClearable(ctx))
+                .setOngoing(content.mOngoing)
                 .build();
 
         NotificationManager notificationManager = (NotificationManager)
                 ctx.getSystemService(Context.NOTIFICATION_SERVICE);
         notificationManager.notify(NOTIFICATIONID_ICON, notification);
+
+        mShownContent = content;
+        mPendingContent = null;
+        mNextNotifyTime = SystemClock.elapsedRealtime() + MIN_NOTIFY_INTERVAL;
+    }
+
+    private static PendingIntent getPublishIntent(Context ctx, int flags) {
+        Intent publishIntent = new Intent(ctx, WifiStateReceiver.class).setAction(ACTION_PUBLISH_NOTIFICATION);
+        return PendingIntent.getBroadcast(ctx, 0, publishIntent, flags);
+    }
+
+    /**
+     * 通知の表示内容
+     */
+    private static class NotificationContent {
+        final int mIconRes;
+        final String mTitle;
+        final String mMessage;
+        final boolean mOngoing;
+
+        NotificationContent(int iconRes, String title, String message, boolean ongoing) {
+            mIconRes = iconRes;
+            mTitle = title;
+            mMessage = message;
+            mOngoing = ongoing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NotificationContent)) {
+                return false;
+            }
+            NotificationContent other = (NotificationContent) o;
+            return mIconRes == other.mIconRes && mOngoing == other.mOngoing &&
+                    isEqual(mTitle, other.mTitle) && isEqual(mMessage, other.mMessage);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = mIconRes;
+            hash = hash * 31 + ((mTitle != null) ? mTitle.hashCode() : 0);
+            hash = hash * 31 + ((mMessage != null) ? mMessage.hashCode() : 0);
+            return hash * 31 + (mOngoing ? 1 : 0);
+        }
+
+        private static boolean isEqual(String a, String b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
     }
 
     /**
@@ -1,6 +1,7 @@
 package net.orleaf.android.wifistate.core;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import android.app.Activity;
@@ -26,13 +27,21 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.ToggleButton;
 
+import net.orleaf.android.wifistate.BuildConfig;
 import net.orleaf.android.wifistate.R;
+import net.orleaf.android.wifistate.core.ping.FailureDomain;
+import net.orleaf.android.wifistate.core.ping.LatencySummary;
+import net.orleaf.android.wifistate.core.ping.LossSummary;
+import net.orleaf.android.wifistate.core.ping.ProbeStats;
 import net.orleaf.android.wifistate.core.preferences.WifiStatePreferencesActivity;
 
 /**
  * メイン画面
  */
 public class WifiStateStatusActivity extends Activity {
+    // 信号強度の履歴を集計する期間(秒)
+    private static final long[] SIGNAL_PERIODS = { 3600, 24 * 3600, 7 * 24 * 3600, 30 * 24 * 3600 };
+    private static final String[] SIGNAL_PERIOD_LABELS = { "1h", "1d", "7d", "30d" };
 
     private BroadcastReceiver mConnectivityReceiver = null;
 
@@ -48,6 +57,7 @@ public class WifiStateStatusActivity extends Activity {
     private TextView mNetworkNameText;
     private TextView mNetworkStateText;
     private TextView mNetworkExtraText;
+    private TextView mNetworkPingText;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -64,6 +74,7 @@ public class WifiStateStatusActivity extends Activity {
         mNetworkNameText = (TextView) findViewById(R.id.network_name);
         mNetworkStateText = (TextView) findViewById(R.id.network_status);
         mNetworkExtraText = (TextView) findViewById(R.id.network_extra);
+        mNetworkPingText = (TextView) findViewById(R.id.network_ping);
 
         // 設定ボタン
         mSettings = (Button) findViewById(R.id.settings);
@@ -258,6 +269,119 @@ public class WifiStateStatusActivity extends Activity {
         }.execute();
     }
 
+    /**
+     * 疎通監視の応答時間情報を取得
+     *
+     * @return 応答時間情報 (null:監視していない)
+     */
+    private String getPingInfo() {
+        Map<String, LatencySummary> summaries = WifiStatePingService.getLatencySummaries();
+        if (summaries == null || summaries.isEmpty()) {
+            return null;
+        }
+        StringBuilder info = new StringBuilder();
+        Boolean dnsHealthy = WifiStatePingService.isDnsHealthy();
+        if (dnsHealthy != null) {
+            info.append("DNS: ").append(dnsHealthy ? "OK" : "NG").append("\n");
+        }
+        FailureDomain domain = WifiStatePingService.getFailureDomain();
+        if (domain != null && domain != FailureDomain.NONE) {
+            info.append("Failure: ").append(domain.getLabel()).append("\n");
+        }
+        ProbeStats.Snapshot stats = WifiStatePingService.getProbeStats();
+        if (stats != null) {
+            info.append("Flaps: ").append(stats.getNumFlap()).append("\n");
+        }
+        info.append("RTT (p50/p90/p99/max)");
+        Map<String, LossSummary> losses = WifiStatePingService.getLossSummaries();
+        for (Map.Entry<String, LatencySummary> entry : summaries.entrySet()) {
+            info.append("\n").append(entry.getKey()).append(": ");
+            if (entry.getValue().getCount() > 0) {
+                info.append(entry.getValue());
+            } else {
+                info.append("-");
+            }
+            LossSummary loss = (losses != null) ? losses.get(entry.getKey()) : null;
+            if (loss != null && loss.getPeriodCount() > 0) {
+                info.append("\n  ").append(loss);
+            }
+        }
+        return info.toString();
+    }
+
+    /**
+     * 接続過程の所要時間情報を取得
+     *
+     * @return 所要時間情報 (null:記録なし)
+     */
+    private String getConnectInfo() {
+        Map<String, LatencySummary[]> summaries = NetworkStateInfo.getConnectionSummaries();
+        if (summaries.isEmpty()) {
+            return null;
+        }
+        StringBuilder info = new StringBuilder("Connect (p50/p90/p99/max)");
+        for (Map.Entry<String, LatencySummary[]> entry : summaries.entrySet()) {
+            info.append("\n").append(entry.getKey()).append(":");
+            for (ConnectionTimeline.Metric metric : ConnectionTimeline.Metric.values()) {
+                LatencySummary summary = entry.getValue()[metric.ordinal()];
+                if (summary.getCount() > 0) {
+                    info.append("\n  ").append(metric.getLabel()).append(": ").append(summary);
+                }
+            }
+        }
+        return info.toString();
+    }
+
+    /**
+     * ローミングの統計を取得
+     *
+     * @return 表示用文字列 (null:ローミングなし)
+     */
+    private String getRoamInfo() {
+        Map<String, RoamTracker.Stats> stats = NetworkStateInfo.getRoamStats();
+        if (stats.isEmpty()) {
+            return null;
+        }
+        StringBuilder info = new StringBuilder("Roam (p50/p90/p99/max)");
+        for (Map.Entry<String, RoamTracker.Stats> entry : stats.entrySet()) {
+            RoamTracker.Stats stat = entry.getValue();
+            info.append("\n").append(entry.getKey()).append(": ").append(stat.getCount())
+                    .append(String.format(" (%.1f/h)", stat.getRate()));
+            LatencySummary summary = stat.getGapSummary();
+            if (summary.getCount() > 0) {
+                info.append("\n  Gap: ").append(summary);
+            }
+            if (stat.getLast() != null) {
+                info.append("\n  Last: ").append(stat.getLast());
+            }
+        }
+        return info.toString();
+    }
+
+    /**
+     * 信号強度の履歴の統計を取得
+     *
+     * @return 表示用文字列 (null:履歴なし)
+     */
+    private String getSignalInfo() {
+        StringBuilder info = new StringBuilder("Signal (min/avg/max)");
+        boolean recorded = false;
+        for (int i = 0; i < SIGNAL_PERIODS.length; i++) {
+            SignalHistory.Summary summary = NetworkStateInfo.getSignalSummary(this, SIGNAL_PERIODS[i]);
+            if (summary.getCount() > 0) {
+                info.append("\n  ").append(SIGNAL_PERIOD_LABELS[i]).append(": ").append(summary);
+                recorded = true;
+            }
+        }
+        if (!recorded) {
+            return null;
+        }
+        if (BuildConfig.DEBUG) {
+            info.append("\n  ").append(NetworkStateInfo.getSignalHistoryStats(this));
+        }
+        return info.toString();
+    }
+
     /**
      * 表示を更新する
      */
@@ -267,12 +391,41 @@ public class WifiStateStatusActivity extends Activity {
         mNetworkNameText.setText(mNetworkStateInfo.getNetworkName());
         mNetworkStateText.setText(mNetworkStateInfo.getStateDetail());
         String extra = mNetworkStateInfo.getExtraInfo();
+        if (BuildConfig.DEBUG) {
+            // イベント集約状況
+            String events = "Events: " + WifiStateReceiver.getAbsorbedEventCount() + "/" +
+                    WifiStateReceiver.getReceivedEventCount() + " coalesced";
+            String stats = NetworkStateInfo.getEventStats();
+            if (stats.length() > 0) {
+                events += "\n" + stats;
+            }
+            extra = (extra != null) ? extra + "\n" + events : events;
+        }
         if (extra != null) {
             mNetworkExtraText.setText(extra);
             mNetworkExtraText.setVisibility(View.VISIBLE);
         } else {
             mNetworkExtraText.setVisibility(View.GONE);
         }
+        String ping = getPingInfo();
+        String connect = getConnectInfo();
+        if (connect != null) {
+            ping = (ping != null) ? ping + "\n" + connect : connect;
+        }
+        String roam = getRoamInfo();
+        if (roam != null) {
+            ping = (ping != null) ? ping + "\n" + roam : roam;
+        }
+        String signal = getSignalInfo();
+        if (signal != null) {
+            ping = (ping != null) ? ping + "\n" + signal : signal;
+        }
+        if (ping != null) {
+            mNetworkPingText.setText(ping);
+            mNetworkPingText.setVisibility(View.VISIBLE);
+        } else {
+            mNetworkPingText.setVisibility(View.GONE);
+        }
         if (wm.getWifiState() == WifiManager.WIFI_STATE_DISABLED) {
             mWifiToggle.setChecked(false);
             mWifiToggle.setEnabled(true);
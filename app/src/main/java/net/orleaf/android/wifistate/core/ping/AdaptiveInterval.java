@@ -0,0 +1,101 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.Random;
+
+/**
+ * 疎通確認間隔の自動調整
+ *
+ * 結果が安定している間は基準間隔から最大間隔まで徐々に間隔を延ばし、応答時間の急増を
+ * 検出したら基準間隔に戻す。周期が揃わないよう、延ばした間隔には揺らぎを加える。
+ * 失敗・品質低下を検出したら、障害の確定に必要な回数だけ確認間隔 (基準間隔より短い) で
+ * 再確認し、以降は回復するまで基準間隔で確認する。
+ *
+ * 障害の確定までの時間は、固定間隔では 最初の失敗まで(基準間隔未満) + (確定回数 - 1) × 基準間隔、
+ * 自動調整では 最初の失敗まで(最大間隔未満) + (確定回数 - 1) × 確認間隔 となる。
+ * 固定間隔より遅くならないよう、最大間隔は (確定回数 - 1) × (基準間隔 - 確認間隔) (揺らぎを含む) 以下に制限する。
+ */
+public class AdaptiveInterval {
+    private static final double BACKOFF_FACTOR = 1.5;   // 安定時の間隔の伸び率
+    private static final double JITTER = 0.1;           // 揺らぎ(±10%)
+    private static final double RTT_WEIGHT = 0.125;     // 応答時間の平滑化係数
+    private static final int SPIKE_FACTOR = 3;          // 平滑化した応答時間の何倍で急増とみなすか
+    private static final long SPIKE_FLOOR = 20000;      // 急増とみなす応答時間の下限(マイクロ秒)
+
+    private final long mBaseInterval;
+    private final long mMaxInterval;
+    private final long mConfirmInterval;
+    private final int mConfirmCount;
+    private final Random mRandom;
+    private long mInterval;
+    private int mFailures;              // 連続した失敗・品質低下の回数
+    private long mSmoothedRtt = -1;
+
+    /**
+     * Constructor
+     *
+     * @param baseInterval 基準間隔(ミリ秒) (固定間隔で監視する場合の間隔)
+     * @param maxInterval 最大間隔(ミリ秒) (障害の確定が固定間隔より遅くならない範囲に制限する)
+     * @param confirmInterval 失敗時の再確認間隔(ミリ秒)
+     * @param failuresToDetect 障害の確定に必要な連続失敗回数
+     * @param random 揺らぎの生成に使用する乱数
+     */
+    public AdaptiveInterval(long baseInterval, long maxInterval, long confirmInterval,
+                            int failuresToDetect, Random random) {
+        mBaseInterval = baseInterval;
+        mConfirmInterval = Math.min(confirmInterval, baseInterval);
+        mConfirmCount = Math.max(1, failuresToDetect);
+        long limit = (long) ((mConfirmCount - 1) * (mBaseInterval - mConfirmInterval) / (1 + JITTER));
+        mMaxInterval = Math.max(mBaseInterval, Math.min(maxInterval, limit));
+        mInterval = mBaseInterval;
+        mRandom = random;
+    }
+
+    /**
+     * 疎通確認結果から次回までの間隔を求める
+     *
+     * @param healthy 全監視先が到達可能かつ品質低下なし
+     * @param rtt 応答時間(マイクロ秒) (Prober.UNREACHABLE:不明)
+     * @return 次回までの間隔(ミリ秒)
+     */
+    public long next(boolean healthy, long rtt) {
+        boolean spike = isSpike(rtt);
+        if (rtt != Prober.UNREACHABLE) {
+            mSmoothedRtt = (mSmoothedRtt < 0) ? rtt : (long) (mSmoothedRtt + RTT_WEIGHT * (rtt - mSmoothedRtt));
+        }
+        if (!healthy) {
+            mInterval = mBaseInterval;
+            // 障害の確定に必要な回数までは短い間隔で再確認
+            return (++mFailures < mConfirmCount) ? mConfirmInterval : mBaseInterval;
+        }
+        mFailures = 0;
+        if (spike) {
+            mInterval = mBaseInterval;
+        } else {
+            mInterval = Math.min((long) (mInterval * BACKOFF_FACTOR), mMaxInterval);
+        }
+        long jitter = (long) (mInterval * JITTER * (mRandom.nextDouble() * 2 - 1));
+        return Math.max(mBaseInterval, mInterval + jitter);
+    }
+
+    /**
+     * 最大間隔(ミリ秒) (制限後)
+     */
+    public long getMaxInterval() {
+        return mMaxInterval;
+    }
+
+    /**
+     * 現在の間隔(揺らぎを含まない)
+     */
+    public long getInterval() {
+        return mInterval;
+    }
+
+    /**
+     * 応答時間が急増したかどうか
+     */
+    private boolean isSpike(long rtt) {
+        return rtt != Prober.UNREACHABLE && mSmoothedRtt > 0 &&
+                rtt > SPIKE_FLOOR && rtt > mSmoothedRtt * SPIKE_FACTOR;
+    }
+}
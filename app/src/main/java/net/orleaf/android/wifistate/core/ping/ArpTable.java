@@ -0,0 +1,52 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * ARPテーブル (/proc/net/arp) の参照
+ */
+public class ArpTable {
+    private static final String ARP_TABLE = "/proc/net/arp";
+    private static final int ATF_COM = 0x02;    // 解決済み
+    private static final String NO_HW_ADDRESS = "00:00:00:00:00:00";
+
+    private ArpTable() {
+    }
+
+    /**
+     * 指定したIPアドレスのMACアドレスが解決済みかどうか
+     *
+     * @param ipAddress IPアドレス
+     * @return true:解決済み false:未解決 null:ARPテーブルを参照できない
+     */
+    public static Boolean isResolved(String ipAddress) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(ARP_TABLE), 1024);
+            reader.readLine();  // ヘッダ
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // IP address / HW type / Flags / HW address / Mask / Device
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length >= 4 && fields[0].equals(ipAddress)) {
+                    int flags = Integer.decode(fields[2]);
+                    return (flags & ATF_COM) != 0 && !fields[3].equals(NO_HW_ADDRESS);
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
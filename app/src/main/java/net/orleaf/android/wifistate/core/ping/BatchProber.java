@@ -0,0 +1,31 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 複数パケットをまとめて送信する疎通確認方式
+ */
+public interface BatchProber extends Prober {
+    /**
+     * 応答の通知先
+     */
+    interface ReplyListener {
+        /**
+         * 応答を受信した
+         *
+         * @param seq シーケンス番号
+         * @param ttl TTL (-1:不明)
+         * @param rtt 応答時間(マイクロ秒)
+         */
+        void onReply(int seq, int ttl, long rtt);
+    }
+
+    /**
+     * 疎通確認パケットを指定数送信する
+     *
+     * @param target 監視先ホスト
+     * @param count 送信数
+     * @param timeout 1パケットあたりのタイムアウト(ミリ秒)
+     * @param listener 応答の通知先
+     * @return 応答数
+     */
+    int probe(String target, int count, int timeout, ReplyListener listener);
+}
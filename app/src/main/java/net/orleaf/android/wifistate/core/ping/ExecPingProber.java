@@ -0,0 +1,98 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * ping コマンドによる疎通確認
+ *
+ * 1回の起動で指定数のパケットを送信し、出力から応答ごとの応答時間・TTLを取得する。
+ * 応答数は統計行の受信数から求める (統計行がなければ応答行の数)。
+ * プロセスを起動するため、他の方式が使えない場合の代替としてのみ使用する。
+ * 全体の期限は秒単位に切り上げられる。中止された場合はプロセスを強制終了する。
+ */
+public class ExecPingProber implements BatchProber {
+    public static final int DEFAULT_INTERVAL = 200;     // 送信間隔(ミリ秒) (非特権で指定可能な最小値)
+
+    private final int mInterval;
+    private final Set<Process> mActiveProcesses = Collections.synchronizedSet(new HashSet<Process>());
+
+    public ExecPingProber() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param interval 送信間隔(ミリ秒)
+     */
+    public ExecPingProber(int interval) {
+        mInterval = interval;
+    }
+
+    @Override
+    public long probe(String target, int timeout) {
+        final long[] rtt = { UNREACHABLE };
+        probe(target, 1, timeout, new ReplyListener() {
+            @Override
+            public void onReply(int seq, int ttl, long time) {
+                rtt[0] = time;
+            }
+        });
+        return rtt[0];
+    }
+
+    @Override
+    public int probe(String target, int count, int timeout, ReplyListener listener) {
+        // 最後のパケットのタイムアウトまでを期限とする
+        int deadline = Math.max(1, ((count - 1) * mInterval + timeout + 999) / 1000);
+        String[] cmdLine = new String[] {
+                "ping", "-c", "" + count, "-i", (mInterval / 1000) + "." + (mInterval % 1000 / 100),
+                "-w", "" + deadline, target };
+        Process process = null;
+        try {
+            process = new ProcessBuilder(cmdLine).redirectErrorStream(true).start();
+            mActiveProcesses.add(process);
+            if (Thread.currentThread().isInterrupted()) {
+                // 起動中に中止された
+                return 0;
+            }
+            InputStream stream = process.getInputStream();
+            PingOutputParser parser = new PingOutputParser();
+            int replies = parser.parse(stream, listener);
+            process.waitFor();
+            // 統計行があれば受信数を優先する (重複応答や解析できなかった応答行を含まない)
+            if (parser.getReceived() >= 0) {
+                return Math.min(parser.getReceived(), count);
+            }
+            return Math.min(replies, count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (process != null) {
+                mActiveProcesses.remove(process);
+                process.destroy();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 実行中のプロセスをすべて強制終了する
+     *
+     * 出力の読み込みで待機中のスレッドは、出力の終端を検出して終了する。
+     */
+    @Override
+    public void cancel() {
+        synchronized (mActiveProcesses) {
+            for (Process process : mActiveProcesses) {
+                process.destroy();
+            }
+        }
+    }
+}
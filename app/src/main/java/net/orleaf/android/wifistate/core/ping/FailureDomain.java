@@ -0,0 +1,67 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 疎通確認失敗の原因箇所
+ */
+public enum FailureDomain {
+    NONE("-"),
+    LINK("Wi-Fi link"),
+    LAN("LAN/gateway"),
+    UPSTREAM("ISP/upstream"),
+    DNS("DNS");
+
+    private final String mLabel;
+
+    FailureDomain(String label) {
+        mLabel = label;
+    }
+
+    /**
+     * 表示用文字列
+     */
+    public String getLabel() {
+        return mLabel;
+    }
+
+    /**
+     * 名前から取得
+     *
+     * @param name 名前 (name() の値)
+     * @return 原因箇所 (null:不明)
+     */
+    public static FailureDomain fromName(String name) {
+        if (name != null) {
+            for (FailureDomain domain : values()) {
+                if (domain.name().equals(name)) {
+                    return domain;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 監視先・ゲートウェイの疎通確認結果から原因箇所を判定
+     *
+     * @param upstreamReachable 監視先に到達可能かどうか
+     * @param gatewayReachable ゲートウェイに到達可能かどうか (null:ゲートウェイなし)
+     * @param gatewayResolved ゲートウェイのMACアドレスが解決済みかどうか (null:不明)
+     * @param dnsHealthy 名前解決が正常かどうか (null:不明)
+     * @return 原因箇所
+     */
+    public static FailureDomain classify(boolean upstreamReachable, Boolean gatewayReachable,
+                                         Boolean gatewayResolved, Boolean dnsHealthy) {
+        if (upstreamReachable) {
+            return NONE;
+        }
+        if (gatewayReachable != null && !gatewayReachable) {
+            // ゲートウェイまで届かない: MACアドレスが解決できていれば無線区間は正常
+            return (gatewayResolved != null && gatewayResolved) ? LAN : LINK;
+        }
+        if (dnsHealthy != null && !dnsHealthy) {
+            return DNS;
+        }
+        // ゲートウェイが不明な場合(モバイル接続)は経路上のどこかを区別できない
+        return UPSTREAM;
+    }
+}
@@ -0,0 +1,129 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 応答時間ヒストグラム
+ *
+ * HdrHistogram と同様に、2のべき乗ごとの区間をさらに等分したバケットで値を数える。
+ * 2のべき乗ごとの区間を16等分するため相対誤差は最大 1/16 (6.25%) で、メモリ使用量は固定。
+ * 記録時にオブジェクトを生成しない。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;        // 32
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;        // 16
+    private static final int MAX_MAGNITUDE = 27;                             // 2^27us = 約134秒
+
+    /** 記録可能な最大値 (これを超える値は最大値として記録する) */
+    public static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+
+    static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final int[] mCounts = new int[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mMax;
+
+    /**
+     * 値を記録する
+     *
+     * @param value 値(マイクロ秒)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            return;
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        mCounts[indexOf(value)]++;
+        mTotalCount++;
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    /**
+     * 他のヒストグラムの値を加算する
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotalCount += other.mTotalCount;
+        if (other.mMax > mMax) {
+            mMax = other.mMax;
+        }
+    }
+
+    /**
+     * 記録した値をすべて消去する
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mMax = 0;
+    }
+
+    /**
+     * 記録した値の数
+     */
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * 記録した値の最大値
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * パーセンタイル値を取得
+     *
+     * @param percentile パーセンタイル (0-100)
+     * @return 値(マイクロ秒) (値が記録されていない場合は0)
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * mTotalCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mCounts[i];
+            if (count >= rank) {
+                return Math.min(highestValueOf(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * 値からバケットのインデックスを求める
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >> shift);
+    }
+
+    /**
+     * バケットに含まれる最大の値を求める
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (index % SUB_BUCKET_HALF + SUB_BUCKET_HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
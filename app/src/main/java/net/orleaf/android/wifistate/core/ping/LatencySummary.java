@@ -0,0 +1,63 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 応答時間の統計
+ */
+public class LatencySummary {
+    private final long mCount;
+    private final long mP50;
+    private final long mP90;
+    private final long mP99;
+    private final long mMax;
+
+    public LatencySummary(long count, long p50, long p90, long p99, long max) {
+        mCount = count;
+        mP50 = p50;
+        mP90 = p90;
+        mP99 = p99;
+        mMax = max;
+    }
+
+    /** 応答数 */
+    public long getCount() {
+        return mCount;
+    }
+
+    /** 50パーセンタイル(マイクロ秒) */
+    public long getP50() {
+        return mP50;
+    }
+
+    /** 90パーセンタイル(マイクロ秒) */
+    public long getP90() {
+        return mP90;
+    }
+
+    /** 99パーセンタイル(マイクロ秒) */
+    public long getP99() {
+        return mP99;
+    }
+
+    /** 最大値(マイクロ秒) */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * 表示用文字列
+     *
+     * @return ex) "12.3/15.0/30.1/45.2ms"
+     */
+    @Override
+    public String toString() {
+        return formatMillis(mP50) + "/" + formatMillis(mP90) + "/" +
+                formatMillis(mP99) + "/" + formatMillis(mMax) + "ms";
+    }
+
+    /**
+     * マイクロ秒をミリ秒(小数点以下1桁)の文字列に変換
+     */
+    public static String formatMillis(long us) {
+        return (us / 1000) + "." + (us % 1000 / 100);
+    }
+}
@@ -0,0 +1,156 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * パケットロス率・ジッタの推定
+ *
+ * 以下を固定サイズの領域で、1回の記録あたり定数時間で推定する。
+ * - 指数移動平均によるロス率
+ * - 直近N回のロス率
+ * - 直近一定期間のロス率 (スロット単位)
+ * - RFC 3550 の到着間隔ジッタ (往復時間の差分から算出)
+ */
+public class LossEstimator {
+    public static final int DEFAULT_WINDOW = 64;    // 直近の集計回数
+    private static final int EWMA_SHIFT = 4;        // 平滑化係数 1/16 (RFC 3550 と同じ)
+    private static final int SCALE = 1000 << 16;    // 指数移動平均の固定小数点表現 (千分率 << 16)
+
+    // 指数移動平均
+    private int mEwmaLoss;          // ロス率 (SCALE 基準)
+    private long mJitter;           // ジッタ (マイクロ秒 << EWMA_SHIFT)
+    private long mLastRtt = Prober.UNREACHABLE;
+
+    // 直近N回
+    private final long[] mLostBits;
+    private final int mWindow;
+    private int mWindowCount;
+    private int mWindowLost;
+    private int mWindowPos;
+
+    // 直近一定期間
+    private final int[] mSlotSent;
+    private final int[] mSlotLost;
+    private final long[] mSlotStarts;
+    private final long mSlotPeriod;
+    private int mCurrent = 0;
+    private int mTotalSent;
+    private int mTotalLost;
+
+    /**
+     * Constructor
+     *
+     * @param window 直近の集計回数
+     * @param slotCount 期間のスロット数
+     * @param slotPeriod スロットあたりの期間(ミリ秒)
+     */
+    public LossEstimator(int window, int slotCount, long slotPeriod) {
+        mWindow = window;
+        mLostBits = new long[(window + 63) / 64];
+        mSlotSent = new int[slotCount];
+        mSlotLost = new int[slotCount];
+        mSlotStarts = new long[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            mSlotStarts[i] = Long.MIN_VALUE;
+        }
+        mSlotPeriod = slotPeriod;
+    }
+
+    /**
+     * 応答を記録する
+     *
+     * @param rtt 応答時間(マイクロ秒)
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     */
+    public synchronized void recordReply(long rtt, long now) {
+        record(false, now);
+        if (mLastRtt != Prober.UNREACHABLE) {
+            // J += (|D| - J) / 16
+            long d = Math.abs(rtt - mLastRtt);
+            mJitter += d - (mJitter >> EWMA_SHIFT);
+        }
+        mLastRtt = rtt;
+    }
+
+    /**
+     * 無応答を記録する
+     *
+     * @param count 無応答数
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     */
+    public synchronized void recordLoss(int count, long now) {
+        for (int i = 0; i < count; i++) {
+            record(true, now);
+        }
+    }
+
+    private void record(boolean lost, long now) {
+        // 指数移動平均
+        mEwmaLoss += ((lost ? SCALE : 0) - mEwmaLoss) >> EWMA_SHIFT;
+
+        // 直近N回 (最古の結果を置き換える)
+        int word = mWindowPos >> 6;
+        long bit = 1L << (mWindowPos & 63);
+        if (mWindowCount == mWindow) {
+            if ((mLostBits[word] & bit) != 0) {
+                mWindowLost--;
+            }
+        } else {
+            mWindowCount++;
+        }
+        if (lost) {
+            mLostBits[word] |= bit;
+            mWindowLost++;
+        } else {
+            mLostBits[word] &= ~bit;
+        }
+        mWindowPos = (mWindowPos + 1) % mWindow;
+
+        // 直近一定期間
+        advance(now);
+        mSlotSent[mCurrent]++;
+        mTotalSent++;
+        if (lost) {
+            mSlotLost[mCurrent]++;
+            mTotalLost++;
+        }
+    }
+
+    /**
+     * 統計を取得
+     *
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     * @return 統計
+     */
+    public synchronized LossSummary getSummary(long now) {
+        advance(now);
+        return new LossSummary(
+                mEwmaLoss / (SCALE / 1000),
+                (mWindowCount > 0) ? mWindowLost * 1000 / mWindowCount : 0,
+                mWindowCount,
+                (mTotalSent > 0) ? mTotalLost * 1000 / mTotalSent : 0,
+                mTotalSent,
+                mJitter >> EWMA_SHIFT);
+    }
+
+    /**
+     * 現在時刻に対応するスロットまで進める
+     */
+    private void advance(long now) {
+        long start = now - now % mSlotPeriod;
+        if (mSlotStarts[mCurrent] == start) {
+            return;
+        }
+        // 経過したスロットを消去 (全スロット分以上経過した場合はすべて消去)
+        long elapsed = (mSlotStarts[mCurrent] == Long.MIN_VALUE) ?
+                mSlotStarts.length : (start - mSlotStarts[mCurrent]) / mSlotPeriod;
+        int n = (int) Math.min(elapsed, mSlotStarts.length);
+        for (int i = 0; i < n; i++) {
+            mCurrent = (mCurrent + 1) % mSlotStarts.length;
+            mTotalSent -= mSlotSent[mCurrent];
+            mTotalLost -= mSlotLost[mCurrent];
+            mSlotSent[mCurrent] = 0;
+            mSlotLost[mCurrent] = 0;
+            mSlotStarts[mCurrent] = Long.MIN_VALUE;
+        }
+        mSlotStarts[mCurrent] = start;
+    }
+}
@@ -0,0 +1,71 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * パケットロス率・ジッタの統計
+ */
+public class LossSummary {
+    private final int mEwmaLoss;
+    private final int mWindowLoss;
+    private final int mWindowCount;
+    private final int mPeriodLoss;
+    private final int mPeriodCount;
+    private final long mJitter;
+
+    public LossSummary(int ewmaLoss, int windowLoss, int windowCount,
+                       int periodLoss, int periodCount, long jitter) {
+        mEwmaLoss = ewmaLoss;
+        mWindowLoss = windowLoss;
+        mWindowCount = windowCount;
+        mPeriodLoss = periodLoss;
+        mPeriodCount = periodCount;
+        mJitter = jitter;
+    }
+
+    /** 指数移動平均によるロス率(千分率) */
+    public int getEwmaLoss() {
+        return mEwmaLoss;
+    }
+
+    /** 直近N回のロス率(千分率) */
+    public int getWindowLoss() {
+        return mWindowLoss;
+    }
+
+    /** 直近N回の集計数 */
+    public int getWindowCount() {
+        return mWindowCount;
+    }
+
+    /** 直近一定期間のロス率(千分率) */
+    public int getPeriodLoss() {
+        return mPeriodLoss;
+    }
+
+    /** 直近一定期間の集計数 */
+    public int getPeriodCount() {
+        return mPeriodCount;
+    }
+
+    /** ジッタ(マイクロ秒) */
+    public long getJitter() {
+        return mJitter;
+    }
+
+    /**
+     * 表示用文字列
+     *
+     * @return ex) "loss 1.5% jitter 2.3ms"
+     */
+    @Override
+    public String toString() {
+        return "loss " + formatPercent(mPeriodLoss) + "% jitter " +
+                LatencySummary.formatMillis(mJitter) + "ms";
+    }
+
+    /**
+     * 千分率を百分率(小数点以下1桁)の文字列に変換
+     */
+    public static String formatPercent(int permille) {
+        return (permille / 10) + "." + (permille % 10);
+    }
+}
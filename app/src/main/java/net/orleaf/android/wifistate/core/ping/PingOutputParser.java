@@ -0,0 +1,191 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ping コマンドの出力の解析
+ *
+ * 出力を固定長のバッファに読み込み、行ごとに文字列を生成せずに解析する。
+ * 以下の形式の行を認識する。
+ * <pre>
+ * 64 bytes from 192.168.0.1: icmp_seq=1 ttl=64 time=1.23 ms
+ * 3 packets transmitted, 2 received, 33% packet loss, time 2003ms
+ * 3 packets transmitted, 2 packets received, 33% packet loss
+ * </pre>
+ */
+public class PingOutputParser {
+    private static final int BUFFER_SIZE = 256;     // 1行の最大長 (超えた部分は無視する)
+
+    private static final byte[] ICMP_SEQ = ascii("icmp_seq=");
+    private static final byte[] TTL = ascii("ttl=");
+    private static final byte[] TIME = ascii("time=");
+    private static final byte[] TRANSMITTED = ascii(" transmitted");
+    private static final byte[] RECEIVED = ascii(" received");
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private final byte[] mReadBuffer = new byte[BUFFER_SIZE];
+    private int mTransmitted = -1;
+    private int mReceived = -1;
+
+    /**
+     * 出力を終端まで解析する
+     *
+     * @param stream ping コマンドの標準出力
+     * @param listener 応答の通知先
+     * @return 応答数
+     */
+    public int parse(InputStream stream, BatchProber.ReplyListener listener) throws IOException {
+        int replies = 0;
+        int length = 0;
+        boolean overflow = false;
+        int n;
+        while ((n = stream.read(mReadBuffer)) >= 0) {
+            for (int i = 0; i < n; i++) {
+                byte c = mReadBuffer[i];
+                if (c == '\n') {
+                    if (!overflow && parseLine(length, listener)) {
+                        replies++;
+                    }
+                    length = 0;
+                    overflow = false;
+                } else if (length < BUFFER_SIZE) {
+                    mBuffer[length++] = c;
+                } else {
+                    overflow = true;
+                }
+            }
+        }
+        if (length > 0 && !overflow && parseLine(length, listener)) {
+            replies++;
+        }
+        return replies;
+    }
+
+    /**
+     * 送信数 (-1:不明)
+     */
+    public int getTransmitted() {
+        return mTransmitted;
+    }
+
+    /**
+     * 受信数 (-1:不明)
+     */
+    public int getReceived() {
+        return mReceived;
+    }
+
+    /**
+     * 1行を解析する
+     *
+     * @return true:応答行
+     */
+    private boolean parseLine(int length, BatchProber.ReplyListener listener) {
+        int pos = indexOf(TIME, length);
+        if (pos >= 0) {
+            // 応答
+            long rtt = parseMicros(pos + TIME.length, length);
+            if (rtt < 0) {
+                return false;
+            }
+            int seq = -1;
+            int ttl = -1;
+            int p = indexOf(ICMP_SEQ, length);
+            if (p >= 0) {
+                seq = (int) parseInt(p + ICMP_SEQ.length, length);
+            }
+            p = indexOf(TTL, length);
+            if (p >= 0) {
+                ttl = (int) parseInt(p + TTL.length, length);
+            }
+            if (listener != null) {
+                listener.onReply(seq, ttl, rtt);
+            }
+            return true;
+        }
+        pos = indexOf(TRANSMITTED, length);
+        if (pos >= 0) {
+            // 統計
+            mTransmitted = (int) parseInt(0, length);
+            int p = indexOf(RECEIVED, length);
+            if (p >= 0) {
+                // 受信数は " received" の直前の数値 ("packets" を挟む場合もある)
+                int end = pos + TRANSMITTED.length;
+                while (end < p && (mBuffer[end] < '0' || mBuffer[end] > '9')) {
+                    end++;
+                }
+                mReceived = (int) parseInt(end, p);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * バッファ内の文字列を検索
+     */
+    private int indexOf(byte[] token, int length) {
+        outer:
+        for (int i = 0; i <= length - token.length; i++) {
+            for (int j = 0; j < token.length; j++) {
+                if (mBuffer[i + j] != token[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 整数を解析 (先頭の空白は読み飛ばす)
+     *
+     * @return 値 (-1:数値なし)
+     */
+    private long parseInt(int pos, int length) {
+        while (pos < length && mBuffer[pos] == ' ') {
+            pos++;
+        }
+        long value = -1;
+        while (pos < length && mBuffer[pos] >= '0' && mBuffer[pos] <= '9') {
+            value = ((value < 0) ? 0 : value * 10) + (mBuffer[pos] - '0');
+            pos++;
+        }
+        return value;
+    }
+
+    /**
+     * ミリ秒単位の小数をマイクロ秒に変換
+     *
+     * @return マイクロ秒 (-1:数値なし)
+     */
+    private long parseMicros(int pos, int length) {
+        while (pos < length && mBuffer[pos] == ' ') {
+            pos++;
+        }
+        long millis = parseInt(pos, length);
+        if (millis < 0) {
+            return -1;
+        }
+        while (pos < length && mBuffer[pos] >= '0' && mBuffer[pos] <= '9') {
+            pos++;
+        }
+        long micros = millis * 1000;
+        if (pos < length && mBuffer[pos] == '.') {
+            int scale = 100;
+            for (pos++; pos < length && mBuffer[pos] >= '0' && mBuffer[pos] <= '9'; pos++) {
+                micros += (mBuffer[pos] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        return micros;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,104 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 疎通確認エンジン
+ *
+ * 指定された方式でプロセス内から疎通確認をおこない、失敗した場合のみ
+ * タイムアウトの残り時間内で ping コマンドで再確認する。ping コマンドを指定した場合は、1周期分のパケットを
+ * 1回の起動でまとめて送信する。
+ */
+public class ProbeEngine implements BatchProber {
+    public static final String METHOD_TCP = "tcp";
+    public static final String METHOD_UDP = "udp";
+    public static final String METHOD_REACHABLE = "reachable";
+    public static final String METHOD_EXEC = "exec";
+
+    private static final int MIN_FALLBACK_TIMEOUT = 1000;  // 代替方式に必要な残り時間(ミリ秒) (ping コマンドの期限は秒単位)
+
+    private final Prober mPrimary;
+    private final Prober mFallback;
+
+    /**
+     * Constructor
+     *
+     * @param primary 疎通確認方式
+     * @param fallback 失敗時に使用する疎通確認方式 (null:なし)
+     */
+    public ProbeEngine(Prober primary, Prober fallback) {
+        mPrimary = primary;
+        mFallback = fallback;
+    }
+
+    /**
+     * 方式名からエンジンを生成
+     *
+     * @param method METHOD_TCP / METHOD_UDP / METHOD_REACHABLE / METHOD_EXEC
+     * @return ProbeEngine
+     */
+    public static ProbeEngine create(String method) {
+        Prober exec = new ExecPingProber();
+        if (METHOD_UDP.equals(method)) {
+            return new ProbeEngine(new UdpEchoProber(), exec);
+        } else if (METHOD_REACHABLE.equals(method)) {
+            return new ProbeEngine(new ReachableProber(), exec);
+        } else if (METHOD_EXEC.equals(method)) {
+            return new ProbeEngine(exec, null);
+        } else {
+            return new ProbeEngine(new TcpConnectProber(), exec);
+        }
+    }
+
+    /**
+     * 疎通確認を1回実行する
+     *
+     * 代替方式はタイムアウトの残り時間 (秒単位に切り捨て) で実行し、全体でタイムアウトを超えない。
+     * 残り時間が1秒未満の場合は代替方式を実行しない。
+     */
+    @Override
+    public long probe(String target, int timeout) {
+        long start = System.nanoTime();
+        long rtt = mPrimary.probe(target, timeout);
+        if (rtt == UNREACHABLE && mFallback != null && !Thread.currentThread().isInterrupted()) {
+            long remaining = timeout - (System.nanoTime() - start) / 1000000;
+            if (remaining >= MIN_FALLBACK_TIMEOUT) {
+                rtt = mFallback.probe(target, (int) (remaining / 1000 * 1000));
+            }
+        }
+        return rtt;
+    }
+
+    /**
+     * 疎通確認パケットを指定数送信する
+     *
+     * まとめて送信できない方式の場合は、応答があるまで1つずつ送信する。
+     */
+    @Override
+    public int probe(String target, int count, int timeout, ReplyListener listener) {
+        if (mPrimary instanceof BatchProber) {
+            return ((BatchProber) mPrimary).probe(target, count, timeout, listener);
+        }
+        for (int seq = 1; seq <= count && !Thread.currentThread().isInterrupted(); seq++) {
+            long rtt = probe(target, timeout);
+            if (rtt != UNREACHABLE) {
+                listener.onReply(seq, -1, rtt);
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void cancel() {
+        mPrimary.cancel();
+        if (mFallback != null) {
+            mFallback.cancel();
+        }
+    }
+
+    /**
+     * まとめて送信する方式かどうか
+     */
+    public boolean isBatch() {
+        return mPrimary instanceof BatchProber;
+    }
+}
@@ -0,0 +1,112 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 疎通監視の実行単位 (開始から停止まで)
+ *
+ * 専用のスレッドプールと疎通確認エンジンを持ち、停止時はスレッドを中断して
+ * 待機中のソケット・子プロセスを中止する。停止後に開始した監視とはスレッド・エンジンを
+ * 共有しないため、停止した監視の処理が後から開始した監視に影響することはない。
+ * 名前解決は疎通確認とは別の専用スレッドで行い、名前解決の遅延が疎通確認の期限切れにならないようにする。
+ */
+public class ProbeSession {
+    public static final String THREAD_NAME = "ProbeSession";
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final ScheduledThreadPoolExecutor mExecutor;
+    private final ExecutorService mResolverExecutor;
+    private final ProbeEngine mEngine;
+
+    /**
+     * Constructor
+     *
+     * @param engine 疎通確認エンジン (この監視専用)
+     * @param poolSize スレッド数
+     */
+    public ProbeSession(ProbeEngine engine, int poolSize) {
+        mEngine = engine;
+        mExecutor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, THREAD_NAME + "-" + sThreadCount.incrementAndGet());
+            }
+        });
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        mResolverExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, THREAD_NAME + "-resolver-" + sThreadCount.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * 周期処理を開始
+     *
+     * @param cycle 周期処理 (次回の周期は getExecutor() で自ら登録する)
+     */
+    public void start(Runnable cycle) {
+        mExecutor.execute(cycle);
+    }
+
+    /**
+     * スレッドプール
+     */
+    public ScheduledThreadPoolExecutor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * 名前解決用のスレッド (1スレッド)
+     */
+    public ExecutorService getResolverExecutor() {
+        return mResolverExecutor;
+    }
+
+    /**
+     * 疎通確認エンジン
+     */
+    public ProbeEngine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * 停止されたかどうか
+     */
+    public boolean isStopped() {
+        return mExecutor.isShutdown();
+    }
+
+    /**
+     * 停止 (完了を待たない)
+     *
+     * 実行中の周期を中断し、次回の周期以降は実行しない。
+     * 待機中のソケット・子プロセスはタイムアウトを待たずに中止する。
+     */
+    public void stop() {
+        mExecutor.shutdownNow();
+        mResolverExecutor.shutdownNow();
+        mEngine.cancel();
+    }
+
+    /**
+     * 停止の完了を待つ
+     *
+     * @param timeout 最大待ち時間(ミリ秒)
+     * @return true:すべてのスレッドが終了した
+     * @throws InterruptedException 中断された
+     */
+    public boolean awaitStopped(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        return mExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS) &&
+                mResolverExecutor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,114 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 疎通確認の統計
+ *
+ * 統計は不変のスナップショットとして保持し、更新のたびに差し替える。
+ * 参照側はロックなしで常に整合した値 (実行回数 = 成功回数 + 失敗回数) を取得できる。
+ */
+public class ProbeStats {
+    private final AtomicReference<Snapshot> mSnapshot = new AtomicReference<Snapshot>(Snapshot.EMPTY);
+
+    /**
+     * 統計をリセット
+     */
+    public void reset() {
+        mSnapshot.set(Snapshot.EMPTY);
+    }
+
+    /**
+     * 1周期分の結果を記録
+     *
+     * @param attempts 送信数
+     * @param replies 応答数
+     * @param reachable 到達可能かどうか
+     * @param flaps フラップ検出回数(累計)
+     * @return 記録後の統計
+     */
+    public Snapshot record(int attempts, int replies, boolean reachable, int flaps) {
+        Snapshot current;
+        Snapshot next;
+        do {
+            current = mSnapshot.get();
+            next = new Snapshot(current.mNumPing + attempts,
+                    current.mNumOk + replies,
+                    current.mNumNg + (attempts - replies),
+                    reachable ? 0 : current.mNumFail + 1,
+                    flaps,
+                    reachable);
+        } while (!mSnapshot.compareAndSet(current, next));
+        return next;
+    }
+
+    /**
+     * 現在の統計を取得
+     */
+    public Snapshot getSnapshot() {
+        return mSnapshot.get();
+    }
+
+    /**
+     * 統計のスナップショット
+     */
+    public static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, true);
+
+        private final int mNumPing;
+        private final int mNumOk;
+        private final int mNumNg;
+        private final int mNumFail;
+        private final int mNumFlap;
+        private final boolean mReachable;
+
+        Snapshot(int numPing, int numOk, int numNg, int numFail, int numFlap, boolean reachable) {
+            mNumPing = numPing;
+            mNumOk = numOk;
+            mNumNg = numNg;
+            mNumFail = numFail;
+            mNumFlap = numFlap;
+            mReachable = reachable;
+        }
+
+        /** ping実行回数(累計) */
+        public int getNumPing() {
+            return mNumPing;
+        }
+
+        /** ping成功回数(累計) */
+        public int getNumOk() {
+            return mNumOk;
+        }
+
+        /** ping失敗回数(累計) */
+        public int getNumNg() {
+            return mNumNg;
+        }
+
+        /** 連続失敗回数 */
+        public int getNumFail() {
+            return mNumFail;
+        }
+
+        /** フラップ検出回数(累計) */
+        public int getNumFlap() {
+            return mNumFlap;
+        }
+
+        /** 直前の疎通確認結果 */
+        public boolean isReachable() {
+            return mReachable;
+        }
+
+        /**
+         * 表示用文字列
+         *
+         * @return ex) "98/100"
+         */
+        @Override
+        public String toString() {
+            return mNumOk + "/" + mNumPing;
+        }
+    }
+}
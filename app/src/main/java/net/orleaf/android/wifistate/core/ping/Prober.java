@@ -0,0 +1,23 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 疎通確認方式
+ */
+public interface Prober {
+    /** 到達不可 */
+    long UNREACHABLE = -1;
+
+    /**
+     * 疎通確認を1回実行する
+     *
+     * @param target 監視先ホスト (ホスト名またはIPアドレス)
+     * @param timeout タイムアウト(ミリ秒)
+     * @return 応答時間(マイクロ秒) (UNREACHABLE:到達不可)
+     */
+    long probe(String target, int timeout);
+
+    /**
+     * 実行中の疎通確認をすべて中止する (任意のスレッドから呼び出し可)
+     */
+    void cancel();
+}
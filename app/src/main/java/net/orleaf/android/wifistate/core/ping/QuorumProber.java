@@ -0,0 +1,269 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 複数の監視先への並列疎通確認
+ *
+ * 監視先ごとにリトライを含めた疎通確認を並列に実行し、応答のあった監視先の数を集計する。
+ * 1周期の所要時間は監視先の数によらず (リトライ回数 × タイムアウト) 程度に収まる。
+ * まとめて送信する方式の場合は、リトライの代わりに試行回数分のパケットを一度に送信する。
+ */
+public class QuorumProber {
+    private static final int DEADLINE_MARGIN = 500;  // 周期の打ち切りまでの余裕(ミリ秒)
+
+    private final Prober mProber;
+    private final boolean mBatch;
+    private final ExecutorService mExecutor;
+
+    /**
+     * Constructor
+     *
+     * @param prober 疎通確認方式
+     * @param executor 疎通確認を実行するスレッドプール
+     */
+    public QuorumProber(Prober prober, ExecutorService executor) {
+        this(prober, false, executor);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param prober 疎通確認方式
+     * @param batch true:試行回数分のパケットをまとめて送信する (BatchProber のみ)
+     * @param executor 疎通確認を実行するスレッドプール
+     */
+    public QuorumProber(Prober prober, boolean batch, ExecutorService executor) {
+        if (batch && !(prober instanceof BatchProber)) {
+            throw new IllegalArgumentException("Batch mode requires BatchProber.");
+        }
+        mProber = prober;
+        mBatch = batch;
+        mExecutor = executor;
+    }
+
+    /**
+     * すべての監視先に対して並列に疎通確認を実行する
+     *
+     * @param targets 監視先ホスト
+     * @param ntry 監視先ごとの最大試行回数
+     * @param timeout 1回あたりのタイムアウト(ミリ秒)
+     * @return 結果
+     * @throws InterruptedException 中断された
+     */
+    public Result probe(String[] targets, final int ntry, final int timeout) throws InterruptedException {
+        final AtomicIntegerArray attempts = new AtomicIntegerArray(targets.length);
+        final AtomicIntegerArray replies = new AtomicIntegerArray(targets.length);
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(targets.length);
+        for (int i = 0; i < targets.length; i++) {
+            final int index = i;
+            final String target = targets[i];
+            tasks.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    if (mBatch) {
+                        final long[] minRtt = { Prober.UNREACHABLE };
+                        attempts.set(index, ntry);
+                        ((BatchProber) mProber).probe(target, ntry, timeout, new BatchProber.ReplyListener() {
+                            @Override
+                            public void onReply(int seq, int ttl, long rtt) {
+                                replies.incrementAndGet(index);
+                                if (minRtt[0] == Prober.UNREACHABLE || rtt < minRtt[0]) {
+                                    minRtt[0] = rtt;
+                                }
+                            }
+                        });
+                        return minRtt[0];
+                    }
+                    long rtt = Prober.UNREACHABLE;
+                    for (int count = 0; count < ntry && !Thread.currentThread().isInterrupted(); count++) {
+                        attempts.incrementAndGet(index);
+                        rtt = mProber.probe(target, timeout);
+                        if (rtt != Prober.UNREACHABLE) {
+                            replies.incrementAndGet(index);
+                            break;
+                        }
+                    }
+                    return rtt;
+                }
+            });
+        }
+
+        // 期限内に終わらなかった監視先は到達不可とみなす
+        long deadline;
+        if (mBatch) {
+            // ping コマンドの期限 (秒単位に切り上げ)
+            deadline = ((long) (ntry - 1) * ExecPingProber.DEFAULT_INTERVAL + timeout + 999) / 1000 * 1000;
+        } else {
+            deadline = (long) ntry * timeout;
+        }
+        deadline += DEADLINE_MARGIN;
+        List<Future<Long>> futures;
+        try {
+            futures = mExecutor.invokeAll(tasks, deadline, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // 中断されたら実行中の疎通確認も中止
+            mProber.cancel();
+            throw e;
+        }
+        boolean expired = false;
+        long[] rtts = new long[targets.length];
+        int[] counts = new int[targets.length];
+        int[] received = new int[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            rtts[i] = Prober.UNREACHABLE;
+            try {
+                rtts[i] = futures.get(i).get();
+            } catch (CancellationException e) {
+                expired = true;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+            counts[i] = attempts.get(i);
+            received[i] = replies.get(i);
+        }
+        if (expired) {
+            // 期限切れの疎通確認 (ソケット・子プロセス) を中止
+            mProber.cancel();
+        }
+        return new Result(targets, rtts, counts, received);
+    }
+
+    /**
+     * 疎通確認結果
+     */
+    public static class Result {
+        private final String[] mTargets;
+        private final long[] mRtts;
+        private final int[] mAttempts;
+        private final int[] mReplies;
+
+        Result(String[] targets, long[] rtts, int[] attempts, int[] replies) {
+            mTargets = targets;
+            mRtts = rtts;
+            mAttempts = attempts;
+            mReplies = replies;
+        }
+
+        /**
+         * 監視先の数
+         */
+        public int getTargetCount() {
+            return mTargets.length;
+        }
+
+        /**
+         * 監視先ホスト
+         */
+        public String getTarget(int index) {
+            return mTargets[index];
+        }
+
+        /**
+         * 応答時間(マイクロ秒) (Prober.UNREACHABLE:到達不可)
+         */
+        public long getRtt(int index) {
+            return mRtts[index];
+        }
+
+        /**
+         * 応答のあった監視先のうち最小の応答時間
+         *
+         * @return 応答時間(マイクロ秒) (Prober.UNREACHABLE:応答なし)
+         */
+        public long getMinRtt() {
+            long min = Prober.UNREACHABLE;
+            for (long rtt : mRtts) {
+                if (rtt != Prober.UNREACHABLE && (min == Prober.UNREACHABLE || rtt < min)) {
+                    min = rtt;
+                }
+            }
+            return min;
+        }
+
+        /**
+         * 試行回数
+         */
+        public int getAttempts(int index) {
+            return mAttempts[index];
+        }
+
+        /**
+         * 応答数
+         */
+        public int getReplies(int index) {
+            return mReplies[index];
+        }
+
+        /**
+         * 応答のあった監視先の数
+         */
+        public int getReachableCount() {
+            return getReachableCount(mTargets.length);
+        }
+
+        /**
+         * 先頭から指定数の監視先のうち、応答のあった監視先の数
+         */
+        public int getReachableCount(int count) {
+            int reachable = 0;
+            for (int i = 0; i < count; i++) {
+                if (mRtts[i] != Prober.UNREACHABLE) {
+                    reachable++;
+                }
+            }
+            return reachable;
+        }
+
+        /**
+         * すべての監視先の試行回数の合計
+         */
+        public int getTotalAttempts() {
+            int total = 0;
+            for (int attempts : mAttempts) {
+                total += attempts;
+            }
+            return total;
+        }
+
+        /**
+         * すべての監視先の応答数の合計
+         */
+        public int getTotalReplies() {
+            int total = 0;
+            for (int replies : mReplies) {
+                total += replies;
+            }
+            return total;
+        }
+
+        /**
+         * 到達可能かどうか
+         *
+         * @param quorum 到達可能とみなすのに必要な監視先の数 (監視先の数を上限とする)
+         * @return true:到達可能
+         */
+        public boolean isReachable(int quorum) {
+            return isReachable(quorum, mTargets.length);
+        }
+
+        /**
+         * 先頭から指定数の監視先について到達可能かどうか
+         *
+         * @param quorum 到達可能とみなすのに必要な監視先の数 (指定数を上限とする)
+         * @param count 判定に使用する監視先の数
+         * @return true:到達可能
+         */
+        public boolean isReachable(int quorum, int count) {
+            return getReachableCount(count) >= Math.max(1, Math.min(quorum, count));
+        }
+    }
+}
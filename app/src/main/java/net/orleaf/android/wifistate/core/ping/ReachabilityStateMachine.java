@@ -0,0 +1,141 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 到達性の状態遷移 (ヒステリシス・フラップ抑制)
+ *
+ * 周期ごとの疎通確認結果から、確定した到達性を判定する。
+ * - 指定回数連続で失敗/成功した場合のみ状態を切り替える。
+ * - 状態を切り替えた後は最小滞留時間が経過するまで切り替えない。
+ * - 一定時間内に結果が何度も反転した場合はフラップ中とみなし、
+ *   反転が半分以下に収まるまで到達不可とする。
+ */
+public class ReachabilityStateMachine {
+    public static final long DEFAULT_MIN_DWELL = 30 * 1000;         // 最小滞留時間(ミリ秒)
+    public static final int DEFAULT_FLAP_THRESHOLD = 8;             // フラップとみなす反転回数
+    public static final long DEFAULT_FLAP_WINDOW = 5 * 60 * 1000;   // フラップ判定期間(ミリ秒)
+
+    private final int mDownThreshold;
+    private final int mUpThreshold;
+    private final long mMinDwell;
+    private final long mFlapWindow;
+    private final long[] mFlipTimes;    // 直近の反転時刻 (リングバッファ)
+
+    private boolean mReachable = true;  // 確定した到達性
+    private boolean mLastResult = true; // 直前の疎通確認結果
+    private int mStreak;                // 確定状態と異なる結果の連続回数
+    private boolean mChanged;           // 状態を切り替えたことがあるかどうか
+    private long mChangedTime;          // 状態を切り替えた時刻
+    private int mFlipCount;             // 反転回数 (リングバッファの書き込み位置)
+    private int mFlapCount;             // フラップ検出回数(累計)
+    private boolean mFlapping;
+
+    /**
+     * @param downThreshold 到達不可とする連続失敗回数
+     * @param upThreshold 到達可能とする連続成功回数
+     */
+    public ReachabilityStateMachine(int downThreshold, int upThreshold) {
+        this(downThreshold, upThreshold, DEFAULT_MIN_DWELL, DEFAULT_FLAP_THRESHOLD, DEFAULT_FLAP_WINDOW);
+    }
+
+    /**
+     * @param downThreshold 到達不可とする連続失敗回数
+     * @param upThreshold 到達可能とする連続成功回数
+     * @param minDwell 最小滞留時間(ミリ秒)
+     * @param flapThreshold フラップとみなす反転回数
+     * @param flapWindow フラップ判定期間(ミリ秒)
+     */
+    public ReachabilityStateMachine(int downThreshold, int upThreshold, long minDwell,
+                                    int flapThreshold, long flapWindow) {
+        mDownThreshold = Math.max(1, downThreshold);
+        mUpThreshold = Math.max(1, upThreshold);
+        mMinDwell = minDwell;
+        mFlapWindow = flapWindow;
+        mFlipTimes = new long[Math.max(2, flapThreshold)];
+    }
+
+    /**
+     * 疎通確認結果を反映
+     *
+     * @param result 疎通確認結果
+     * @param now 現在時刻(ミリ秒)
+     * @return true:確定した到達性が変化した
+     */
+    public boolean update(boolean result, long now) {
+        if (result != mLastResult) {
+            mLastResult = result;
+            mFlipTimes[mFlipCount % mFlipTimes.length] = now;
+            mFlipCount++;
+        }
+        int flips = countFlips(now);
+        if (!mFlapping && flips >= mFlipTimes.length) {
+            mFlapping = true;
+            mFlapCount++;
+        } else if (mFlapping && flips <= mFlipTimes.length / 2) {
+            mFlapping = false;
+        }
+
+        if (result == mReachable) {
+            mStreak = 0;
+        } else {
+            mStreak++;
+        }
+        if (mFlapping) {
+            // フラップ中は到達不可に固定する
+            return changeState(false, now);
+        }
+        if (mStreak >= (mReachable ? mDownThreshold : mUpThreshold)) {
+            return changeState(!mReachable, now);
+        }
+        return false;
+    }
+
+    private boolean changeState(boolean reachable, long now) {
+        if (reachable == mReachable) {
+            return false;
+        }
+        if (mChanged && now - mChangedTime < mMinDwell) {
+            // 最小滞留時間が経過するまで保留
+            return false;
+        }
+        mReachable = reachable;
+        mChanged = true;
+        mChangedTime = now;
+        mStreak = 0;
+        return true;
+    }
+
+    /**
+     * フラップ判定期間内の反転回数
+     */
+    private int countFlips(long now) {
+        int count = 0;
+        int n = Math.min(mFlipCount, mFlipTimes.length);
+        for (int i = 0; i < n; i++) {
+            if (now - mFlipTimes[i] < mFlapWindow) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 確定した到達性
+     */
+    public boolean isReachable() {
+        return mReachable;
+    }
+
+    /**
+     * フラップ中かどうか
+     */
+    public boolean isFlapping() {
+        return mFlapping;
+    }
+
+    /**
+     * フラップ検出回数(累計)
+     */
+    public int getFlapCount() {
+        return mFlapCount;
+    }
+}
@@ -0,0 +1,31 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * InetAddress.isReachable() による疎通確認
+ *
+ * ICMP echo が使えない場合は TCP echo ポートへの接続で代替される。
+ * 実行中の確認は中止できないが、タイムアウトで必ず終了する。
+ */
+public class ReachableProber implements Prober {
+
+    @Override
+    public long probe(String target, int timeout) {
+        try {
+            InetAddress address = InetAddress.getByName(target);
+            long start = System.nanoTime();
+            if (address.isReachable(timeout)) {
+                return (System.nanoTime() - start) / 1000;
+            }
+        } catch (IOException ignored) {
+        }
+        return UNREACHABLE;
+    }
+
+    @Override
+    public void cancel() {
+        // 中止できないためタイムアウトを待つ
+    }
+}
@@ -0,0 +1,209 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 監視先ホストの名前解決キャッシュ
+ *
+ * 解決結果を一定期間保持し、失敗結果も短い期間保持する (ネガティブキャッシュ)。
+ * 期限切れが近いエントリは refresh() で事前に再解決するため、疎通確認時に
+ * 名前解決を待つことはない。事前の再解決は保持期間の半分を過ぎてから行うため、
+ * 保持期間の短い失敗結果を毎周期再解決することはない。再解決に失敗した場合は前回のアドレスを使い続け、
+ * 名前解決の失敗を疎通失敗として扱わない。
+ */
+public class ResolverCache {
+    public static final long DEFAULT_TTL = 5 * 60 * 1000;           // 解決結果の保持期間(ミリ秒)
+    public static final long DEFAULT_NEGATIVE_TTL = 30 * 1000;      // 失敗結果の保持期間(ミリ秒)
+    public static final long DEFAULT_REFRESH_AHEAD = 60 * 1000;     // 期限切れの何ミリ秒前から再解決するか (最大で保持期間の半分)
+
+    /**
+     * 名前解決方式
+     */
+    public interface Resolver {
+        InetAddress resolve(String host) throws UnknownHostException;
+    }
+
+    /** InetAddress による名前解決 */
+    public static final Resolver SYSTEM_RESOLVER = new Resolver() {
+        @Override
+        public InetAddress resolve(String host) throws UnknownHostException {
+            return InetAddress.getByName(host);
+        }
+    };
+
+    /**
+     * キャッシュエントリ
+     */
+    private static class Entry {
+        final InetAddress address;  // 直近に解決できたアドレス (null:一度も解決できていない)
+        final boolean failed;       // 直近の名前解決に失敗したか
+        final long expires;         // 有効期限
+
+        Entry(InetAddress address, boolean failed, long expires) {
+            this.address = address;
+            this.failed = failed;
+            this.expires = expires;
+        }
+    }
+
+    private final Resolver mResolver;
+    private final long mTtl;
+    private final long mNegativeTtl;
+    private final long mRefreshAhead;
+    private final long mNegativeRefreshAhead;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicBoolean mRefreshing = new AtomicBoolean(false);
+
+    public ResolverCache() {
+        this(SYSTEM_RESOLVER, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_REFRESH_AHEAD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param resolver 名前解決方式
+     * @param ttl 解決結果の保持期間(ミリ秒)
+     * @param negativeTtl 失敗結果の保持期間(ミリ秒)
+     * @param refreshAhead 期限切れの何ミリ秒前から再解決するか (最大で保持期間の半分)
+     */
+    public ResolverCache(Resolver resolver, long ttl, long negativeTtl, long refreshAhead) {
+        mResolver = resolver;
+        mTtl = ttl;
+        mNegativeTtl = negativeTtl;
+        mRefreshAhead = Math.min(refreshAhead, ttl / 2);
+        mNegativeRefreshAhead = Math.min(refreshAhead, negativeTtl / 2);
+    }
+
+    /**
+     * アドレスを取得
+     *
+     * キャッシュが有効であればキャッシュから返し、無効であれば名前解決する。
+     *
+     * @param host ホスト名またはIPアドレス
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     * @return アドレス (null:解決できない)
+     */
+    public InetAddress resolve(String host, long now) {
+        if (isNumericAddress(host)) {
+            try {
+                return InetAddress.getByName(host);
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+        Entry entry = mEntries.get(host);
+        if (entry == null || now >= entry.expires) {
+            entry = lookup(host, entry, now);
+        }
+        return entry.address;
+    }
+
+    /**
+     * 期限切れが近いエントリを再解決する
+     *
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     */
+    public void refresh(long now) {
+        for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+            Entry entry = e.getValue();
+            if (now >= entry.expires - (entry.failed ? mNegativeRefreshAhead : mRefreshAhead)) {
+                lookup(e.getKey(), entry, now);
+            }
+        }
+    }
+
+    /**
+     * 期限切れが近いエントリを別スレッドで再解決する
+     *
+     * 前回の再解決が終わっていなければ何もしない。
+     *
+     * @param executor 再解決を実行するスレッド
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     */
+    public void refreshAsync(Executor executor, final long now) {
+        if (!mRefreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh(now);
+                    } finally {
+                        mRefreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 停止済み
+            mRefreshing.set(false);
+        }
+    }
+
+    /**
+     * 名前解決したホストがないかどうか (IPアドレス表記のみ)
+     */
+    public boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * 名前解決が正常かどうか
+     *
+     * @return true:すべてのホストの直近の名前解決に成功
+     */
+    public boolean isHealthy() {
+        for (Entry entry : mEntries.values()) {
+            if (entry.failed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * キャッシュを消去
+     */
+    public void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * 名前解決してキャッシュを更新
+     */
+    private Entry lookup(String host, Entry previous, long now) {
+        Entry entry;
+        try {
+            InetAddress address = mResolver.resolve(host);
+            entry = new Entry(address, false, now + mTtl);
+        } catch (UnknownHostException e) {
+            // 失敗した場合は前回のアドレスを使い続ける
+            entry = new Entry((previous != null) ? previous.address : null, true, now + mNegativeTtl);
+        }
+        mEntries.put(host, entry);
+        return entry;
+    }
+
+    /**
+     * IPアドレス表記かどうか
+     */
+    static boolean isNumericAddress(String host) {
+        if (host.indexOf(':') >= 0) {
+            return true;    // IPv6
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return host.length() > 0;
+    }
+}
@@ -0,0 +1,94 @@
+package net.orleaf.android.wifistate.core.ping;
+
+/**
+ * 一定期間の応答時間ヒストグラム
+ *
+ * 期間をスロットに分割し、古いスロットから順に再利用する。
+ * 記録・集計ともにオブジェクトを生成しない。
+ */
+public class RollingLatencyHistogram {
+    private final LatencyHistogram[] mSlots;
+    private final long[] mSlotStarts;
+    private final long mSlotPeriod;
+    private final LatencyHistogram mMerged = new LatencyHistogram();
+    private int mCurrent = 0;
+
+    /**
+     * Constructor
+     *
+     * @param slotCount スロット数
+     * @param slotPeriod スロットあたりの期間(ミリ秒)
+     */
+    public RollingLatencyHistogram(int slotCount, long slotPeriod) {
+        mSlots = new LatencyHistogram[slotCount];
+        mSlotStarts = new long[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            mSlots[i] = new LatencyHistogram();
+            mSlotStarts[i] = Long.MIN_VALUE;
+        }
+        mSlotPeriod = slotPeriod;
+    }
+
+    /**
+     * 応答時間を記録する
+     *
+     * @param value 応答時間(マイクロ秒)
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     */
+    public synchronized void record(long value, long now) {
+        advance(now);
+        mSlots[mCurrent].record(value);
+    }
+
+    /**
+     * 直近の期間の統計を取得
+     *
+     * @param slots 集計するスロット数 (最大:スロット数)
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     * @return 統計
+     */
+    public synchronized LatencySummary getSummary(int slots, long now) {
+        advance(now);
+        mMerged.reset();
+        slots = Math.min(slots, mSlots.length);
+        for (int i = 0; i < slots; i++) {
+            int index = (mCurrent - i + mSlots.length) % mSlots.length;
+            mMerged.add(mSlots[index]);
+        }
+        return new LatencySummary(mMerged.getTotalCount(),
+                mMerged.getValueAtPercentile(50),
+                mMerged.getValueAtPercentile(90),
+                mMerged.getValueAtPercentile(99),
+                mMerged.getMax());
+    }
+
+    /**
+     * 全期間の統計を取得
+     *
+     * @param now 現在時刻(ミリ秒, 単調増加)
+     * @return 統計
+     */
+    public LatencySummary getSummary(long now) {
+        return getSummary(mSlots.length, now);
+    }
+
+    /**
+     * 現在時刻に対応するスロットまで進める
+     */
+    private void advance(long now) {
+        long start = now - now % mSlotPeriod;
+        if (mSlotStarts[mCurrent] == start) {
+            return;
+        }
+        // 経過したスロットを消去 (全スロット分以上経過した場合はすべて消去)
+        long elapsed = (mSlotStarts[mCurrent] == Long.MIN_VALUE) ?
+                mSlots.length : (start - mSlotStarts[mCurrent]) / mSlotPeriod;
+        int n = (int) Math.min(elapsed, mSlots.length);
+        for (int i = 0; i < n; i++) {
+            mCurrent = (mCurrent + 1) % mSlots.length;
+            mSlots[mCurrent].reset();
+            mSlotStarts[mCurrent] = Long.MIN_VALUE;
+        }
+        mSlotStarts[mCurrent] = start;
+    }
+}
@@ -0,0 +1,97 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * TCP接続による疎通確認
+ *
+ * 接続が確立するか、接続を拒否された (RST が返った) 場合に到達可能とみなす。
+ * Android では経路なし・タイムアウトなどの接続エラーも ConnectException となるため、
+ * 拒否 (ECONNREFUSED) 以外の ConnectException は到達不可とする。
+ */
+public class TcpConnectProber implements Prober {
+    public static final int DEFAULT_PORT = 80;
+
+    private final int mPort;
+    private final Set<Socket> mActiveSockets = Collections.synchronizedSet(new HashSet<Socket>());
+
+    public TcpConnectProber() {
+        this(DEFAULT_PORT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param port 接続先ポート
+     */
+    public TcpConnectProber(int port) {
+        mPort = port;
+    }
+
+    @Override
+    public long probe(String target, int timeout) {
+        InetSocketAddress address = new InetSocketAddress(target, mPort);
+        if (address.isUnresolved()) {
+            return UNREACHABLE;
+        }
+        Socket socket = new Socket();
+        mActiveSockets.add(socket);
+        long start = System.nanoTime();
+        try {
+            if (Thread.currentThread().isInterrupted()) {
+                // 登録前に中止された (cancel() で閉じられていない)
+                return UNREACHABLE;
+            }
+            socket.connect(address, timeout);
+            return (System.nanoTime() - start) / 1000;
+        } catch (ConnectException e) {
+            if (isRefused(e)) {
+                // ホストからの応答(RST)があれば到達可能
+                return (System.nanoTime() - start) / 1000;
+            }
+        } catch (IOException ignored) {
+        } finally {
+            mActiveSockets.remove(socket);
+            close(socket);
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * 接続を拒否されたかどうか
+     *
+     * Android では原因の ErrnoException、JVM では例外メッセージで判定する。
+     * ex) "failed to connect to /192.168.0.1 (port 80) after 1000ms: isConnected failed: ECONNREFUSED (Connection refused)"
+     */
+    static boolean isRefused(ConnectException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            String message = t.getMessage();
+            if (message != null && (message.contains("ECONNREFUSED") || message.contains("Connection refused"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (mActiveSockets) {
+            for (Socket socket : mActiveSockets) {
+                close(socket);
+            }
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
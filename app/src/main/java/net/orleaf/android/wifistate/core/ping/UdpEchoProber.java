@@ -0,0 +1,87 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.PortUnreachableException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * UDP echo による疎通確認
+ *
+ * 送信したデータがそのまま返るか、ICMP port unreachable が返れば到達可能とみなす。
+ */
+public class UdpEchoProber implements Prober {
+    public static final int DEFAULT_PORT = 7;   // echo
+
+    private static final int PAYLOAD_SIZE = 8;
+
+    private final int mPort;
+    private final Set<DatagramSocket> mActiveSockets = Collections.synchronizedSet(new HashSet<DatagramSocket>());
+
+    public UdpEchoProber() {
+        this(DEFAULT_PORT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param port 送信先ポート
+     */
+    public UdpEchoProber(int port) {
+        mPort = port;
+    }
+
+    @Override
+    public long probe(String target, int timeout) {
+        DatagramSocket socket = null;
+        long start = System.nanoTime();
+        try {
+            InetAddress address = InetAddress.getByName(target);
+            socket = new DatagramSocket();
+            mActiveSockets.add(socket);
+            if (Thread.currentThread().isInterrupted()) {
+                // 登録前に中止された (cancel() で閉じられていない)
+                return UNREACHABLE;
+            }
+            socket.setSoTimeout(timeout);
+            socket.connect(address, mPort);
+
+            byte[] payload = new byte[PAYLOAD_SIZE];
+            byte[] reply = new byte[PAYLOAD_SIZE];
+            start = System.nanoTime();
+            for (int i = 0; i < PAYLOAD_SIZE; i++) {
+                payload[i] = (byte) (start >> (i * 8));
+            }
+            socket.send(new DatagramPacket(payload, payload.length));
+            DatagramPacket packet = new DatagramPacket(reply, reply.length);
+            socket.receive(packet);
+            if (packet.getLength() == PAYLOAD_SIZE && Arrays.equals(payload, reply)) {
+                return (System.nanoTime() - start) / 1000;
+            }
+        } catch (PortUnreachableException e) {
+            // ホストからの応答(ICMP)があれば到達可能
+            return (System.nanoTime() - start) / 1000;
+        } catch (IOException ignored) {
+        } finally {
+            if (socket != null) {
+                mActiveSockets.remove(socket);
+                socket.close();
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (mActiveSockets) {
+            for (DatagramSocket socket : mActiveSockets) {
+                socket.close();
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package net.orleaf.android.wifistate.core.preferences;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
 /**
@@ -41,15 +42,39 @@ public class WifiStatePreferences
     public static final String PREF_PING_TARGET_KEY = "ping_target";
     public static final String PREF_PING_TARGET_DEAFULT = "www.google.com";
 
+    public static final String PREF_PING_METHOD_KEY = "ping_method";
+    public static final String PREF_PING_METHOD_DEFAULT = "tcp";
+
     public static final String PREF_PING_TIMEOUT_KEY = "ping_timeout";
     public static final int PREF_PING_TIMEOUT_DEFAULT = 3;
 
     public static final String PREF_PING_INTERVAL_KEY = "ping_interval";
     public static final int PREF_PING_INTERVAL_DEFAULT = 10;
 
+    public static final String PREF_PING_ADAPTIVE_KEY = "ping_adaptive";
+    public static final boolean PREF_PING_ADAPTIVE_DEFAULT = false;
+
+    public static final String PREF_PING_INTERVAL_MAX_KEY = "ping_interval_max";
+    public static final int PREF_PING_INTERVAL_MAX_DEFAULT = 120;
+
     public static final String PREF_PING_RETRY_KEY = "ping_retry";
     public static final int PREF_PING_RETRY_DEFAULT = 3;
 
+    public static final String PREF_PING_QUORUM_KEY = "ping_quorum";
+    public static final int PREF_PING_QUORUM_DEFAULT = 1;
+
+    public static final String PREF_PING_DOWN_THRESHOLD_KEY = "ping_down_threshold";
+    public static final int PREF_PING_DOWN_THRESHOLD_DEFAULT = 2;
+
+    public static final String PREF_PING_UP_THRESHOLD_KEY = "ping_up_threshold";
+    public static final int PREF_PING_UP_THRESHOLD_DEFAULT = 2;
+
+    public static final String PREF_PING_FAIL_LOSS_KEY = "ping_fail_loss";
+    public static final int PREF_PING_FAIL_LOSS_DEFAULT = 0;
+
+    public static final String PREF_PING_FAIL_JITTER_KEY = "ping_fail_jitter";
+    public static final int PREF_PING_FAIL_JITTER_DEFAULT = 0;
+
     public static final String PREF_PING_DISABLE_WIFI_ON_FAIL_KEY = "ping_disable_wifi_on_fail";
     public static final boolean PREF_PING_DISABLE_WIFI_ON_FAIL_DEFAULT = false;
 
@@ -62,100 +87,340 @@ public class WifiStatePreferences
 
     public static final String PREF_ABOUT = "about";
 
+    private static volatile Snapshot mSnapshot = null;  // 現在の設定値
+
+    // 設定変更時にスナップショットを差し替える (リスナーは弱参照で保持されるため static で保持する)
+    private static final SharedPreferences.OnSharedPreferenceChangeListener mListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    reload(sharedPreferences);
+                }
+            };
+
     public static boolean getEnabled(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_ENABLED_KEY,
-                WifiStatePreferences.PREF_ENABLED_DEFAULT);
+        return getSnapshot(ctx).getEnabled();
     }
 
     public static String getIconStyle(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getString(
-                WifiStatePreferences.PREF_ICON_STYLE_KEY,
-                WifiStatePreferences.PREF_ICON_STYLE_DEFAULT);
+        return getSnapshot(ctx).getIconStyle();
     }
 
     public static boolean getClearable(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_CLEARABLE_KEY,
-                WifiStatePreferences.PREF_CLEARABLE_DEFAULT);
+        return getSnapshot(ctx).getClearable();
     }
 
     public static boolean getClearOnConnected(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_CLEAR_ON_CONNECTED_KEY,
-                WifiStatePreferences.PREF_CLEAR_ON_CONNECTED_DEFAULT);
+        return getSnapshot(ctx).getClearOnConnected();
     }
 
     public static boolean getClearOnScanning(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_CLEAR_ON_SCANNING_KEY,
-                WifiStatePreferences.PREF_CLEAR_ON_SCANNING_DEFAULT);
+        return getSnapshot(ctx).getClearOnScanning();
     }
 
     public static boolean getClearOnDisabled(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_CLEAR_ON_DISABLED_KEY,
-                WifiStatePreferences.PREF_CLEAR_ON_DISABLED_DEFAULT);
+        return getSnapshot(ctx).getClearOnDisabled();
     }
 
     public static boolean getShowDataNetwork(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_SHOW_DATA_NETWORK_KEY,
-                WifiStatePreferences.PREF_SHOW_DATA_NETWORK_DEFAULT);
+        return getSnapshot(ctx).getShowDataNetwork();
     }
 
     public static String getActionOnTap(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getString(
-                WifiStatePreferences.PREF_ACTION_ON_TAP_KEY,
-                WifiStatePreferences.PREF_ACTION_ON_TAP_DEFAULT);
+        return getSnapshot(ctx).getActionOnTap();
     }
 
     public static boolean getPing(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_PING_KEY,
-                WifiStatePreferences.PREF_PING_DEFAULT);
+        return getSnapshot(ctx).getPing();
     }
 
     public static boolean getPingOnMobile(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_PING_ON_MOBILE_KEY,
-                WifiStatePreferences.PREF_PING_ON_MOBILE_DEFAULT);
+        return getSnapshot(ctx).getPingOnMobile();
     }
 
     public static String getPingTarget(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getString(
-                WifiStatePreferences.PREF_PING_TARGET_KEY,
-                WifiStatePreferences.PREF_PING_TARGET_DEAFULT);
+        return getSnapshot(ctx).getPingTarget();
+    }
+
+    public static String getPingMethod(Context ctx) {
+        return getSnapshot(ctx).getPingMethod();
     }
 
     public static int getPingTimeout(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getInt(
-                WifiStatePreferences.PREF_PING_TIMEOUT_KEY,
-                WifiStatePreferences.PREF_PING_TIMEOUT_DEFAULT);
+        return getSnapshot(ctx).getPingTimeout();
     }
 
     public static int getPingInterval(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getInt(
-                WifiStatePreferences.PREF_PING_INTERVAL_KEY,
-                WifiStatePreferences.PREF_PING_INTERVAL_DEFAULT);
+        return getSnapshot(ctx).getPingInterval();
+    }
+
+    public static boolean getPingAdaptive(Context ctx) {
+        return getSnapshot(ctx).getPingAdaptive();
+    }
+
+    public static int getPingIntervalMax(Context ctx) {
+        return getSnapshot(ctx).getPingIntervalMax();
     }
 
     public static int getPingRetry(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getInt(
-                WifiStatePreferences.PREF_PING_RETRY_KEY,
-                WifiStatePreferences.PREF_PING_RETRY_DEFAULT);
+        return getSnapshot(ctx).getPingRetry();
+    }
+
+    public static int getPingQuorum(Context ctx) {
+        return getSnapshot(ctx).getPingQuorum();
+    }
+
+    public static int getPingDownThreshold(Context ctx) {
+        return getSnapshot(ctx).getPingDownThreshold();
+    }
+
+    public static int getPingUpThreshold(Context ctx) {
+        return getSnapshot(ctx).getPingUpThreshold();
+    }
+
+    public static int getPingFailLoss(Context ctx) {
+        return getSnapshot(ctx).getPingFailLoss();
+    }
+
+    public static int getPingFailJitter(Context ctx) {
+        return getSnapshot(ctx).getPingFailJitter();
     }
 
     public static boolean getPingDisableWifiOnFail(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
-                WifiStatePreferences.PREF_PING_DISABLE_WIFI_ON_FAIL_KEY,
-                WifiStatePreferences.PREF_PING_DISABLE_WIFI_ON_FAIL_DEFAULT);
+        return getSnapshot(ctx).getPingDisableWifiOnFail();
     }
 
     public static int getPingDisableWifiPeriod(Context ctx) {
-        return PreferenceManager.getDefaultSharedPreferences(ctx).getInt(
-                WifiStatePreferences.PREF_PING_DISABLE_WIFI_PERIOD_KEY,
-                WifiStatePreferences.PREF_PING_DISABLE_WIFI_PERIOD_DEFAULT);
+        return getSnapshot(ctx).getPingDisableWifiPeriod();
+    }
+
+    /**
+     * 設定値のスナップショットを取得
+     *
+     * 初回のみ設定を読み込み、以降は設定変更時に差し替えられたスナップショットを返す。
+     */
+    public static Snapshot getSnapshot(Context ctx) {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (WifiStatePreferences.class) {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+                    prefs.registerOnSharedPreferenceChangeListener(mListener);
+                    snapshot = new Snapshot(prefs);
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 設定値を再読み込み
+     */
+    public static void reload(SharedPreferences prefs) {
+        mSnapshot = new Snapshot(prefs);
+    }
+
+    /**
+     * 設定値のスナップショット (不変)
+     */
+    public static class Snapshot {
+        private final boolean mEnabled;
+        private final String mIconStyle;
+        private final boolean mClearable;
+        private final boolean mClearOnConnected;
+        private final boolean mClearOnScanning;
+        private final boolean mClearOnDisabled;
+        private final boolean mShowDataNetwork;
+        private final String mActionOnTap;
+        private final boolean mPing;
+        private final boolean mPingOnMobile;
+        private final String mPingTarget;
+        private final String mPingMethod;
+        private final int mPingTimeout;
+        private final int mPingInterval;
+        private final boolean mPingAdaptive;
+        private final int mPingIntervalMax;
+        private final int mPingRetry;
+        private final int mPingQuorum;
+        private final int mPingDownThreshold;
+        private final int mPingUpThreshold;
+        private final int mPingFailLoss;
+        private final int mPingFailJitter;
+        private final boolean mPingDisableWifiOnFail;
+        private final int mPingDisableWifiPeriod;
+
+        Snapshot(SharedPreferences prefs) {
+            mEnabled = prefs.getBoolean(
+                    WifiStatePreferences.PREF_ENABLED_KEY,
+                    WifiStatePreferences.PREF_ENABLED_DEFAULT);
+            mIconStyle = prefs.getString(
+                    WifiStatePreferences.PREF_ICON_STYLE_KEY,
+                    WifiStatePreferences.PREF_ICON_STYLE_DEFAULT);
+            mClearable = prefs.getBoolean(
+                    WifiStatePreferences.PREF_CLEARABLE_KEY,
+                    WifiStatePreferences.PREF_CLEARABLE_DEFAULT);
+            mClearOnConnected = prefs.getBoolean(
+                    WifiStatePreferences.PREF_CLEAR_ON_CONNECTED_KEY,
+                    WifiStatePreferences.PREF_CLEAR_ON_CONNECTED_DEFAULT);
+            mClearOnScanning = prefs.getBoolean(
+                    WifiStatePreferences.PREF_CLEAR_ON_SCANNING_KEY,
+                    WifiStatePreferences.PREF_CLEAR_ON_SCANNING_DEFAULT);
+            mClearOnDisabled = prefs.getBoolean(
+                    WifiStatePreferences.PREF_CLEAR_ON_DISABLED_KEY,
+                    WifiStatePreferences.PREF_CLEAR_ON_DISABLED_DEFAULT);
+            mShowDataNetwork = prefs.getBoolean(
+                    WifiStatePreferences.PREF_SHOW_DATA_NETWORK_KEY,
+                    WifiStatePreferences.PREF_SHOW_DATA_NETWORK_DEFAULT);
+            mActionOnTap = prefs.getString(
+                    WifiStatePreferences.PREF_ACTION_ON_TAP_KEY,
+                    WifiStatePreferences.PREF_ACTION_ON_TAP_DEFAULT);
+            mPing = prefs.getBoolean(
+                    WifiStatePreferences.PREF_PING_KEY,
+                    WifiStatePreferences.PREF_PING_DEFAULT);
+            mPingOnMobile = prefs.getBoolean(
+                    WifiStatePreferences.PREF_PING_ON_MOBILE_KEY,
+                    WifiStatePreferences.PREF_PING_ON_MOBILE_DEFAULT);
+            mPingTarget = prefs.getString(
+                    WifiStatePreferences.PREF_PING_TARGET_KEY,
+                    WifiStatePreferences.PREF_PING_TARGET_DEAFULT);
+            mPingMethod = prefs.getString(
+                    WifiStatePreferences.PREF_PING_METHOD_KEY,
+                    WifiStatePreferences.PREF_PING_METHOD_DEFAULT);
+            mPingTimeout = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_TIMEOUT_KEY,
+                    WifiStatePreferences.PREF_PING_TIMEOUT_DEFAULT);
+            mPingInterval = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_INTERVAL_KEY,
+                    WifiStatePreferences.PREF_PING_INTERVAL_DEFAULT);
+            mPingAdaptive = prefs.getBoolean(
+                    WifiStatePreferences.PREF_PING_ADAPTIVE_KEY,
+                    WifiStatePreferences.PREF_PING_ADAPTIVE_DEFAULT);
+            mPingIntervalMax = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_INTERVAL_MAX_KEY,
+                    WifiStatePreferences.PREF_PING_INTERVAL_MAX_DEFAULT);
+            mPingRetry = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_RETRY_KEY,
+                    WifiStatePreferences.PREF_PING_RETRY_DEFAULT);
+            mPingQuorum = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_QUORUM_KEY,
+                    WifiStatePreferences.PREF_PING_QUORUM_DEFAULT);
+            mPingDownThreshold = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_DOWN_THRESHOLD_KEY,
+                    WifiStatePreferences.PREF_PING_DOWN_THRESHOLD_DEFAULT);
+            mPingUpThreshold = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_UP_THRESHOLD_KEY,
+                    WifiStatePreferences.PREF_PING_UP_THRESHOLD_DEFAULT);
+            mPingFailLoss = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_FAIL_LOSS_KEY,
+                    WifiStatePreferences.PREF_PING_FAIL_LOSS_DEFAULT);
+            mPingFailJitter = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_FAIL_JITTER_KEY,
+                    WifiStatePreferences.PREF_PING_FAIL_JITTER_DEFAULT);
+            mPingDisableWifiOnFail = prefs.getBoolean(
+                    WifiStatePreferences.PREF_PING_DISABLE_WIFI_ON_FAIL_KEY,
+                    WifiStatePreferences.PREF_PING_DISABLE_WIFI_ON_FAIL_DEFAULT);
+            mPingDisableWifiPeriod = prefs.getInt(
+                    WifiStatePreferences.PREF_PING_DISABLE_WIFI_PERIOD_KEY,
+                    WifiStatePreferences.PREF_PING_DISABLE_WIFI_PERIOD_DEFAULT);
+        }
+
+        public boolean getEnabled() {
+            return mEnabled;
+        }
+
+        public String getIconStyle() {
+            return mIconStyle;
+        }
+
+        public boolean getClearable() {
+            return mClearable;
+        }
+
+        public boolean getClearOnConnected() {
+            return mClearOnConnected;
+        }
+
+        public boolean getClearOnScanning() {
+            return mClearOnScanning;
+        }
+
+        public boolean getClearOnDisabled() {
+            return mClearOnDisabled;
+        }
+
+        public boolean getShowDataNetwork() {
+            return mShowDataNetwork;
+        }
+
+        public String getActionOnTap() {
+            return mActionOnTap;
+        }
+
+        public boolean getPing() {
+            return mPing;
+        }
+
+        public boolean getPingOnMobile() {
+            return mPingOnMobile;
+        }
+
+        public String getPingTarget() {
+            return mPingTarget;
+        }
+
+        public String getPingMethod() {
+            return mPingMethod;
+        }
+
+        public int getPingTimeout() {
+            return mPingTimeout;
+        }
+
+        public int getPingInterval() {
+            return mPingInterval;
+        }
+
+        public boolean getPingAdaptive() {
+            return mPingAdaptive;
+        }
+
+        public int getPingIntervalMax() {
+            return mPingIntervalMax;
+        }
+
+        public int getPingRetry() {
+            return mPingRetry;
+        }
+
+        public int getPingQuorum() {
+            return mPingQuorum;
+        }
+
+        public int getPingDownThreshold() {
+            return mPingDownThreshold;
+        }
+
+        public int getPingUpThreshold() {
+            return mPingUpThreshold;
+        }
+
+        public int getPingFailLoss() {
+            return mPingFailLoss;
+        }
+
+        public int getPingFailJitter() {
+            return mPingFailJitter;
+        }
+
+        public boolean getPingDisableWifiOnFail() {
+            return mPingDisableWifiOnFail;
+        }
+
+        public int getPingDisableWifiPeriod() {
+            return mPingDisableWifiPeriod;
+        }
     }
 
 }
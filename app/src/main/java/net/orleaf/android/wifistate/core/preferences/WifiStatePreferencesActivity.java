@@ -25,9 +25,16 @@ public class WifiStatePreferencesActivity extends PreferenceActivity
     private ListPreference mPrefIconStyle;
     private ListPreference mPrefActionOnTap;
     private EditTextPreference mPrefPingTarget;
+    private ListPreference mPrefPingMethod;
     private NumberSeekbarPreference mPrefPingTimeout;
     private NumberSeekbarPreference mPrefPingInterval;
+    private NumberSeekbarPreference mPrefPingIntervalMax;
     private NumberSeekbarPreference mPrefPingRetry;
+    private NumberSeekbarPreference mPrefPingQuorum;
+    private NumberSeekbarPreference mPrefPingDownThreshold;
+    private NumberSeekbarPreference mPrefPingUpThreshold;
+    private NumberSeekbarPreference mPrefPingFailLoss;
+    private NumberSeekbarPreference mPrefPingFailJitter;
     private NumberSeekbarPreference mPrefPingDisableWifiPeriod;
     private Preference mPrefWifiSettings;
     private Preference mPrefBrowseRouter;
@@ -47,9 +54,16 @@ public class WifiStatePreferencesActivity extends PreferenceActivity
         mPrefIconStyle = (ListPreference) findPreference(WifiStatePreferences.PREF_ICON_STYLE_KEY);
         mPrefActionOnTap = (ListPreference) findPreference(WifiStatePreferences.PREF_ACTION_ON_TAP_KEY);
         mPrefPingTarget = (EditTextPreference) findPreference(WifiStatePreferences.PREF_PING_TARGET_KEY);
+        mPrefPingMethod = (ListPreference) findPreference(WifiStatePreferences.PREF_PING_METHOD_KEY);
         mPrefPingTimeout = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_TIMEOUT_KEY);
         mPrefPingInterval = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_INTERVAL_KEY);
+        mPrefPingIntervalMax = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_INTERVAL_MAX_KEY);
         mPrefPingRetry = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_RETRY_KEY);
+        mPrefPingQuorum = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_QUORUM_KEY);
+        mPrefPingDownThreshold = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_DOWN_THRESHOLD_KEY);
+        mPrefPingUpThreshold = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_UP_THRESHOLD_KEY);
+        mPrefPingFailLoss = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_FAIL_LOSS_KEY);
+        mPrefPingFailJitter = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_FAIL_JITTER_KEY);
         mPrefPingDisableWifiPeriod = (NumberSeekbarPreference) findPreference(WifiStatePreferences.PREF_PING_DISABLE_WIFI_PERIOD_KEY);
         mPrefWifiSettings = findPreference(WifiStatePreferences.PREF_WIFI_SETTINGS_KEY);
         mPrefBrowseRouter = findPreference(WifiStatePreferences.PREF_BROWSE_ROUTER);
@@ -98,6 +112,8 @@ public class WifiStatePreferencesActivity extends PreferenceActivity
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // 設定値を再読み込み
+        WifiStatePreferences.reload(sharedPreferences);
         // summaryを更新
         updateSummary();
     }
@@ -139,12 +155,19 @@ public class WifiStatePreferencesActivity extends PreferenceActivity
             } else {
                 mPrefPingTarget.setSummary(mPrefPingTarget.getText());
             }
+            mPrefPingMethod.setSummary(
+                    getEntryString(mPrefPingMethod.getValue(),
+                        getResources().getStringArray(R.array.entries_ping_method),
+                        getResources().getStringArray(R.array.entryvalues_ping_method)));
             mPrefPingTimeout.setSummary(
                     mPrefPingTimeout.getValue() +
                     getResources().getString(R.string.pref_ping_timeout_unit));
             mPrefPingInterval.setSummary(
                     mPrefPingInterval.getValue() +
                     getResources().getString(R.string.pref_ping_interval_unit));
+            mPrefPingIntervalMax.setSummary(
+                    mPrefPingIntervalMax.getValue() +
+                    getResources().getString(R.string.pref_ping_interval_unit));
             if (mPrefPingRetry.getValue() == 0) {
                 mPrefPingRetry.setSummary(
                         getResources().getString(R.string.pref_ping_retry_zero));
@@ -153,6 +176,31 @@ public class WifiStatePreferencesActivity extends PreferenceActivity
                         mPrefPingRetry.getValue() +
                         getResources().getString(R.string.pref_ping_retry_unit));
             }
+            mPrefPingQuorum.setSummary(
+                    mPrefPingQuorum.getValue() +
+                    getResources().getString(R.string.pref_ping_quorum_unit));
+            mPrefPingDownThreshold.setSummary(
+                    mPrefPingDownThreshold.getValue() +
+                    getResources().getString(R.string.pref_ping_threshold_unit));
+            mPrefPingUpThreshold.setSummary(
+                    mPrefPingUpThreshold.getValue() +
+                    getResources().getString(R.string.pref_ping_threshold_unit));
+            if (mPrefPingFailLoss.getValue() == 0) {
+                mPrefPingFailLoss.setSummary(
+                        getResources().getString(R.string.pref_ping_fail_disabled));
+            } else {
+                mPrefPingFailLoss.setSummary(
+                        mPrefPingFailLoss.getValue() +
+                        getResources().getString(R.string.pref_ping_fail_loss_unit));
+            }
+            if (mPrefPingFailJitter.getValue() == 0) {
+                mPrefPingFailJitter.setSummary(
+                        getResources().getString(R.string.pref_ping_fail_disabled));
+            } else {
+                mPrefPingFailJitter.setSummary(
+                        mPrefPingFailJitter.getValue() +
+                        getResources().getString(R.string.pref_ping_fail_jitter_unit));
+            }
             mPrefPingDisableWifiPeriod.setSummary(
                     mPrefPingDisableWifiPeriod.getValue() +
                     getResources().getString(R.string.pref_ping_disable_wifi_period_unit));
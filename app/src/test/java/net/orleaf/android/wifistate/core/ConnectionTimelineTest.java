@@ -0,0 +1,71 @@
+package net.orleaf.android.wifistate.core;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.orleaf.android.wifistate.core.ping.LatencySummary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ConnectionTimeline のテスト
+ */
+public class ConnectionTimelineTest {
+    private static final String SSID = "\"home\"";
+
+    private static LatencySummary getSummary(ConnectionTimeline timeline, ConnectionTimeline.Metric metric) {
+        Map<String, LatencySummary[]> summaries = timeline.getSummaries();
+        assertTrue(summaries.containsKey(SSID));
+        return summaries.get(SSID)[metric.ordinal()];
+    }
+
+    private static void connect(ConnectionTimeline timeline, long start) {
+        timeline.record(ConnectionTimeline.Phase.ASSOCIATING, start, null);
+        timeline.record(ConnectionTimeline.Phase.HANDSHAKING, start + 100, null);
+        timeline.record(ConnectionTimeline.Phase.AUTHENTICATED, start + 300, null);
+        timeline.record(ConnectionTimeline.Phase.OBTAINING_IPADDR, start + 300, null);
+        timeline.record(ConnectionTimeline.Phase.CONNECTED, start + 1000, SSID);
+    }
+
+    @Test
+    public void phases() {
+        ConnectionTimeline timeline = new ConnectionTimeline();
+        connect(timeline, 5000);
+        assertEquals(100000, getSummary(timeline, ConnectionTimeline.Metric.ASSOCIATION).getMax());
+        assertEquals(200000, getSummary(timeline, ConnectionTimeline.Metric.HANDSHAKE).getMax());
+        assertEquals(700000, getSummary(timeline, ConnectionTimeline.Metric.DHCP).getMax());
+        assertEquals(1000000, getSummary(timeline, ConnectionTimeline.Metric.TOTAL).getMax());
+    }
+
+    @Test
+    public void totalExcludesScanning() {
+        ConnectionTimeline timeline = new ConnectionTimeline();
+        // 接続に至らないスキャンが続いた後に接続
+        timeline.record(ConnectionTimeline.Phase.SCANNING, 0, null);
+        timeline.record(ConnectionTimeline.Phase.SCANNING, 30000, null);
+        timeline.record(ConnectionTimeline.Phase.SCANNING, 60000, null);
+        connect(timeline, 90000);
+        LatencySummary total = getSummary(timeline, ConnectionTimeline.Metric.TOTAL);
+        assertEquals(1, total.getCount());
+        assertEquals(1000000, total.getMax());
+    }
+
+    @Test
+    public void disconnectRestartsAttempt() {
+        ConnectionTimeline timeline = new ConnectionTimeline();
+        timeline.record(ConnectionTimeline.Phase.ASSOCIATING, 0, null);
+        timeline.record(ConnectionTimeline.Phase.DISCONNECTED, 500, null);
+        connect(timeline, 10000);
+        assertEquals(1000000, getSummary(timeline, ConnectionTimeline.Metric.TOTAL).getMax());
+    }
+
+    @Test
+    public void connectedWithoutObservedAttemptIsIgnored() {
+        ConnectionTimeline timeline = new ConnectionTimeline();
+        timeline.record(ConnectionTimeline.Phase.SCANNING, 0, null);
+        timeline.record(ConnectionTimeline.Phase.CONNECTED, 1000, SSID);
+        assertTrue(timeline.getSummaries().isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+package net.orleaf.android.wifistate.core;
+
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * InfoFormatter のテスト
+ */
+public class InfoFormatterTest {
+    private Locale mDefaultLocale;
+    private InfoFormatter mFormatter;
+
+    @Before
+    public void setUp() {
+        mDefaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        mFormatter = new InfoFormatter();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void formatIpAddress() {
+        assertEquals("192.168.0.1", mFormatter.formatIpAddress(0x0100a8c0));
+        assertEquals("10.0.0.254", mFormatter.formatIpAddress(0xfe00000a));
+        assertEquals("255.255.255.255", mFormatter.formatIpAddress(0xffffffff));
+        assertEquals("0.0.0.0", mFormatter.formatIpAddress(0));
+    }
+
+    @Test
+    public void formatIpAddressReusesText() {
+        String first = mFormatter.formatIpAddress(0x0100a8c0);
+        assertSame(first, mFormatter.formatIpAddress(0x0100a8c0));
+        assertEquals("192.168.0.2", mFormatter.formatIpAddress(0x0200a8c0));
+    }
+
+    @Test
+    public void formatExtraInfo() {
+        assertEquals("Signal: 4/4 (-45dBm)\n" +
+                        "Channel: 36CH (5,180MHz)\n" +
+                        "Band: 5GHz / 80MHz\n" +
+                        "Speed: 433Mbps\n" +
+                        "IPv6: fe80::1",
+                mFormatter.formatExtraInfo(-45, 4, 5180, 36, WifiChannel.Band.BAND_5GHZ, 80, 433, "fe80::1"));
+    }
+
+    @Test
+    public void formatExtraInfoOmitsUnknown() {
+        assertEquals("Signal: 1/4 (-88dBm)",
+                mFormatter.formatExtraInfo(-88, 1, -1, -1, null, -1, -1, null));
+        // 帯域幅が不明な場合は周波数帯のみ
+        assertEquals("Signal: 3/4 (-60dBm)\n" +
+                        "Channel: 6CH (2,437MHz)\n" +
+                        "Band: 2.4GHz",
+                mFormatter.formatExtraInfo(-60, 3, 2437, 6, WifiChannel.Band.BAND_2_4GHZ, 0, 0, null));
+    }
+
+    @Test
+    public void formatExtraInfoReusesText() {
+        String first = mFormatter.formatExtraInfo(-45, 4, 5180, 36, WifiChannel.Band.BAND_5GHZ, 80, 433, null);
+        assertSame(first, mFormatter.formatExtraInfo(-45, 4, 5180, 36, WifiChannel.Band.BAND_5GHZ, 80, 433, null));
+        String changed = mFormatter.formatExtraInfo(-46, 4, 5180, 36, WifiChannel.Band.BAND_5GHZ, 80, 433, null);
+        assertNotSame(first, changed);
+        assertEquals("Signal: 4/4 (-46dBm)\n" +
+                        "Channel: 36CH (5,180MHz)\n" +
+                        "Band: 5GHz / 80MHz\n" +
+                        "Speed: 433Mbps",
+                changed);
+        String ipv6 = mFormatter.formatExtraInfo(-46, 4, 5180, 36, WifiChannel.Band.BAND_5GHZ, 80, 433, "2001:db8::1");
+        assertEquals(changed + "\nIPv6: 2001:db8::1", ipv6);
+    }
+
+    @Test
+    public void formatExtraInfoFollowsLocale() {
+        mFormatter.formatExtraInfo(-50, 4, 5955, 1, WifiChannel.Band.BAND_6GHZ, 160, 1201, null);
+        Locale.setDefault(Locale.GERMANY);
+        assertEquals("Signal: 4/4 (-50dBm)\n" +
+                        "Channel: 1CH (5.955MHz)\n" +
+                        "Band: 6GHz / 160MHz\n" +
+                        "Speed: 1201Mbps",
+                mFormatter.formatExtraInfo(-50, 4, 5955, 1, WifiChannel.Band.BAND_6GHZ, 160, 1201, null));
+    }
+}
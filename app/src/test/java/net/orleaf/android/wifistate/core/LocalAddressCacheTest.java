@@ -0,0 +1,100 @@
+package net.orleaf.android.wifistate.core;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.net.ConnectivityManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LocalAddressCache のテスト (/proc/net/if_inet6 の解析・既定のインタフェースの選択)
+ */
+public class LocalAddressCacheTest {
+    // address / ifindex / prefix length / scope / flags / device
+    private static final String GLOBAL = "20010db8000000010000000000000001 03 40 00 80     wlan0";
+    private static final String GLOBAL_DEPRECATED = "20010db8000000010000000000000002 03 40 00 a0     wlan0";
+    private static final String GLOBAL_TEMPORARY = "20010db80000000112345678abcdef01 03 40 00 81     wlan0";
+    private static final String ULA = "fd000000000000010000000000000001 03 40 00 80     wlan0";
+    private static final String LINK_LOCAL = "fe800000000000000000000000000001 03 40 20 80     wlan0";
+    private static final String TENTATIVE = "20010db8000000010000000000000003 03 40 00 c0     wlan0";
+
+    private static List<LocalAddressCache.Addresses> parse(String... lines) {
+        StringBuilder b = new StringBuilder();
+        for (String line : lines) {
+            b.append(line).append('\n');
+        }
+        List<LocalAddressCache.Addresses> interfaces = new ArrayList<LocalAddressCache.Addresses>();
+        assertTrue(LocalAddressCache.readIfInet6(new StringReader(b.toString()), interfaces));
+        return interfaces;
+    }
+
+    @Test
+    public void preferredOverDeprecated() {
+        // 非推奨のアドレスが後に列挙されても、先に列挙されても非推奨でないものを選ぶ
+        assertEquals("2001:db8:0:1:0:0:0:1", parse(GLOBAL_DEPRECATED, GLOBAL).get(0).getIpv6Address());
+        assertEquals("2001:db8:0:1:0:0:0:1", parse(GLOBAL, GLOBAL_DEPRECATED).get(0).getIpv6Address());
+    }
+
+    @Test
+    public void temporaryKeptSeparately() {
+        LocalAddressCache.Addresses wlan = parse(GLOBAL_TEMPORARY, GLOBAL).get(0);
+        assertEquals("2001:db8:0:1:0:0:0:1", wlan.getIpv6Address());
+        assertEquals("2001:db8:0:1:1234:5678:abcd:ef01", wlan.getIpv6TemporaryAddress());
+        // 固定アドレスを優先して表示
+        assertEquals("2001:db8:0:1:0:0:0:1", wlan.getPrimaryAddress());
+        // 一時アドレスのみの場合は一時アドレス
+        assertEquals("2001:db8:0:1:1234:5678:abcd:ef01", parse(GLOBAL_TEMPORARY).get(0).getPrimaryAddress());
+    }
+
+    @Test
+    public void globalOverUniqueLocal() {
+        assertEquals("2001:db8:0:1:0:0:0:1", parse(ULA, GLOBAL).get(0).getIpv6Address());
+        assertEquals("2001:db8:0:1:0:0:0:1", parse(GLOBAL, ULA).get(0).getIpv6Address());
+        // ユニークローカルのみ
+        assertEquals("fd00:0:0:1:0:0:0:1", parse(ULA).get(0).getIpv6Address());
+    }
+
+    @Test
+    public void linkLocalAndTentativeIgnored() {
+        assertTrue(parse(LINK_LOCAL, TENTATIVE).isEmpty());
+    }
+
+    @Test
+    public void malformedContentRejected() {
+        List<LocalAddressCache.Addresses> interfaces = new ArrayList<LocalAddressCache.Addresses>();
+        assertFalse(LocalAddressCache.readIfInet6(
+                new StringReader("20010db8000000010000000000000001 03 40 zz 80 wlan0\n"), interfaces));
+    }
+
+    @Test
+    public void defaultFollowsActiveNetwork() {
+        List<LocalAddressCache.Addresses> interfaces = parse(
+                "fd000000000000020000000000000001 05 40 00 80     p2p0",
+                "20010db8000000020000000000000001 06 40 00 80     tun0",
+                "20010db8000000030000000000000001 07 40 00 80  rmnet0",
+                GLOBAL);
+        assertEquals("wlan0", LocalAddressCache.selectDefault(interfaces, ConnectivityManager.TYPE_WIFI).getName());
+        assertEquals("rmnet0", LocalAddressCache.selectDefault(interfaces, ConnectivityManager.TYPE_MOBILE).getName());
+        // 種別が不明でも仮想インタフェースは選ばない
+        assertEquals("rmnet0", LocalAddressCache.selectDefault(interfaces, -1).getName());
+    }
+
+    @Test
+    public void defaultPrefersGlobalAddress() {
+        List<LocalAddressCache.Addresses> interfaces = parse(
+                "fd000000000000020000000000000001 05 40 00 80  rmnet0",
+                "20010db8000000030000000000000001 07 40 00 80  rmnet1");
+        assertEquals("rmnet1", LocalAddressCache.selectDefault(interfaces, ConnectivityManager.TYPE_MOBILE).getName());
+        // 仮想インタフェースしかなければ選ぶ
+        assertEquals("p2p0", LocalAddressCache.selectDefault(
+                parse("fd000000000000020000000000000001 05 40 00 80     p2p0"), ConnectivityManager.TYPE_WIFI).getName());
+        assertNull(LocalAddressCache.selectDefault(new ArrayList<LocalAddressCache.Addresses>(), -1));
+    }
+}
@@ -0,0 +1,171 @@
+package net.orleaf.android.wifistate.core;
+
+import java.util.concurrent.TimeUnit;
+
+import android.net.NetworkInfo;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiManager;
+import android.telephony.TelephonyManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.orleaf.android.wifistate.core.NetworkStateInfo.States;
+
+/**
+ * ブロードキャスト受信時の状態更新処理の所要時間
+ *
+ * 実機で記録したブロードキャストの並び (Wi-Fi有効化～接続～ローミング～切断～無効化) を
+ * 1操作として、状態の導出・周波数からチャネルへの変換・IPアドレスの文字列化を実行する。
+ * 追加情報の整形は、入力値が変わらない場合と信号強度が毎回変わる場合を計測する。
+ * ex) ./gradlew :app:jmh -Pjmh="NetworkStateBenchmark -prof gc"
+ *
+ * 追加情報の整形の1回あたりの割り当て (gc.alloc.rate.norm, JDK 17 HotSpot で計測):
+ * 入力値が変わらない場合 0 B/op、信号強度が変わる場合 約154 B/op (結果の文字列のみ)。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class NetworkStateBenchmark {
+
+    // 記録した入力 (wifiState, supplicantState, supplicantConnected, wifiAvailable,
+    // wifiNetworkState, wifiDetailedState, dataState)
+    private static final Object[][] RECORDED_INPUTS = {
+            { WifiManager.WIFI_STATE_ENABLING, null, false, false, null, null, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, null, false, false, null, null, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.DISCONNECTED, false, true,
+                    NetworkInfo.State.DISCONNECTED, NetworkInfo.DetailedState.IDLE, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.SCANNING, true, true,
+                    NetworkInfo.State.DISCONNECTED, NetworkInfo.DetailedState.SCANNING, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.ASSOCIATING, true, true,
+                    NetworkInfo.State.CONNECTING, NetworkInfo.DetailedState.CONNECTING, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.ASSOCIATED, true, true,
+                    NetworkInfo.State.CONNECTING, NetworkInfo.DetailedState.CONNECTING, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.FOUR_WAY_HANDSHAKE, true, true,
+                    NetworkInfo.State.CONNECTING, NetworkInfo.DetailedState.AUTHENTICATING, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.GROUP_HANDSHAKE, true, true,
+                    NetworkInfo.State.CONNECTING, NetworkInfo.DetailedState.AUTHENTICATING, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.COMPLETED, true, true,
+                    NetworkInfo.State.CONNECTING, NetworkInfo.DetailedState.AUTHENTICATING, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.COMPLETED, true, true,
+                    NetworkInfo.State.CONNECTING, NetworkInfo.DetailedState.OBTAINING_IPADDR, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.COMPLETED, true, true,
+                    NetworkInfo.State.CONNECTED, NetworkInfo.DetailedState.CONNECTED, TelephonyManager.DATA_DISCONNECTED },
+            // ローミング
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.ASSOCIATING, true, true,
+                    NetworkInfo.State.CONNECTED, NetworkInfo.DetailedState.CONNECTED, TelephonyManager.DATA_DISCONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.FOUR_WAY_HANDSHAKE, true, true,
+                    NetworkInfo.State.CONNECTED, NetworkInfo.DetailedState.CONNECTED, TelephonyManager.DATA_DISCONNECTED },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.COMPLETED, true, true,
+                    NetworkInfo.State.CONNECTED, NetworkInfo.DetailedState.CONNECTED, TelephonyManager.DATA_DISCONNECTED },
+            // 切断
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.DISCONNECTED, true, true,
+                    NetworkInfo.State.DISCONNECTED, NetworkInfo.DetailedState.DISCONNECTED, TelephonyManager.DATA_CONNECTING },
+            { WifiManager.WIFI_STATE_ENABLED, SupplicantState.SCANNING, true, true,
+                    NetworkInfo.State.DISCONNECTED, NetworkInfo.DetailedState.SCANNING, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_DISABLING, SupplicantState.SCANNING, true, false,
+                    NetworkInfo.State.DISCONNECTED, NetworkInfo.DetailedState.DISCONNECTED, TelephonyManager.DATA_CONNECTED },
+            { WifiManager.WIFI_STATE_DISABLED, null, false, false,
+                    NetworkInfo.State.DISCONNECTED, NetworkInfo.DetailedState.DISCONNECTED, TelephonyManager.DATA_CONNECTED },
+    };
+
+    // 記録した周波数(MHz) (2.4GHz/5GHz/6GHz/60GHz 帯、および変換できないもの)
+    private static final int[] RECORDED_FREQUENCIES = {
+            2412, 2437, 2462, 2472, 2484, 5180, 5200, 5260, 5500, 5580, 5745, 5825, 4920, 5035,
+            5955, 6115, 6415, 7115, 58320, 60480, 2400, 0, -1,
+    };
+
+    // 記録したIPアドレス (WifiInfo.getIpAddress() / DhcpInfo.gateway の値)
+    private static final int[] RECORDED_ADDRESSES = {
+            0x0100a8c0, 0x6400a8c0, 0x0101a8c0, 0x0a00000a, 0x0100000a, 0xfe01a8c0, 0x0101fea9, 0xffffffff, 0,
+    };
+
+    // 記録した信号強度(dBm) (接続中の定期更新で変化する値)
+    private static final int[] RECORDED_RSSI = {
+            -52, -53, -53, -55, -58, -57, -61, -64, -63, -60, -56, -54,
+    };
+
+    private StateDerivation.Input[] mInputs;
+    private final InfoFormatter mFormatter = new InfoFormatter();
+    private int mRssiIndex = 0;
+
+    @Setup
+    public void setUp() {
+        mInputs = new StateDerivation.Input[RECORDED_INPUTS.length * 2];
+        for (int i = 0; i < mInputs.length; i++) {
+            Object[] recorded = RECORDED_INPUTS[i % RECORDED_INPUTS.length];
+            StateDerivation.Input in = new StateDerivation.Input();
+            in.wifiState = (Integer) recorded[0];
+            in.supplicantState = (SupplicantState) recorded[1];
+            in.supplicantConnected = (Boolean) recorded[2];
+            in.wifiAvailable = (Boolean) recorded[3];
+            in.wifiNetworkState = (NetworkInfo.State) recorded[4];
+            in.wifiDetailedState = (NetworkInfo.DetailedState) recorded[5];
+            in.dataState = (Integer) recorded[6];
+            // 後半はモバイルネットワーク状態を表示する設定
+            in.showDataNetwork = i >= RECORDED_INPUTS.length;
+            in.clearOnScanning = i >= RECORDED_INPUTS.length;
+            mInputs[i] = in;
+        }
+    }
+
+    @Benchmark
+    public States deriveState() {
+        States state = States.STATE_DISABLED;
+        for (StateDerivation.Input in : mInputs) {
+            StateDerivation.Result result = StateDerivation.derive(in, state);
+            if (result != null) {
+                state = result.getState();
+            }
+        }
+        return state;
+    }
+
+    @Benchmark
+    public int frequencyToChannel() {
+        int sum = 0;
+        for (int freq : RECORDED_FREQUENCIES) {
+            sum += NetworkStateInfo.convertFrequencyToChannel(freq);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void frequencyToBand(Blackhole blackhole) {
+        for (int freq : RECORDED_FREQUENCIES) {
+            blackhole.consume(WifiChannel.toBand(freq));
+        }
+    }
+
+    @Benchmark
+    public String extraInfoUnchanged() {
+        return mFormatter.formatExtraInfo(-55, 3, 5180, 36, WifiChannel.Band.BAND_5GHZ, 80, 433, "2001:db8::1");
+    }
+
+    @Benchmark
+    public String extraInfoRssiChanged() {
+        int rssi = RECORDED_RSSI[mRssiIndex];
+        mRssiIndex = (mRssiIndex + 1) % RECORDED_RSSI.length;
+        return mFormatter.formatExtraInfo(rssi, WifiManager.calculateSignalLevel(rssi, 5), 5180, 36,
+                WifiChannel.Band.BAND_5GHZ, 80, 433, "2001:db8::1");
+    }
+
+    @Benchmark
+    public void ipAddressToString(Blackhole blackhole) {
+        for (int address : RECORDED_ADDRESSES) {
+            blackhole.consume(NetworkStateInfo.int2IpAddress(address));
+        }
+    }
+}
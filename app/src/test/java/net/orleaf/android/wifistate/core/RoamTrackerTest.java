@@ -0,0 +1,52 @@
+package net.orleaf.android.wifistate.core;
+
+import android.net.wifi.SupplicantState;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * RoamTracker のテスト
+ */
+public class RoamTrackerTest {
+    private static final String SSID = "\"home\"";
+    private static final String AP1 = "00:11:22:33:44:01";
+    private static final String AP2 = "00:11:22:33:44:02";
+
+    /**
+     * 切り替え前の信号強度は接続時ではなく直近の定期取得の値
+     */
+    @Test
+    public void roamUsesLatestSampledRssi() {
+        RoamTracker tracker = new RoamTracker();
+        tracker.onSupplicantState(SupplicantState.COMPLETED, 0);
+        assertNull(tracker.onConnected(SSID, AP1, -45, 1, 0));
+        // 接続後、徐々に弱くなる
+        for (int i = 1; i <= 10; i++) {
+            tracker.onSignal(AP1, -45 - i * 4);
+        }
+        tracker.onSupplicantState(SupplicantState.ASSOCIATING, 60000);
+        tracker.onSupplicantState(SupplicantState.COMPLETED, 60100);
+        // 切り替え後の値が先に取得された場合は切り替え前の値として扱わない
+        tracker.onSignal(AP2, -50);
+        RoamTracker.Roam roam = tracker.onConnected(SSID, AP2, -50, 36, 60200);
+        assertNotNull(roam);
+        assertEquals(-85, roam.mRssiBefore);
+        assertEquals(-50, roam.mRssiAfter);
+        assertEquals(1, roam.mChannelBefore);
+        assertEquals(36, roam.mChannelAfter);
+        assertEquals(100, roam.mGap);
+    }
+
+    @Test
+    public void signalBeforeConnectIsIgnored() {
+        RoamTracker tracker = new RoamTracker();
+        tracker.onSignal(AP1, -90);
+        tracker.onConnected(SSID, AP1, -45, 1, 0);
+        RoamTracker.Roam roam = tracker.onConnected(SSID, AP2, -50, 36, 1000);
+        assertEquals(-45, roam.mRssiBefore);
+    }
+}
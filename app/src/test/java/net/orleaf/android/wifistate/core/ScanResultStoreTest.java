@@ -0,0 +1,141 @@
+package net.orleaf.android.wifistate.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ScanResultStore のテスト (BSSID の変換・ハッシュ表)
+ */
+public class ScanResultStoreTest {
+    private static final int SLOTS = ScanResultStore.MIN_CAPACITY * 2;  // 最小容量のハッシュ表の大きさ
+
+    private static String format(long bssid) {
+        return String.format("%02x:%02x:%02x:%02x:%02x:%02x",
+                (bssid >> 40) & 0xff, (bssid >> 32) & 0xff, (bssid >> 24) & 0xff,
+                (bssid >> 16) & 0xff, (bssid >> 8) & 0xff, bssid & 0xff);
+    }
+
+    @Test
+    public void packBssid() {
+        assertEquals(0x001122aabbccL, ScanResultStore.packBssid("00:11:22:aa:bb:cc"));
+        assertEquals(0x001122aabbccL, ScanResultStore.packBssid("00:11:22:AA:BB:CC"));
+        // すべて 0xff でも不正な形式と区別できる
+        assertEquals(0xffffffffffffL, ScanResultStore.packBssid("ff:ff:ff:ff:ff:ff"));
+        assertEquals(0, ScanResultStore.packBssid("00:00:00:00:00:00"));
+    }
+
+    @Test
+    public void packInvalidBssid() {
+        String[] invalid = {
+                null,
+                "",
+                "00:11:22:aa:bb",
+                "00:11:22:aa:bb:cc:",
+                "00-11-22-aa-bb-cc",
+                "0:011:22:aa:bb:cc",
+                "00:11:22:aa:bb:cg",
+                " 0:11:22:aa:bb:cc",
+        };
+        for (String bssid : invalid) {
+            assertEquals(bssid, ScanResultStore.NO_BSSID, ScanResultStore.packBssid(bssid));
+        }
+    }
+
+    /**
+     * 同じ位置に衝突する BSSID・末尾から先頭に折り返す BSSID も検索できる
+     */
+    @Test
+    public void collisionsWrapAround() {
+        ScanResultStore store = new ScanResultStore();
+        store.clear(4);
+        // ハッシュ表の末尾に衝突する BSSID と先頭に入る BSSID を探す
+        List<Long> last = new ArrayList<Long>();
+        long first = -1;
+        for (long bssid = 1; last.size() < 4 || first < 0; bssid++) {
+            int slot = store.slotOf(bssid);
+            if (slot == SLOTS - 1 && last.size() < 4) {
+                last.add(bssid);
+            } else if (slot == 0 && first < 0) {
+                first = bssid;
+            }
+        }
+        // 先頭を先に埋めておき、折り返した探索がそれを飛ばすことを確認する
+        store.add(format(first), 2412, -40, 0);
+        for (int i = 0; i < 3; i++) {
+            store.add(format(last.get(i)), 5180 + i * 20, -50 - i, 1);
+        }
+        assertEquals(4, store.size());
+        assertEquals(2412, store.getFrequency(first));
+        assertEquals(-40, store.getLevel(first));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(5180 + i * 20, store.getFrequency(last.get(i)));
+            assertEquals(-50 - i, store.getLevel(last.get(i)));
+            assertEquals(1, store.getChannelWidth(last.get(i)));
+        }
+        // 同じ位置に衝突する未登録の BSSID
+        assertEquals(-1, store.getFrequency(last.get(3)));
+        assertEquals(Integer.MIN_VALUE, store.getLevel(last.get(3)));
+        assertEquals(-1, store.getChannelWidth(last.get(3)));
+    }
+
+    /**
+     * 不正な形式・重複した BSSID は無視する (先に追加した値を残す)
+     */
+    @Test
+    public void ignoresInvalidAndDuplicates() {
+        ScanResultStore store = new ScanResultStore();
+        store.clear(3);
+        store.add("00:11:22:aa:bb:cc", 2412, -40, 0);
+        store.add("00:11:22:AA:BB:CC", 5180, -70, 1);
+        store.add("invalid", 2437, -60, 0);
+        assertEquals(1, store.size());
+        assertEquals(2412, store.getFrequency(0x001122aabbccL));
+        assertEquals(-40, store.getLevel(0x001122aabbccL));
+    }
+
+    /**
+     * 容量を拡張・再利用して作り直しても以前の結果が残らない
+     */
+    @Test
+    public void rebuildWithFewerEntries() {
+        ScanResultStore store = new ScanResultStore();
+        assertTrue(store.isStale());
+        // 最小容量を超える数
+        int count = ScanResultStore.MIN_CAPACITY * 3;
+        store.clear(count);
+        for (int i = 0; i < count; i++) {
+            store.add(format(0x001122000000L + i), 2412 + i, -30 - i, 0);
+        }
+        assertEquals(count, store.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(2412 + i, store.getFrequency(0x001122000000L + i));
+        }
+
+        // 少ない数で作り直す (配列は再利用)
+        store.clear(2);
+        store.add(format(0x001122000005L), 5180, -55, 1);
+        store.add(format(0x00aabb000000L), 5200, -65, 1);
+        assertEquals(2, store.size());
+        assertEquals(5180, store.getFrequency(0x001122000005L));
+        assertEquals(-55, store.getLevel(0x001122000005L));
+        assertEquals(5200, store.getFrequency(0x00aabb000000L));
+        for (int i = 0; i < count; i++) {
+            if (i != 5) {
+                assertEquals(-1, store.getFrequency(0x001122000000L + i));
+            }
+        }
+
+        // スキャン結果なし
+        store.markStale();
+        store.rebuild(null);
+        assertFalse(store.isStale());
+        assertEquals(0, store.size());
+        assertEquals(-1, store.getFrequency(0x001122000005L));
+    }
+}
@@ -0,0 +1,229 @@
+package net.orleaf.android.wifistate.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SignalHistory / SignalSeries のテスト
+ */
+public class SignalHistoryTest {
+    private static final long BASE = 3600L * 24 * 365;  // 時刻の起点(秒) (1時間単位に揃える)
+    private static final long DAY = 3600L * 24;
+
+    /**
+     * 記録した点をそのまま復号できる
+     */
+    @Test
+    public void seriesRoundTrip() {
+        SignalSeries series = new SignalSeries(4, 8);
+        final List<long[]> expected = new ArrayList<long[]>();
+        for (int i = 0; i < 500; i++) {
+            long time = BASE + i * 15 + (i % 7);
+            int rssi = -40 - (i * 13) % 60;
+            int minRssi = Math.max(-127, rssi - (i % 3) * 20);
+            int maxRssi = Math.min(0, rssi + (i % 5) * 10);
+            int speed = (i % 11 == 0) ? 866 : 144;
+            int freq = (i % 17 == 0) ? 5180 : 2412;
+            series.append(time, rssi, minRssi, maxRssi, speed, freq);
+            expected.add(new long[] { time, rssi, minRssi, maxRssi, speed, freq });
+        }
+        final List<long[]> actual = new ArrayList<long[]>();
+        series.forEach(0, new SignalSeries.Visitor() {
+            @Override
+            public void visit(long time, int rssi, int minRssi, int maxRssi, int speed, int freq) {
+                actual.add(new long[] { time, rssi, minRssi, maxRssi, speed, freq });
+            }
+        });
+        // 容量を超えた古い点は上書きされる
+        List<long[]> tail = expected.subList(expected.size() - actual.size(), expected.size());
+        assertEquals(series.getPointCount(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            for (int j = 0; j < 6; j++) {
+                assertEquals("point " + i + " field " + j, tail.get(i)[j], actual.get(i)[j]);
+            }
+        }
+    }
+
+    /**
+     * 期間全体を保持する時系列がなければ、最も古い値を保持する時系列から集計する
+     */
+    @Test
+    public void fallsBackToOldestTier() {
+        SignalHistory history = new SignalHistory();
+        long now = BASE;
+        // 最初の点のみ弱い信号 (取得した値の時系列からは上書きで消える)
+        history.append(now, -90, 144, 2412);
+        for (int i = 0; i < 14 * DAY / 15; i++) {
+            now += 15;
+            history.append(now, -50, 144, 2412);
+        }
+        SignalHistory.Summary summary = history.getSummary(now, 30 * DAY);
+        assertEquals(-90, summary.getMinRssi());
+        assertEquals(-50, summary.getMaxRssi());
+    }
+
+    /**
+     * 集計した時系列でも最小値・最大値は平均ではなく元の値
+     */
+    @Test
+    public void keepsMinMaxOnCoarseTiers() {
+        SignalHistory history = new SignalHistory();
+        long now = BASE;
+        for (int i = 0; i < 14 * DAY / 15; i++) {
+            now += 15;
+            // 1分に1点だけ弱い・強い信号が混ざる
+            int rssi = (i % 4 == 0) ? -80 : (i % 4 == 2) ? -30 : -55;
+            history.append(now, rssi, 144, 2412);
+        }
+        // 取得した値の時系列は期間全体を保持していない
+        SignalHistory.Summary summary = history.getSummary(now, 10 * DAY);
+        assertEquals(-80, summary.getMinRssi());
+        assertEquals(-30, summary.getMaxRssi());
+    }
+
+    /**
+     * 集計中の区間 (1分・1時間) も統計に含める
+     */
+    @Test
+    public void includesOpenBuckets() {
+        SignalHistory history = new SignalHistory();
+        long now = BASE;
+        history.append(now, -90, 144, 2412);
+        // 1分・1時間の時系列とも上書きされるまで記録
+        while (now < BASE + 120 * DAY) {
+            now += 60;
+            history.append(now, -50, 144, 2412);
+        }
+        SignalHistory.Summary summary = history.getSummary(now, 200 * DAY);
+        assertEquals(-90, summary.getMinRssi());
+        assertEquals(-50, summary.getMaxRssi());
+
+        // 現在の1時間の区間 (1分の区間は記録済み)
+        now = now - now % 3600 + 3600;
+        history.append(now, -15, 144, 2412);
+        history.append(now + 60, -50, 144, 2412);
+        history.append(now + 120, -50, 144, 2412);
+        summary = history.getSummary(now + 120, 200 * DAY);
+        assertEquals(-15, summary.getMaxRssi());
+
+        // 現在の1分の区間
+        history.append(now + 125, -5, 144, 2412);
+        summary = history.getSummary(now + 125, 200 * DAY);
+        assertEquals(-5, summary.getMaxRssi());
+    }
+
+    /**
+     * 1分に満たない記録も統計に含める
+     */
+    @Test
+    public void summarizesRecentPoints() {
+        SignalHistory history = new SignalHistory();
+        history.append(BASE + 10, -60, 144, 2412);
+        history.append(BASE + 20, -40, 144, 2412);
+        SignalHistory.Summary summary = history.getSummary(BASE + 30, 3600);
+        assertEquals(2, summary.getCount());
+        assertEquals("-60/-50/-40dBm 144Mbps", summary.toString());
+    }
+
+    /**
+     * 保存した履歴を読み込むと、集計中の区間も含めて同じ統計になる
+     */
+    @Test
+    public void savedHistoryIsRestored() throws IOException {
+        File file = File.createTempFile("signal_history", null);
+        try {
+            SignalHistory history = new SignalHistory(file);
+            long now = BASE;
+            for (int i = 0; i < 3 * DAY / 15; i++) {
+                now += 15;
+                history.append(now, -40 - i % 50, 144, 2412);
+            }
+            assertTrue(history.save());
+
+            SignalHistory restored = new SignalHistory(file);
+            assertEquals(history.getStorageStats(), restored.getStorageStats());
+            long[] periods = { 60, 3600, DAY, 30 * DAY };
+            for (long period : periods) {
+                assertEquals(history.getSummary(now, period).toString(), restored.getSummary(now, period).toString());
+                assertEquals(history.getSummary(now, period).getCount(), restored.getSummary(now, period).getCount());
+            }
+            // 読み込んだ履歴に続けて記録できる
+            restored.append(now + 15, -5, 144, 2412);
+            assertEquals(-5, restored.getSummary(now + 15, 60).getMaxRssi());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * 取得した値のブロックが埋まるごとに保存する
+     */
+    @Test
+    public void savesWhenBlockCompletes() throws IOException {
+        File file = File.createTempFile("signal_history", null);
+        file.delete();
+        try {
+            SignalHistory history = new SignalHistory(file);
+            long now = BASE;
+            int points = 0;
+            while (!file.exists()) {
+                now += 15;
+                history.append(now, -50, 144, 2412);
+                points++;
+                assertTrue("points=" + points, points < 1000);
+            }
+            // 保存時点までの点は失われない
+            SignalHistory restored = new SignalHistory(file);
+            assertEquals(points, restored.getSummary(now, DAY).getCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * 破損した保存内容は読み込まない
+     */
+    @Test
+    public void corruptedFileIsIgnored() throws IOException {
+        File file = File.createTempFile("signal_history", null);
+        try {
+            SignalHistory history = new SignalHistory(file);
+            history.append(BASE, -50, 144, 2412);
+            assertTrue(history.save());
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.seek(raf.length() / 2);
+                int b = raf.read();
+                raf.seek(raf.length() / 2);
+                raf.write(b ^ 0xff);
+            } finally {
+                raf.close();
+            }
+            SignalHistory restored = new SignalHistory(file);
+            assertEquals(0, restored.getSummary(BASE, DAY).getCount());
+            // 読み込めなくても記録はできる
+            restored.append(BASE + 15, -50, 144, 2412);
+            assertEquals(1, restored.getSummary(BASE + 15, DAY).getCount());
+
+            // 空のファイル
+            raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+            } finally {
+                raf.close();
+            }
+            assertFalse(new SignalHistory(file).getSummary(BASE, DAY).getCount() > 0);
+        } finally {
+            file.delete();
+        }
+    }
+}
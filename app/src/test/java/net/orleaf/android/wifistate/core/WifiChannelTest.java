@@ -0,0 +1,124 @@
+package net.orleaf.android.wifistate.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * WifiChannel のテスト
+ */
+public class WifiChannelTest {
+
+    /**
+     * 規格上の定義による変換 (比較用)
+     *
+     * @return チャネル番号 (-1:変換不可)
+     */
+    private static int referenceChannel(int freq) {
+        if (freq == 2484) {
+            return 14;
+        } else if (freq >= 2412 && freq <= 2472 && (freq - 2407) % 5 == 0) {
+            return (freq - 2407) / 5;
+        } else if (freq >= 4915 && freq <= 4980 && freq % 5 == 0) {
+            return (freq - 4000) / 5;
+        } else if (freq >= 5160 && freq <= 5885 && freq % 5 == 0) {
+            return (freq - 5000) / 5;
+        } else if (freq == 5935) {
+            return 2;
+        } else if (freq >= 5955 && freq <= 7115 && freq % 5 == 0) {
+            return (freq - 5950) / 5;
+        } else if (freq >= 58320 && freq <= 69120 && (freq - 58320) % 2160 == 0) {
+            return (freq - 56160) / 2160;
+        }
+        return -1;
+    }
+
+    private static WifiChannel.Band referenceBand(int freq) {
+        if (referenceChannel(freq) < 0) {
+            return null;
+        } else if (freq < 3000) {
+            return WifiChannel.Band.BAND_2_4GHZ;
+        } else if (freq < 5925) {
+            return WifiChannel.Band.BAND_5GHZ;
+        } else if (freq < 8000) {
+            return WifiChannel.Band.BAND_6GHZ;
+        }
+        return WifiChannel.Band.BAND_60GHZ;
+    }
+
+    @Test
+    public void allFrequencies() {
+        for (int freq = -1; freq <= 80000; freq++) {
+            assertEquals("freq=" + freq, referenceChannel(freq), WifiChannel.toChannel(freq));
+            assertEquals("freq=" + freq, referenceBand(freq), WifiChannel.toBand(freq));
+        }
+        assertEquals(-1, WifiChannel.toChannel(Integer.MIN_VALUE));
+        assertEquals(-1, WifiChannel.toChannel(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void band24GHzEdges() {
+        assertEquals(-1, WifiChannel.toChannel(2407));
+        assertEquals(-1, WifiChannel.toChannel(2411));
+        assertEquals(1, WifiChannel.toChannel(2412));
+        assertEquals(-1, WifiChannel.toChannel(2413));
+        assertEquals(13, WifiChannel.toChannel(2472));
+        assertEquals(-1, WifiChannel.toChannel(2477));
+        assertEquals(14, WifiChannel.toChannel(2484));
+        assertEquals(-1, WifiChannel.toChannel(2485));
+        assertEquals(WifiChannel.Band.BAND_2_4GHZ, WifiChannel.toBand(2484));
+    }
+
+    @Test
+    public void band5GHzEdges() {
+        assertEquals(-1, WifiChannel.toChannel(4910));
+        assertEquals(183, WifiChannel.toChannel(4915));
+        assertEquals(196, WifiChannel.toChannel(4980));
+        assertEquals(-1, WifiChannel.toChannel(4985));
+        assertEquals(-1, WifiChannel.toChannel(5155));
+        assertEquals(32, WifiChannel.toChannel(5160));
+        assertEquals(36, WifiChannel.toChannel(5180));
+        assertEquals(-1, WifiChannel.toChannel(5182));
+        assertEquals(165, WifiChannel.toChannel(5825));
+        assertEquals(177, WifiChannel.toChannel(5885));
+        assertEquals(-1, WifiChannel.toChannel(5890));
+        assertEquals(WifiChannel.Band.BAND_5GHZ, WifiChannel.toBand(4915));
+        assertEquals(WifiChannel.Band.BAND_5GHZ, WifiChannel.toBand(5885));
+    }
+
+    @Test
+    public void band6GHzEdges() {
+        assertEquals(-1, WifiChannel.toChannel(5930));
+        assertEquals(2, WifiChannel.toChannel(5935));
+        assertEquals(-1, WifiChannel.toChannel(5950));
+        assertEquals(1, WifiChannel.toChannel(5955));
+        assertEquals(233, WifiChannel.toChannel(7115));
+        assertEquals(-1, WifiChannel.toChannel(7120));
+        assertEquals(WifiChannel.Band.BAND_6GHZ, WifiChannel.toBand(5935));
+        assertEquals(WifiChannel.Band.BAND_6GHZ, WifiChannel.toBand(7115));
+    }
+
+    @Test
+    public void band60GHzEdges() {
+        assertEquals(-1, WifiChannel.toChannel(56160));
+        assertEquals(1, WifiChannel.toChannel(58320));
+        assertEquals(-1, WifiChannel.toChannel(58325));
+        assertEquals(6, WifiChannel.toChannel(69120));
+        assertEquals(-1, WifiChannel.toChannel(71280));
+        assertEquals(WifiChannel.Band.BAND_60GHZ, WifiChannel.toBand(69120));
+        assertNull(WifiChannel.toBand(71280));
+    }
+
+    @Test
+    public void toWidth() {
+        assertEquals(20, WifiChannel.toWidth(0));
+        assertEquals(40, WifiChannel.toWidth(1));
+        assertEquals(80, WifiChannel.toWidth(2));
+        assertEquals(160, WifiChannel.toWidth(3));
+        assertEquals(160, WifiChannel.toWidth(4));
+        assertEquals(320, WifiChannel.toWidth(5));
+        assertEquals(-1, WifiChannel.toWidth(6));
+        assertEquals(-1, WifiChannel.toWidth(-1));
+    }
+}
@@ -0,0 +1,164 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AdaptiveInterval のテスト
+ *
+ * 擬似時計で障害の発生・回復を含む時系列を再現し、固定間隔 (基準間隔) と
+ * 疎通確認回数・障害の確定までの時間を比較する。
+ */
+public class AdaptiveIntervalTest {
+    private static final long BASE_INTERVAL = 5 * 1000;
+    private static final long MAX_INTERVAL = 60 * 1000;
+    private static final long CONFIRM_INTERVAL = 1000;
+    private static final int DOWN_THRESHOLD = 3;
+    private static final int UP_THRESHOLD = 2;
+    private static final long DURATION = 6 * 60 * 60 * 1000;
+
+    // 障害の [開始, 終了) (ミリ秒)
+    private static final long[][] OUTAGES = {
+            { 30 * 60 * 1000, 35 * 60 * 1000 },
+            { 2 * 60 * 60 * 1000 + 7777, 2 * 60 * 60 * 1000 + 3 * 60 * 1000 },
+            { 4 * 60 * 60 * 1000 + 59 * 1000, 4 * 60 * 60 * 1000 + 20 * 60 * 1000 },
+    };
+
+    /**
+     * シミュレーション結果
+     */
+    private static class Trace {
+        int probes;
+        int partialProbes;      // 一部の監視先のみ失敗している期間の疎通確認回数
+        long[] detectionLatency = new long[OUTAGES.length];
+    }
+
+    /**
+     * 擬似時計で監視を実行
+     *
+     * @param adaptive 間隔の自動調整 (null:基準間隔で固定)
+     * @param partial 一部の監視先のみ失敗している期間 [開始, 終了) (null:なし)
+     */
+    private static Trace simulate(AdaptiveInterval adaptive, long[] partial) {
+        ReachabilityStateMachine reachability = new ReachabilityStateMachine(DOWN_THRESHOLD, UP_THRESHOLD);
+        Trace trace = new Trace();
+        for (int i = 0; i < OUTAGES.length; i++) {
+            trace.detectionLatency[i] = -1;
+        }
+        long now = 0;
+        while (now < DURATION) {
+            int outage = findOutage(now);
+            boolean reachable = outage < 0;
+            boolean inPartial = partial != null && now >= partial[0] && now < partial[1];
+            boolean allReachable = reachable && !inPartial;
+            trace.probes++;
+            if (inPartial) {
+                trace.partialProbes++;
+            }
+            if (reachability.update(reachable, now) && !reachability.isReachable()) {
+                int index = (outage >= 0) ? outage : 0;
+                if (trace.detectionLatency[index] < 0) {
+                    trace.detectionLatency[index] = now - OUTAGES[index][0];
+                }
+            }
+            if (adaptive != null) {
+                boolean healthy = allReachable && reachability.isReachable();
+                now += adaptive.next(healthy, reachable ? 1000 : Prober.UNREACHABLE);
+            } else {
+                now += BASE_INTERVAL;
+            }
+        }
+        return trace;
+    }
+
+    private static int findOutage(long now) {
+        for (int i = 0; i < OUTAGES.length; i++) {
+            if (now >= OUTAGES[i][0] && now < OUTAGES[i][1]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static AdaptiveInterval newInterval(long seed) {
+        return new AdaptiveInterval(BASE_INTERVAL, MAX_INTERVAL, CONFIRM_INTERVAL, DOWN_THRESHOLD, new Random(seed));
+    }
+
+    @Test
+    public void detectionNoSlowerThanFixedInterval() {
+        Trace fixed = simulate(null, null);
+        for (long seed = 0; seed < 50; seed++) {
+            Trace trace = simulate(newInterval(seed), null);
+            for (int i = 0; i < OUTAGES.length; i++) {
+                long latency = trace.detectionLatency[i];
+                assertTrue("seed=" + seed + " outage=" + i + " latency=" + latency + " fixed=" + fixed.detectionLatency[i],
+                        latency >= 0 && latency <= fixed.detectionLatency[i]);
+            }
+        }
+    }
+
+    @Test
+    public void fewerProbesThanFixedInterval() {
+        Trace fixed = simulate(null, null);
+        for (long seed = 0; seed < 10; seed++) {
+            Trace adaptive = simulate(newInterval(seed), null);
+            assertTrue("fixed=" + fixed.probes + " adaptive=" + adaptive.probes, adaptive.probes * 4 < fixed.probes * 3);
+        }
+    }
+
+    @Test
+    public void maxIntervalKeepsDetectionWithinFixedInterval() {
+        AdaptiveInterval adaptive = newInterval(0);
+        // 最初の失敗まで(揺らぎを含む) + 確認間隔での再確認 <= 固定間隔での最短の確定時間
+        assertTrue(adaptive.getMaxInterval() * 1.1 + (DOWN_THRESHOLD - 1) * CONFIRM_INTERVAL
+                <= (DOWN_THRESHOLD - 1) * BASE_INTERVAL);
+        assertTrue(adaptive.getMaxInterval() > BASE_INTERVAL);
+        // 1回で確定する場合は延ばせない
+        AdaptiveInterval single = new AdaptiveInterval(BASE_INTERVAL, MAX_INTERVAL, CONFIRM_INTERVAL, 1, new Random(0));
+        assertEquals(BASE_INTERVAL, single.getMaxInterval());
+    }
+
+    @Test
+    public void confirmsQuicklyAfterFirstMiss() {
+        AdaptiveInterval adaptive = newInterval(2);
+        for (int i = 0; i < 20; i++) {
+            adaptive.next(true, 1000);
+        }
+        assertEquals(adaptive.getMaxInterval(), adaptive.getInterval());
+        // 確定に必要な回数までは確認間隔、以降は基準間隔
+        for (int i = 1; i < DOWN_THRESHOLD; i++) {
+            assertEquals(CONFIRM_INTERVAL, adaptive.next(false, Prober.UNREACHABLE));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(BASE_INTERVAL, adaptive.next(false, Prober.UNREACHABLE));
+        }
+        // 回復後は基準間隔から延ばす
+        assertEquals(BASE_INTERVAL, adaptive.getInterval());
+        adaptive.next(true, 1000);
+        assertTrue(adaptive.getInterval() > BASE_INTERVAL);
+    }
+
+    @Test
+    public void partialFailureKeepsBaseInterval() {
+        // 2時間目から1時間、一部の監視先のみ失敗
+        long[] partial = { 60 * 60 * 1000, 2 * 60 * 60 * 1000 };
+        Trace trace = simulate(newInterval(3), partial);
+        int fixedProbes = (int) ((partial[1] - partial[0]) / BASE_INTERVAL);
+        assertTrue("fixed=" + fixedProbes + " partial=" + trace.partialProbes, trace.partialProbes >= fixedProbes);
+    }
+
+    @Test
+    public void spikeShrinksInterval() {
+        AdaptiveInterval adaptive = newInterval(4);
+        for (int i = 0; i < 20; i++) {
+            adaptive.next(true, 10000);
+        }
+        assertEquals(adaptive.getMaxInterval(), adaptive.getInterval());
+        adaptive.next(true, 100000);
+        assertEquals(BASE_INTERVAL, adaptive.getInterval());
+    }
+}
@@ -0,0 +1,33 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * FailureDomain のテスト
+ */
+public class FailureDomainTest {
+
+    @Test
+    public void classify() {
+        assertEquals(FailureDomain.NONE, FailureDomain.classify(true, false, null, false));
+        assertEquals(FailureDomain.LAN, FailureDomain.classify(false, false, true, null));
+        assertEquals(FailureDomain.LINK, FailureDomain.classify(false, false, false, null));
+        // ARP テーブルを信用しない (参照していない) 場合はゲートウェイの無応答から無線区間とみなす
+        assertEquals(FailureDomain.LINK, FailureDomain.classify(false, false, null, true));
+        assertEquals(FailureDomain.DNS, FailureDomain.classify(false, true, null, false));
+        assertEquals(FailureDomain.UPSTREAM, FailureDomain.classify(false, true, null, true));
+        assertEquals(FailureDomain.UPSTREAM, FailureDomain.classify(false, null, null, null));
+    }
+
+    @Test
+    public void fromName() {
+        for (FailureDomain domain : FailureDomain.values()) {
+            assertEquals(domain, FailureDomain.fromName(domain.name()));
+        }
+        assertNull(FailureDomain.fromName(null));
+        assertNull(FailureDomain.fromName("UNKNOWN"));
+    }
+}
@@ -0,0 +1,43 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LatencyHistogram のテスト
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void relativeErrorIsWithinOneSixteenth() {
+        for (long value = 1; value <= LatencyHistogram.MAX_VALUE; value += 1 + value / 97) {
+            long reported = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+            assertTrue("value=" + value + " reported=" + reported, reported >= value);
+            assertTrue("value=" + value + " reported=" + reported, (reported - value) * 16 <= value);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(100000, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue("p50=" + p50, p50 >= 50000 && p50 <= 50000 * 17 / 16);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue("p99=" + p99, p99 >= 99000 && p99 <= 100000);
+    }
+
+    @Test
+    public void valuesAboveMaxAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(LatencyHistogram.MAX_VALUE * 2);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+        assertEquals(1, histogram.getTotalCount());
+    }
+}
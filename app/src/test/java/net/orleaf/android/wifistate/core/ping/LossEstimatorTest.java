@@ -0,0 +1,103 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * LossEstimator のテスト (手計算した値との比較)
+ */
+public class LossEstimatorTest {
+
+    /**
+     * 指数移動平均 (平滑化係数 1/16)
+     */
+    @Test
+    public void ewmaLoss() {
+        LossEstimator estimator = new LossEstimator(64, 4, 1000);
+        // 1000 × (1 - 15/16) = 62.5
+        estimator.recordLoss(1, 0);
+        assertEquals(62, estimator.getSummary(0).getEwmaLoss());
+        // 1000 × (1 - (15/16)^2) = 121.09
+        estimator.recordLoss(1, 0);
+        assertEquals(121, estimator.getSummary(0).getEwmaLoss());
+        // 121.09 × 15/16 = 113.53
+        estimator.recordReply(1000, 0);
+        assertEquals(113, estimator.getSummary(0).getEwmaLoss());
+    }
+
+    /**
+     * 直近N回のロス率 (古い結果は置き換える)
+     */
+    @Test
+    public void windowLoss() {
+        LossEstimator estimator = new LossEstimator(4, 4, 1000);
+        assertEquals(0, estimator.getSummary(0).getWindowCount());
+        estimator.recordLoss(2, 0);
+        estimator.recordReply(1000, 0);
+        LossSummary summary = estimator.getSummary(0);
+        assertEquals(666, summary.getWindowLoss());
+        assertEquals(3, summary.getWindowCount());
+        // 失敗2回・成功3回のうち直近4回 (失敗1回)
+        estimator.recordReply(1000, 0);
+        estimator.recordReply(1000, 0);
+        summary = estimator.getSummary(0);
+        assertEquals(250, summary.getWindowLoss());
+        assertEquals(4, summary.getWindowCount());
+        estimator.recordReply(1000, 0);
+        assertEquals(0, estimator.getSummary(0).getWindowLoss());
+    }
+
+    /**
+     * 直近一定期間のロス率 (スロット単位で期限切れ)
+     */
+    @Test
+    public void periodLoss() {
+        // 1秒 × 3スロット
+        LossEstimator estimator = new LossEstimator(64, 3, 1000);
+        estimator.recordLoss(1, 0);
+        estimator.recordReply(1000, 500);
+        LossSummary summary = estimator.getSummary(999);
+        assertEquals(500, summary.getPeriodLoss());
+        assertEquals(2, summary.getPeriodCount());
+
+        estimator.recordReply(1000, 1000);
+        estimator.recordReply(1000, 1500);
+        summary = estimator.getSummary(2999);
+        assertEquals(250, summary.getPeriodLoss());
+        assertEquals(4, summary.getPeriodCount());
+
+        // 0秒のスロットが期間外になる
+        summary = estimator.getSummary(3000);
+        assertEquals(0, summary.getPeriodLoss());
+        assertEquals(2, summary.getPeriodCount());
+
+        // 全スロット分以上経過
+        summary = estimator.getSummary(10000);
+        assertEquals(0, summary.getPeriodLoss());
+        assertEquals(0, summary.getPeriodCount());
+        // 直近N回は時間で期限切れにならない
+        assertEquals(250, summary.getWindowLoss());
+    }
+
+    /**
+     * RFC 3550 のジッタ J += (|D| - J) / 16
+     */
+    @Test
+    public void rfc3550Jitter() {
+        LossEstimator estimator = new LossEstimator(64, 4, 1000);
+        // 最初の応答では差分がない
+        estimator.recordReply(1000, 0);
+        assertEquals(0, estimator.getSummary(0).getJitter());
+        // J = 0 + (2000 - 0) / 16 = 125
+        estimator.recordReply(3000, 0);
+        assertEquals(125, estimator.getSummary(0).getJitter());
+        // J = 125 + (1000 - 125) / 16 = 179.69
+        estimator.recordReply(2000, 0);
+        assertEquals(179, estimator.getSummary(0).getJitter());
+        // 無応答を挟んでも直前の応答との差分 J = 179.69 + (0 - 179.69) / 16 = 168.46
+        estimator.recordLoss(1, 0);
+        estimator.recordReply(2000, 0);
+        assertEquals(168, estimator.getSummary(0).getJitter());
+    }
+}
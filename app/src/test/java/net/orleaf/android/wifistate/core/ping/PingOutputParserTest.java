@@ -0,0 +1,74 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * PingOutputParser のテスト
+ */
+public class PingOutputParserTest {
+
+    private static int parse(PingOutputParser parser, String output, final List<long[]> replies) throws IOException {
+        return parser.parse(new ByteArrayInputStream(output.getBytes("US-ASCII")), new BatchProber.ReplyListener() {
+            @Override
+            public void onReply(int seq, int ttl, long time) {
+                replies.add(new long[] { seq, ttl, time });
+            }
+        });
+    }
+
+    @Test
+    public void repliesAndSummary() throws IOException {
+        String output = "PING 192.168.0.1 (192.168.0.1) 56(84) bytes of data.\n" +
+                "64 bytes from 192.168.0.1: icmp_seq=1 ttl=64 time=1.23 ms\n" +
+                "64 bytes from 192.168.0.1: icmp_seq=3 ttl=63 time=10.5 ms\n" +
+                "\n" +
+                "--- 192.168.0.1 ping statistics ---\n" +
+                "3 packets transmitted, 2 received, 33% packet loss, time 2003ms\n" +
+                "rtt min/avg/max/mdev = 1.230/5.865/10.500/4.635 ms\n";
+        PingOutputParser parser = new PingOutputParser();
+        List<long[]> replies = new ArrayList<long[]>();
+        assertEquals(2, parse(parser, output, replies));
+        assertEquals(3, parser.getTransmitted());
+        assertEquals(2, parser.getReceived());
+        assertEquals(1, replies.get(0)[0]);
+        assertEquals(64, replies.get(0)[1]);
+        assertEquals(1230, replies.get(0)[2]);
+        assertEquals(3, replies.get(1)[0]);
+        assertEquals(10500, replies.get(1)[2]);
+    }
+
+    @Test
+    public void busyboxSummary() throws IOException {
+        String output = "64 bytes from 10.0.0.1: seq=0 ttl=64 time=0.512 ms\n" +
+                "2 packets transmitted, 1 packets received, 50% packet loss\n";
+        PingOutputParser parser = new PingOutputParser();
+        assertEquals(1, parse(parser, output, new ArrayList<long[]>()));
+        assertEquals(2, parser.getTransmitted());
+        assertEquals(1, parser.getReceived());
+    }
+
+    @Test
+    public void duplicatesCountedOnceInSummary() throws IOException {
+        String output = "64 bytes from 192.168.0.1: icmp_seq=1 ttl=64 time=1.00 ms\n" +
+                "64 bytes from 192.168.0.1: icmp_seq=1 ttl=64 time=1.10 ms (DUP!)\n" +
+                "1 packets transmitted, 1 received, +1 duplicates, 0% packet loss, time 0ms\n";
+        PingOutputParser parser = new PingOutputParser();
+        assertEquals(2, parse(parser, output, new ArrayList<long[]>()));
+        assertEquals(1, parser.getReceived());
+    }
+
+    @Test
+    public void noSummary() throws IOException {
+        PingOutputParser parser = new PingOutputParser();
+        assertEquals(1, parse(parser, "64 bytes from ::1: icmp_seq=1 ttl=64 time=0.05 ms", new ArrayList<long[]>()));
+        assertEquals(-1, parser.getTransmitted());
+        assertEquals(-1, parser.getReceived());
+    }
+}
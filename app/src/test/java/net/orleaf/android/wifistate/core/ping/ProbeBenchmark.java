@@ -0,0 +1,78 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 疎通確認方式ごとの1秒あたりの確認回数 (ループバック)
+ *
+ * 1回あたりの CPU 時間は -prof perfnorm (子プロセスを含む) で比較する。
+ * ex) ./gradlew :app:jmh -Pjmh="ProbeBenchmark -prof perfnorm"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ProbeBenchmark {
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final int TIMEOUT = 1000;
+
+    private ServerSocket mServer;
+    private Thread mAcceptThread;
+    private TcpConnectProber mTcpProber;
+    private ExecPingProber mExecProber;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new ServerSocket(0, 50, InetAddress.getByName(LOOPBACK));
+        mAcceptThread = new Thread() {
+            @Override
+            public void run() {
+                while (!mServer.isClosed()) {
+                    try {
+                        Socket socket = mServer.accept();
+                        socket.close();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        mAcceptThread.start();
+        mTcpProber = new TcpConnectProber(mServer.getLocalPort());
+        mExecProber = new ExecPingProber();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        mServer.close();
+        mAcceptThread.join();
+    }
+
+    @Benchmark
+    public long tcpConnect() {
+        return mTcpProber.probe(LOOPBACK, TIMEOUT);
+    }
+
+    @Benchmark
+    public long execPing() {
+        return mExecProber.probe(LOOPBACK, TIMEOUT);
+    }
+}
@@ -0,0 +1,82 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ProbeEngine のテスト (代替方式の時間配分)
+ */
+public class ProbeEngineTest {
+
+    /**
+     * 指定時間待って指定の結果を返す疎通確認
+     */
+    private static class FakeProber implements Prober {
+        private final long mDelay;
+        private final long mResult;
+        int mCalls = 0;
+        int mLastTimeout = -1;
+
+        FakeProber(long delay, long result) {
+            mDelay = delay;
+            mResult = result;
+        }
+
+        @Override
+        public long probe(String target, int timeout) {
+            mCalls++;
+            mLastTimeout = timeout;
+            try {
+                Thread.sleep(Math.min(mDelay, timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return mResult;
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    @Test
+    public void primarySuccessSkipsFallback() {
+        FakeProber primary = new FakeProber(0, 100);
+        FakeProber fallback = new FakeProber(0, 200);
+        assertEquals(100, new ProbeEngine(primary, fallback).probe("127.0.0.1", 3000));
+        assertEquals(0, fallback.mCalls);
+    }
+
+    @Test
+    public void fastFailureUsesRemainingWholeSeconds() {
+        FakeProber primary = new FakeProber(50, Prober.UNREACHABLE);
+        FakeProber fallback = new FakeProber(0, 200);
+        assertEquals(200, new ProbeEngine(primary, fallback).probe("127.0.0.1", 3000));
+        assertEquals(1, fallback.mCalls);
+        // 残り時間を秒単位に切り捨てて渡す (ping コマンドの期限で超過しない)
+        assertEquals(2000, fallback.mLastTimeout);
+    }
+
+    @Test
+    public void timeoutSkipsFallback() {
+        FakeProber primary = new FakeProber(1000, Prober.UNREACHABLE);
+        FakeProber fallback = new FakeProber(0, 200);
+        long start = System.nanoTime();
+        assertEquals(Prober.UNREACHABLE, new ProbeEngine(primary, fallback).probe("127.0.0.1", 1000));
+        assertEquals(0, fallback.mCalls);
+        assertTrue((System.nanoTime() - start) / 1000000 < 1500);
+    }
+
+    @Test
+    public void totalTimeStaysWithinTimeout() {
+        FakeProber primary = new FakeProber(300, Prober.UNREACHABLE);
+        FakeProber fallback = new FakeProber(10000, Prober.UNREACHABLE);
+        long start = System.nanoTime();
+        new ProbeEngine(primary, fallback).probe("127.0.0.1", 2000);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertEquals(1000, fallback.mLastTimeout);
+        assertTrue("elapsed=" + elapsed, elapsed <= 2000 + 100);
+    }
+}
@@ -0,0 +1,221 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ProbeSession のテスト (画面ON/OFFの繰り返し)
+ *
+ * 応答しない UDP ポートに対して疎通確認を実行中の監視を開始・停止し続け、
+ * スレッド・ソケットが残らないこと、停止がタイムアウトを待たずに完了することを確認する。
+ */
+public class ProbeSessionTest {
+    private static final int TOGGLES = 2000;
+    private static final int TIMEOUT = 5000;        // 疎通確認のタイムアウト(ミリ秒) (停止はこれを待たない)
+    private static final long STOP_LIMIT = 500;     // 停止完了までの許容時間(ミリ秒)
+    private static final String[] TARGETS = { "127.0.0.1", "127.0.0.1" };
+
+    private DatagramSocket mSilent;
+
+    /**
+     * 疎通確認を繰り返す周期処理
+     */
+    private static class Cycle implements Runnable {
+        final ProbeSession mSession;
+        final QuorumProber mProber;
+
+        Cycle(ProbeSession session) {
+            mSession = session;
+            mProber = new QuorumProber(session.getEngine(), session.getExecutor());
+        }
+
+        @Override
+        public void run() {
+            if (mSession.isStopped()) {
+                return;
+            }
+            try {
+                mProber.probe(TARGETS, 1, TIMEOUT);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                mSession.getExecutor().schedule(this, 10, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // 停止済み
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        // 受信するが応答しない
+        mSilent = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @After
+    public void tearDown() {
+        mSilent.close();
+    }
+
+    private ProbeSession newSession(final CountDownLatch probing) {
+        final UdpEchoProber udp = new UdpEchoProber(mSilent.getLocalPort());
+        Prober prober = new Prober() {
+            @Override
+            public long probe(String target, int timeout) {
+                probing.countDown();
+                return udp.probe(target, timeout);
+            }
+
+            @Override
+            public void cancel() {
+                udp.cancel();
+            }
+        };
+        return new ProbeSession(new ProbeEngine(prober, null), 1 + TARGETS.length);
+    }
+
+    @Test(timeout = 120000)
+    public void toggleWithoutLeaks() throws Exception {
+        // 初回のみ確保されるもの (乱数源など) を除くため、1回実行してから数える
+        CountDownLatch warmup = new CountDownLatch(1);
+        ProbeSession first = newSession(warmup);
+        first.start(new Cycle(first));
+        assertTrue(warmup.await(5, TimeUnit.SECONDS));
+        first.stop();
+        assertTrue(first.awaitStopped(STOP_LIMIT));
+        int fds = countOpenFiles();
+
+        List<ProbeSession> sessions = new ArrayList<ProbeSession>();
+        for (int i = 0; i < TOGGLES; i++) {
+            CountDownLatch probing = new CountDownLatch(1);
+            ProbeSession session = newSession(probing);
+            session.start(new Cycle(session));
+            if (i % 100 == 0) {
+                // 疎通確認の待機中に停止してもタイムアウトを待たない
+                assertTrue(probing.await(5, TimeUnit.SECONDS));
+                long start = System.nanoTime();
+                session.stop();
+                assertTrue(session.awaitStopped(STOP_LIMIT));
+                long elapsed = (System.nanoTime() - start) / 1000000;
+                assertTrue("elapsed=" + elapsed, elapsed < STOP_LIMIT);
+            } else {
+                session.stop();
+            }
+            sessions.add(session);
+        }
+        for (ProbeSession session : sessions) {
+            assertTrue(session.awaitStopped(STOP_LIMIT));
+        }
+        assertEquals(0, waitForThreads(STOP_LIMIT));
+        if (fds >= 0) {
+            int leaked = countOpenFiles() - fds;
+            assertTrue("leaked=" + leaked, leaked <= 0);
+        }
+    }
+
+    @Test
+    public void stoppedSessionRejectsCycles() {
+        ProbeSession session = newSession(new CountDownLatch(1));
+        session.stop();
+        assertTrue(session.isStopped());
+        try {
+            session.start(new Cycle(session));
+            assertTrue(false);
+        } catch (RejectedExecutionException e) {
+            // 停止後は実行しない
+        }
+    }
+
+    /**
+     * 名前解決が応答しない間も疎通確認のスレッドは占有されない
+     */
+    @Test
+    public void blockedResolverDoesNotHoldProbeThreads() throws Exception {
+        ProbeSession session = new ProbeSession(ProbeEngine.create(ProbeEngine.METHOD_UDP), 1);
+        final CountDownLatch resolving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        ResolverCache cache = new ResolverCache(new ResolverCache.Resolver() {
+            private boolean mResolved = false;
+
+            @Override
+            public InetAddress resolve(String host) {
+                if (mResolved) {
+                    // 再解決は応答しない (DNS 障害)
+                    resolving.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                mResolved = true;
+                return loopback;
+            }
+        }, 1000, 1000, 500);
+        try {
+            assertEquals(loopback, cache.resolve("example.invalid", 0));
+            cache.refreshAsync(session.getResolverExecutor(), 900);
+            assertTrue(resolving.await(5, TimeUnit.SECONDS));
+            // 疎通確認のスレッド (1つのみ) で実行できる
+            final CountDownLatch probed = new CountDownLatch(1);
+            session.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    probed.countDown();
+                }
+            });
+            assertTrue(probed.await(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            session.stop();
+        }
+        assertTrue(session.awaitStopped(STOP_LIMIT));
+    }
+
+    /**
+     * 監視スレッドが終了するまで待つ
+     *
+     * @return 残っている監視スレッドの数
+     */
+    private static int waitForThreads(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        int count;
+        while ((count = countThreads()) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return count;
+    }
+
+    private static int countThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(ProbeSession.THREAD_NAME) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 使用中のファイル記述子の数 (-1:不明)
+     */
+    private static int countOpenFiles() {
+        String[] fds = new File("/proc/self/fd").list();
+        return (fds != null) ? fds.length : -1;
+    }
+}
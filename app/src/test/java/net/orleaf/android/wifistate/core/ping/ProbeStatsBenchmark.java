@@ -0,0 +1,51 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 統計の更新・参照の競合時の所要時間
+ *
+ * 更新スレッドと参照スレッドを同時に実行する。uncontended は更新のみ1スレッド。
+ * ex) ./gradlew :app:jmh -Pjmh="ProbeStatsBenchmark"
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ProbeStatsBenchmark {
+    private final ProbeStats mStats = new ProbeStats();
+
+    @Benchmark
+    @Group("uncontended")
+    public ProbeStats.Snapshot uncontendedRecord() {
+        return mStats.record(1, 1, true, 0);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public ProbeStats.Snapshot contendedRecord() {
+        return mStats.record(1, 1, true, 0);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public ProbeStats.Snapshot contendedRead() {
+        return mStats.getSnapshot();
+    }
+}
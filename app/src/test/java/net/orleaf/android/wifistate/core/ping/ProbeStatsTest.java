@@ -0,0 +1,102 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ProbeStats のテスト
+ */
+public class ProbeStatsTest {
+    private static final int WRITERS = 4;
+    private static final int RECORDS = 200000;
+
+    @Test
+    public void recordAndReset() {
+        ProbeStats stats = new ProbeStats();
+        stats.record(3, 2, true, 0);
+        ProbeStats.Snapshot snapshot = stats.record(3, 0, false, 1);
+        assertEquals(6, snapshot.getNumPing());
+        assertEquals(2, snapshot.getNumOk());
+        assertEquals(4, snapshot.getNumNg());
+        assertEquals(1, snapshot.getNumFail());
+        assertEquals(1, snapshot.getNumFlap());
+        assertFalse(snapshot.isReachable());
+        assertEquals("2/6", snapshot.toString());
+
+        stats.reset();
+        assertEquals(0, stats.getSnapshot().getNumPing());
+        assertTrue(stats.getSnapshot().isReachable());
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentWritersAndReaders() throws Exception {
+        final ProbeStats stats = new ProbeStats();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        Thread[] writers = new Thread[WRITERS];
+        for (int i = 0; i < WRITERS; i++) {
+            writers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < RECORDS; j++) {
+                        stats.record(2, j % 3 == 0 ? 1 : 2, true, 0);
+                    }
+                }
+            };
+            writers[i].start();
+        }
+        final Thread[] running = writers;
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                int last = 0;
+                while (isAnyAlive(running)) {
+                    ProbeStats.Snapshot snapshot = stats.getSnapshot();
+                    // 常に整合し、減少しない
+                    if (snapshot.getNumOk() + snapshot.getNumNg() != snapshot.getNumPing()) {
+                        error.compareAndSet(null, "torn: " + snapshot.getNumOk() + "+" + snapshot.getNumNg() +
+                                "!=" + snapshot.getNumPing());
+                    }
+                    if (snapshot.getNumPing() < last) {
+                        error.compareAndSet(null, "went backwards: " + snapshot.getNumPing() + "<" + last);
+                    }
+                    last = snapshot.getNumPing();
+                }
+            }
+        };
+        reader.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.join();
+        assertNull(error.get(), error.get());
+
+        ProbeStats.Snapshot snapshot = stats.getSnapshot();
+        assertEquals(WRITERS * RECORDS * 2, snapshot.getNumPing());
+        int ngPerWriter = (RECORDS + 2) / 3;
+        assertEquals(WRITERS * ngPerWriter, snapshot.getNumNg());
+        assertEquals(WRITERS * (RECORDS * 2 - ngPerWriter), snapshot.getNumOk());
+    }
+
+    private static boolean isAnyAlive(Thread[] threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * QuorumProber のテスト (監視先の数と1周期の所要時間)
+ *
+ * 応答しない監視先を増やしても、1周期の所要時間が (監視先の数 × タイムアウト) ではなく
+ * タイムアウト1回分程度に収まることを確認する。
+ */
+public class QuorumProberTest {
+    private static final int TARGETS = 8;
+    private static final int TIMEOUT = 500;     // 疎通確認のタイムアウト(ミリ秒)
+    private static final long MARGIN = 300;     // スレッドの起動等の許容時間(ミリ秒)
+
+    private ExecutorService mExecutor;
+
+    /**
+     * 指定時間待って指定の結果を返す疎通確認
+     */
+    private static class SlowProber implements Prober {
+        private final long mDelay;
+        private final long mResult;
+        final AtomicInteger mCalls = new AtomicInteger();
+
+        SlowProber(long delay, long result) {
+            mDelay = delay;
+            mResult = result;
+        }
+
+        @Override
+        public long probe(String target, int timeout) {
+            mCalls.incrementAndGet();
+            try {
+                Thread.sleep(mDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return UNREACHABLE;
+            }
+            return mResult;
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // 監視先の数だけ疎通確認用のスレッドを用意する (WifiStatePingService と同じ)
+        mExecutor = Executors.newFixedThreadPool(TARGETS);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    private static String[] targets(int count) {
+        String[] targets = new String[count];
+        for (int i = 0; i < count; i++) {
+            targets[i] = "192.0.2." + (i + 1);
+        }
+        return targets;
+    }
+
+    /**
+     * すべての監視先がタイムアウトしても、所要時間はタイムアウト1回分程度
+     */
+    @Test
+    public void cycleTimeIndependentOfTargetCount() throws InterruptedException {
+        SlowProber prober = new SlowProber(TIMEOUT, Prober.UNREACHABLE);
+        QuorumProber quorumProber = new QuorumProber(prober, mExecutor);
+        long start = System.nanoTime();
+        QuorumProber.Result result = quorumProber.probe(targets(TARGETS), 1, TIMEOUT);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed=" + elapsed, elapsed < TIMEOUT + MARGIN);
+        assertEquals(TARGETS, prober.mCalls.get());
+        assertEquals(0, result.getReachableCount());
+        assertEquals(TARGETS, result.getTotalAttempts());
+    }
+
+    /**
+     * 応答の遅い監視先が混ざっても、所要時間は最も遅い監視先の分のみ
+     */
+    @Test
+    public void slowRepliesAreCountedInParallel() throws InterruptedException {
+        SlowProber prober = new SlowProber(TIMEOUT - 100, 1000);
+        QuorumProber quorumProber = new QuorumProber(prober, mExecutor);
+        long start = System.nanoTime();
+        QuorumProber.Result result = quorumProber.probe(targets(TARGETS), 3, TIMEOUT);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed=" + elapsed, elapsed < TIMEOUT + MARGIN);
+        assertEquals(TARGETS, result.getReachableCount());
+        assertEquals(TARGETS, result.getTotalReplies());
+    }
+
+    /**
+     * タイムアウトを守らない監視先があっても、期限で打ち切って到達不可とみなす
+     */
+    @Test
+    public void overdueTargetsExpireAtDeadline() throws InterruptedException {
+        SlowProber prober = new SlowProber(10 * TIMEOUT, 1000);
+        QuorumProber quorumProber = new QuorumProber(prober, mExecutor);
+        long start = System.nanoTime();
+        QuorumProber.Result result = quorumProber.probe(targets(TARGETS), 2, TIMEOUT);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        // 期限は (試行回数 × タイムアウト + 余裕) で、監視先の数によらない
+        assertTrue("elapsed=" + elapsed, elapsed < 2 * TIMEOUT + 500 + MARGIN);
+        assertEquals(0, result.getReachableCount());
+    }
+}
@@ -0,0 +1,109 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ReachabilityStateMachine のテスト (連続回数・最小滞留時間・フラップ抑制)
+ */
+public class ReachabilityStateMachineTest {
+    private static final long INTERVAL = 1000;  // 疎通確認の間隔(ミリ秒)
+
+    /**
+     * 指定回数連続した場合のみ切り替える
+     */
+    @Test
+    public void switchesAfterConsecutiveResults() {
+        ReachabilityStateMachine machine = new ReachabilityStateMachine(3, 2, 0, 8, 60000);
+        long now = 0;
+        assertTrue(machine.isReachable());
+        assertFalse(machine.update(false, now += INTERVAL));
+        assertFalse(machine.update(false, now += INTERVAL));
+        assertTrue(machine.isReachable());
+        assertTrue(machine.update(false, now += INTERVAL));
+        assertFalse(machine.isReachable());
+        // 到達不可の間の失敗では変化しない
+        assertFalse(machine.update(false, now += INTERVAL));
+
+        assertFalse(machine.update(true, now += INTERVAL));
+        assertFalse(machine.isReachable());
+        assertTrue(machine.update(true, now += INTERVAL));
+        assertTrue(machine.isReachable());
+        assertEquals(0, machine.getFlapCount());
+    }
+
+    /**
+     * 途中で逆の結果があれば連続回数は数え直す
+     */
+    @Test
+    public void interruptedStreakRestarts() {
+        ReachabilityStateMachine machine = new ReachabilityStateMachine(3, 2, 0, 8, 60000);
+        long now = 0;
+        machine.update(false, now += INTERVAL);
+        machine.update(false, now += INTERVAL);
+        machine.update(true, now += INTERVAL);
+        machine.update(false, now += INTERVAL);
+        assertFalse(machine.update(false, now += INTERVAL));
+        assertTrue(machine.isReachable());
+        assertTrue(machine.update(false, now += INTERVAL));
+        assertFalse(machine.isReachable());
+    }
+
+    /**
+     * 切り替えた後は最小滞留時間が経過するまで切り替えない
+     */
+    @Test
+    public void holdsStateForMinimumDwell() {
+        ReachabilityStateMachine machine = new ReachabilityStateMachine(1, 1, 30000, 8, 60000);
+        // 最初の切り替えは保留しない
+        assertTrue(machine.update(false, 0));
+        assertFalse(machine.update(true, 1000));
+        assertFalse(machine.update(true, 29999));
+        assertFalse(machine.isReachable());
+        // 経過後は保留中の結果で切り替える
+        assertTrue(machine.update(true, 30000));
+        assertTrue(machine.isReachable());
+    }
+
+    /**
+     * 反転が続く間は到達不可に固定し、反転が半分以下に減ったら解除する
+     */
+    @Test
+    public void flappingHoldsUnreachable() {
+        // 4回の反転でフラップとみなし、2回以下で解除
+        ReachabilityStateMachine machine = new ReachabilityStateMachine(1, 1, 0, 4, 60000);
+        long now = 0;
+        // 失敗・成功を交互に繰り返す (0秒:失敗 〜 9秒:成功)
+        for (int i = 0; i < 10; i++) {
+            machine.update(i % 2 != 0, now);
+            if (i >= 3) {
+                assertTrue("i=" + i, machine.isFlapping());
+                assertFalse("i=" + i, machine.isReachable());
+            }
+            now += INTERVAL;
+        }
+        assertEquals(1, machine.getFlapCount());
+
+        // 成功が続いても、判定期間内の反転 (7〜9秒) が3回ある間は解除しない
+        assertFalse(machine.update(true, 66000));
+        assertTrue(machine.isFlapping());
+        assertFalse(machine.isReachable());
+        // 6・7秒の反転が期間外になったら解除して到達可能に戻す
+        assertTrue(machine.update(true, 67000));
+        assertFalse(machine.isFlapping());
+        assertTrue(machine.isReachable());
+        assertEquals(1, machine.getFlapCount());
+
+        // 再度フラップすると累計に加算
+        now = 200000;
+        for (int i = 0; i < 4; i++) {
+            machine.update(i % 2 != 0, now);
+            now += INTERVAL;
+        }
+        assertTrue(machine.isFlapping());
+        assertEquals(2, machine.getFlapCount());
+    }
+}
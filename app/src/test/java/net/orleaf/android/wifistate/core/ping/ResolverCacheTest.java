@@ -0,0 +1,124 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ResolverCache のテスト
+ */
+public class ResolverCacheTest {
+    private static final long TTL = 5 * 60 * 1000;
+    private static final long NEGATIVE_TTL = 30 * 1000;
+    private static final long REFRESH_AHEAD = 60 * 1000;
+
+    /**
+     * 呼び出し回数を数える名前解決方式
+     */
+    private static class CountingResolver implements ResolverCache.Resolver {
+        volatile boolean fail = false;
+        volatile int count = 0;
+
+        @Override
+        public InetAddress resolve(String host) throws UnknownHostException {
+            count++;
+            if (fail) {
+                throw new UnknownHostException(host);
+            }
+            return InetAddress.getByName("127.0.0.1");
+        }
+    }
+
+    @Test
+    public void positiveEntryRefreshedAhead() {
+        CountingResolver resolver = new CountingResolver();
+        ResolverCache cache = new ResolverCache(resolver, TTL, NEGATIVE_TTL, REFRESH_AHEAD);
+        cache.resolve("example.com", 0);
+        assertEquals(1, resolver.count);
+        cache.refresh(TTL - REFRESH_AHEAD - 1);
+        assertEquals(1, resolver.count);
+        cache.refresh(TTL - REFRESH_AHEAD);
+        assertEquals(2, resolver.count);
+    }
+
+    @Test
+    public void negativeEntryNotRefreshedEveryCycle() {
+        CountingResolver resolver = new CountingResolver();
+        resolver.fail = true;
+        ResolverCache cache = new ResolverCache(resolver, TTL, NEGATIVE_TTL, REFRESH_AHEAD);
+        assertNull(cache.resolve("example.com", 0));
+        assertFalse(cache.isHealthy());
+        // 5秒周期で、保持期間の半分が過ぎるまでは再解決しない
+        for (long now = 5000; now < NEGATIVE_TTL / 2; now += 5000) {
+            cache.refresh(now);
+        }
+        assertEquals(1, resolver.count);
+        cache.refresh(NEGATIVE_TTL / 2);
+        assertEquals(2, resolver.count);
+    }
+
+    @Test
+    public void keepsPreviousAddressOnFailure() {
+        CountingResolver resolver = new CountingResolver();
+        ResolverCache cache = new ResolverCache(resolver, TTL, NEGATIVE_TTL, REFRESH_AHEAD);
+        InetAddress address = cache.resolve("example.com", 0);
+        resolver.fail = true;
+        cache.refresh(TTL);
+        assertFalse(cache.isHealthy());
+        assertEquals(address, cache.resolve("example.com", TTL + 1));
+    }
+
+    @Test
+    public void refreshAsyncRunsOnExecutor() throws Exception {
+        final CountDownLatch resolving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingResolver slow = new CountingResolver() {
+            @Override
+            public InetAddress resolve(String host) throws UnknownHostException {
+                if (count > 0) {
+                    resolving.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new UnknownHostException(host);
+                    }
+                }
+                return super.resolve(host);
+            }
+        };
+        ResolverCache cache = new ResolverCache(slow, TTL, NEGATIVE_TTL, REFRESH_AHEAD);
+        cache.resolve("example.com", 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // 呼び出し元は再解決を待たない
+            cache.refreshAsync(executor, TTL);
+            assertTrue(resolving.await(5, TimeUnit.SECONDS));
+            // 再解決中は重ねて実行しない
+            cache.refreshAsync(executor, TTL);
+            release.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, slow.count);
+        assertTrue(cache.isHealthy());
+    }
+
+    @Test
+    public void numericAddress() {
+        assertTrue(ResolverCache.isNumericAddress("192.168.0.1"));
+        assertTrue(ResolverCache.isNumericAddress("::1"));
+        assertFalse(ResolverCache.isNumericAddress("example.com"));
+        assertFalse(ResolverCache.isNumericAddress(""));
+    }
+}
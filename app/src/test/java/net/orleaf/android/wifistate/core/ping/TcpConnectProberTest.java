@@ -0,0 +1,75 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TcpConnectProber のテスト (ループバック)
+ */
+public class TcpConnectProberTest {
+    private ServerSocket mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void listeningPortIsReachable() {
+        TcpConnectProber prober = new TcpConnectProber(mServer.getLocalPort());
+        long rtt = prober.probe("127.0.0.1", 1000);
+        assertTrue("rtt=" + rtt, rtt >= 0);
+    }
+
+    @Test
+    public void refusedPortIsReachable() throws IOException {
+        int port = mServer.getLocalPort();
+        mServer.close();
+        // RST が返るので到達可能
+        TcpConnectProber prober = new TcpConnectProber(port);
+        long rtt = prober.probe("127.0.0.1", 1000);
+        assertTrue("rtt=" + rtt, rtt >= 0);
+    }
+
+    @Test
+    public void refusalIsDetectedFromMessageOrCause() {
+        assertTrue(TcpConnectProber.isRefused(new ConnectException("Connection refused")));
+        ConnectException e = new ConnectException("failed to connect to /192.168.0.1 (port 80) after 1000ms");
+        e.initCause(new IOException("isConnected failed: ECONNREFUSED (Connection refused)"));
+        assertTrue(TcpConnectProber.isRefused(e));
+    }
+
+    /**
+     * 拒否以外の接続エラー (経路なし・タイムアウト等) は到達不可
+     */
+    @Test
+    public void otherConnectErrorsAreUnreachable() {
+        assertFalse(TcpConnectProber.isRefused(new ConnectException(
+                "failed to connect to /10.0.0.1 (port 80) after 1000ms: isConnected failed: ENETUNREACH (Network is unreachable)")));
+        ConnectException e = new ConnectException("failed to connect to /10.0.0.1 (port 80) after 1000ms");
+        e.initCause(new IOException("isConnected failed: ETIMEDOUT (Connection timed out)"));
+        assertFalse(TcpConnectProber.isRefused(e));
+        assertFalse(TcpConnectProber.isRefused(new ConnectException()));
+    }
+
+    @Test
+    public void cancelWithoutProbeDoesNothing() {
+        TcpConnectProber prober = new TcpConnectProber(mServer.getLocalPort());
+        prober.cancel();
+        assertTrue(prober.probe("127.0.0.1", 1000) >= 0);
+    }
+}
@@ -0,0 +1,89 @@
+package net.orleaf.android.wifistate.core.ping;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UdpEchoProber のテスト (ループバックの echo サーバ)
+ */
+public class UdpEchoProberTest {
+    private DatagramSocket mServer;
+    private Thread mServerThread;
+    private volatile boolean mEcho = true;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        mServerThread = new Thread() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[64];
+                while (!mServer.isClosed()) {
+                    try {
+                        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                        mServer.receive(packet);
+                        if (mEcho) {
+                            mServer.send(packet);
+                        }
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        mServerThread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mServer.close();
+        mServerThread.join(1000);
+    }
+
+    @Test
+    public void echoIsReachable() {
+        UdpEchoProber prober = new UdpEchoProber(mServer.getLocalPort());
+        long rtt = prober.probe("127.0.0.1", 1000);
+        assertTrue("rtt=" + rtt, rtt >= 0);
+    }
+
+    @Test
+    public void noReplyTimesOut() {
+        mEcho = false;
+        UdpEchoProber prober = new UdpEchoProber(mServer.getLocalPort());
+        long start = System.nanoTime();
+        assertEquals(Prober.UNREACHABLE, prober.probe("127.0.0.1", 200));
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed=" + elapsed, elapsed >= 150 && elapsed < 1000);
+    }
+
+    @Test
+    public void cancelAbortsWaitingProbe() throws InterruptedException {
+        mEcho = false;
+        final UdpEchoProber prober = new UdpEchoProber(mServer.getLocalPort());
+        final long[] result = { 0 };
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                result[0] = prober.probe("127.0.0.1", 10000);
+            }
+        };
+        long start = System.nanoTime();
+        thread.start();
+        Thread.sleep(100);
+        prober.cancel();
+        thread.join(2000);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed=" + elapsed, !thread.isAlive() && elapsed < 2000);
+        assertEquals(Prober.UNREACHABLE, result[0]);
+    }
+}
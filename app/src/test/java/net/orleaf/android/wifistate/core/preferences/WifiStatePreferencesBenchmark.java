@@ -0,0 +1,82 @@
+package net.orleaf.android.wifistate.core.preferences;
+
+import java.util.concurrent.TimeUnit;
+
+import android.content.SharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ブロードキャスト1回あたりの設定値の参照の所要時間
+ *
+ * ブロードキャスト受信時に参照する設定値 (有効/無効・モバイルネットワーク表示・
+ * スキャン中の消去・アイコン・消去可能・疎通監視) を、SharedPreferences から直接読む場合
+ * (スナップショット導入前) とスナップショットから読む場合で比較する。
+ * SharedPreferences はメモリ上の実装 (読み込みごとにロックを取得) を使う。
+ * ex) ./gradlew :app:jmh -Pjmh="WifiStatePreferencesBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WifiStatePreferencesBenchmark {
+    private SharedPreferences mPrefs;
+
+    @Setup
+    public void setUp() {
+        mPrefs = new MapPreferences()
+                .put(WifiStatePreferences.PREF_ENABLED_KEY, true)
+                .put(WifiStatePreferences.PREF_SHOW_DATA_NETWORK_KEY, true)
+                .put(WifiStatePreferences.PREF_ICON_STYLE_KEY, "outline")
+                .put(WifiStatePreferences.PREF_PING_KEY, true);
+        WifiStatePreferences.reload(mPrefs);
+    }
+
+    @Benchmark
+    public void sharedPreferences(Blackhole blackhole) {
+        SharedPreferences prefs = mPrefs;
+        blackhole.consume(prefs.getBoolean(
+                WifiStatePreferences.PREF_ENABLED_KEY, WifiStatePreferences.PREF_ENABLED_DEFAULT));
+        // 状態の取得 (モバイルネットワークの状態の要否・状態の導出)
+        blackhole.consume(prefs.getBoolean(
+                WifiStatePreferences.PREF_SHOW_DATA_NETWORK_KEY, WifiStatePreferences.PREF_SHOW_DATA_NETWORK_DEFAULT));
+        blackhole.consume(prefs.getBoolean(
+                WifiStatePreferences.PREF_SHOW_DATA_NETWORK_KEY, WifiStatePreferences.PREF_SHOW_DATA_NETWORK_DEFAULT));
+        blackhole.consume(prefs.getBoolean(
+                WifiStatePreferences.PREF_CLEAR_ON_SCANNING_KEY, WifiStatePreferences.PREF_CLEAR_ON_SCANNING_DEFAULT));
+        // 通知アイコン・疎通監視
+        blackhole.consume(prefs.getString(
+                WifiStatePreferences.PREF_ICON_STYLE_KEY, WifiStatePreferences.PREF_ICON_STYLE_DEFAULT));
+        blackhole.consume(prefs.getBoolean(
+                WifiStatePreferences.PREF_CLEARABLE_KEY, WifiStatePreferences.PREF_CLEARABLE_DEFAULT));
+        blackhole.consume(prefs.getBoolean(
+                WifiStatePreferences.PREF_PING_KEY, WifiStatePreferences.PREF_PING_DEFAULT));
+        blackhole.consume(prefs.getBoolean(
+                WifiStatePreferences.PREF_PING_ON_MOBILE_KEY, WifiStatePreferences.PREF_PING_ON_MOBILE_DEFAULT));
+    }
+
+    @Benchmark
+    public void snapshot(Blackhole blackhole) {
+        // 初回以降は Context を参照しない
+        blackhole.consume(WifiStatePreferences.getEnabled(null));
+        blackhole.consume(WifiStatePreferences.getShowDataNetwork(null));
+        blackhole.consume(WifiStatePreferences.getShowDataNetwork(null));
+        blackhole.consume(WifiStatePreferences.getClearOnScanning(null));
+        blackhole.consume(WifiStatePreferences.getIconStyle(null));
+        blackhole.consume(WifiStatePreferences.getClearable(null));
+        blackhole.consume(WifiStatePreferences.getPing(null));
+        blackhole.consume(WifiStatePreferences.getPingOnMobile(null));
+    }
+}
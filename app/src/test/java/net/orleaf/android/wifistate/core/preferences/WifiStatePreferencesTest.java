@@ -0,0 +1,75 @@
+package net.orleaf.android.wifistate.core.preferences;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * WifiStatePreferences のテスト
+ */
+public class WifiStatePreferencesTest {
+
+    @After
+    public void tearDown() {
+        WifiStatePreferences.reload(new MapPreferences());
+    }
+
+    @Test
+    public void snapshotDefaults() {
+        WifiStatePreferences.Snapshot snapshot = new WifiStatePreferences.Snapshot(new MapPreferences());
+        assertEquals(WifiStatePreferences.PREF_ENABLED_DEFAULT, snapshot.getEnabled());
+        assertEquals(WifiStatePreferences.PREF_ICON_STYLE_DEFAULT, snapshot.getIconStyle());
+        assertEquals(WifiStatePreferences.PREF_CLEARABLE_DEFAULT, snapshot.getClearable());
+        assertEquals(WifiStatePreferences.PREF_CLEAR_ON_CONNECTED_DEFAULT, snapshot.getClearOnConnected());
+        assertEquals(WifiStatePreferences.PREF_CLEAR_ON_SCANNING_DEFAULT, snapshot.getClearOnScanning());
+        assertEquals(WifiStatePreferences.PREF_CLEAR_ON_DISABLED_DEFAULT, snapshot.getClearOnDisabled());
+        assertEquals(WifiStatePreferences.PREF_SHOW_DATA_NETWORK_DEFAULT, snapshot.getShowDataNetwork());
+        assertEquals(WifiStatePreferences.PREF_ACTION_ON_TAP_DEFAULT, snapshot.getActionOnTap());
+        assertEquals(WifiStatePreferences.PREF_PING_DEFAULT, snapshot.getPing());
+        assertEquals(WifiStatePreferences.PREF_PING_ON_MOBILE_DEFAULT, snapshot.getPingOnMobile());
+        assertEquals(WifiStatePreferences.PREF_PING_TARGET_DEAFULT, snapshot.getPingTarget());
+        assertEquals(WifiStatePreferences.PREF_PING_METHOD_DEFAULT, snapshot.getPingMethod());
+        assertEquals(WifiStatePreferences.PREF_PING_TIMEOUT_DEFAULT, snapshot.getPingTimeout());
+        assertEquals(WifiStatePreferences.PREF_PING_INTERVAL_DEFAULT, snapshot.getPingInterval());
+        assertEquals(WifiStatePreferences.PREF_PING_ADAPTIVE_DEFAULT, snapshot.getPingAdaptive());
+        assertEquals(WifiStatePreferences.PREF_PING_INTERVAL_MAX_DEFAULT, snapshot.getPingIntervalMax());
+        assertEquals(WifiStatePreferences.PREF_PING_RETRY_DEFAULT, snapshot.getPingRetry());
+        assertEquals(WifiStatePreferences.PREF_PING_QUORUM_DEFAULT, snapshot.getPingQuorum());
+        assertEquals(WifiStatePreferences.PREF_PING_DOWN_THRESHOLD_DEFAULT, snapshot.getPingDownThreshold());
+        assertEquals(WifiStatePreferences.PREF_PING_UP_THRESHOLD_DEFAULT, snapshot.getPingUpThreshold());
+        assertEquals(WifiStatePreferences.PREF_PING_FAIL_LOSS_DEFAULT, snapshot.getPingFailLoss());
+        assertEquals(WifiStatePreferences.PREF_PING_FAIL_JITTER_DEFAULT, snapshot.getPingFailJitter());
+        assertEquals(WifiStatePreferences.PREF_PING_DISABLE_WIFI_ON_FAIL_DEFAULT, snapshot.getPingDisableWifiOnFail());
+        assertEquals(WifiStatePreferences.PREF_PING_DISABLE_WIFI_PERIOD_DEFAULT, snapshot.getPingDisableWifiPeriod());
+    }
+
+    @Test
+    public void snapshotReadsStoredValues() {
+        WifiStatePreferences.Snapshot snapshot = new WifiStatePreferences.Snapshot(new MapPreferences()
+                .put(WifiStatePreferences.PREF_ENABLED_KEY, false)
+                .put(WifiStatePreferences.PREF_ICON_STYLE_KEY, "outline")
+                .put(WifiStatePreferences.PREF_PING_TARGET_KEY, "192.168.0.1")
+                .put(WifiStatePreferences.PREF_PING_TIMEOUT_KEY, 5)
+                .put(WifiStatePreferences.PREF_PING_DISABLE_WIFI_ON_FAIL_KEY, true));
+        assertEquals(false, snapshot.getEnabled());
+        assertEquals("outline", snapshot.getIconStyle());
+        assertEquals("192.168.0.1", snapshot.getPingTarget());
+        assertEquals(5, snapshot.getPingTimeout());
+        assertEquals(true, snapshot.getPingDisableWifiOnFail());
+        // 未設定の項目は既定値
+        assertEquals(WifiStatePreferences.PREF_PING_INTERVAL_DEFAULT, snapshot.getPingInterval());
+    }
+
+    @Test
+    public void reloadReplacesSnapshot() {
+        WifiStatePreferences.reload(new MapPreferences());
+        WifiStatePreferences.Snapshot before = WifiStatePreferences.getSnapshot(null);
+        assertEquals(WifiStatePreferences.PREF_PING_INTERVAL_DEFAULT, WifiStatePreferences.getPingInterval(null));
+
+        WifiStatePreferences.reload(new MapPreferences().put(WifiStatePreferences.PREF_PING_INTERVAL_KEY, 30));
+        assertEquals(30, WifiStatePreferences.getPingInterval(null));
+        // 取得済みのスナップショットは変化しない
+        assertEquals(WifiStatePreferences.PREF_PING_INTERVAL_DEFAULT, before.getPingInterval());
+    }
+}